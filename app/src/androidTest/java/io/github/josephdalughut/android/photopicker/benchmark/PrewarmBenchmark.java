@@ -0,0 +1,100 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import io.github.josephdalughut.android.photopicker.main.Prewarmer;
+import io.github.josephdalughut.android.photopicker.util.FileNameGenerator;
+
+/**
+ * Measures what a tap costs before the camera opens, cold (nothing warmed up) against warm
+ * (after {@link Prewarmer#prewarmNow(Context, String)}): resolving the camera activity and
+ * creating the capture file and its uri. Results go to logcat (tag
+ * <code>PhotoPickerBenchmark</code>) and the instrumentation status, like
+ * {@link ProcessingBenchmark}.
+ *
+ * Run with: ./gradlew :app:connectedAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.class=io.github.josephdalughut.android.photopicker.benchmark.PrewarmBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class PrewarmBenchmark {
+
+    private static final String LOG_TAG = "PhotoPickerBenchmark";
+
+    private static final int RUNS = 20;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final String authority = context.getPackageName() + ".benchmark.provider";
+    private final Prewarmer prewarmer = Prewarmer.getInstance();
+
+    @After
+    public void clear() {
+        prewarmer.clear();
+    }
+
+    @Test
+    public void cameraLaunch() throws Exception {
+        // The very first tap in a process also pays for class loading and the provider's
+        // path parsing, which later cold taps don't, so it's reported on its own.
+        prewarmer.clear();
+        long first = prepareCamera();
+
+        long[] cold = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            prewarmer.clear();
+            cold[i] = prepareCamera();
+        }
+
+        long[] warm = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            prewarmer.prewarmNow(context, authority);
+            warm[i] = prepareCamera();
+        }
+
+        Arrays.sort(cold);
+        Arrays.sort(warm);
+        Bundle status = new Bundle();
+        status.putDouble("camera_first_ms", first / 1e6);
+        status.putDouble("camera_cold_p50_ms", percentile(cold, 50) / 1e6);
+        status.putDouble("camera_cold_p90_ms", percentile(cold, 90) / 1e6);
+        status.putDouble("camera_warm_p50_ms", percentile(warm, 50) / 1e6);
+        status.putDouble("camera_warm_p90_ms", percentile(warm, 90) / 1e6);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "camera: first %.2fms, cold p50 %.2fms p90 %.2fms, warm p50 %.2fms p90 %.2fms",
+                status.getDouble("camera_first_ms"),
+                status.getDouble("camera_cold_p50_ms"), status.getDouble("camera_cold_p90_ms"),
+                status.getDouble("camera_warm_p50_ms"), status.getDouble("camera_warm_p90_ms")));
+    }
+
+    /**
+     * Does what {@link io.github.josephdalughut.android.photopicker.main.CameraPhotoPicker}
+     * does on a tap before starting the camera.
+     * @return how long it took, in nanoseconds.
+     */
+    private long prepareCamera() throws Exception {
+        long start = System.nanoTime();
+        prewarmer.resolveCamera(context);
+        prewarmer.takeCapture(context, authority, FileNameGenerator.getDefault());
+        return System.nanoTime() - start;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+}
@@ -0,0 +1,294 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import io.github.josephdalughut.android.photopicker.process.BitmapScaler;
+import io.github.josephdalughut.android.photopicker.process.ImageProcessor;
+import io.github.josephdalughut.android.photopicker.process.ProcessingOptions;
+import io.github.josephdalughut.android.photopicker.process.Resampler;
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+
+/**
+ * On-device benchmarks for the stages which need the Android graphics stack: decoding,
+ * compressing, scaling, copying and the full {@link ImageProcessor} pipeline. Each stage is run over a
+ * fixed corpus of synthetic JPEGs and reports throughput, latency percentiles and allocation
+ * per operation to logcat (tag <code>PhotoPickerBenchmark</code>) and to the instrumentation
+ * status, so they show up in <code>am instrument -r</code> output.
+ *
+ * Run with: ./gradlew :app:connectedAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.class=io.github.josephdalughut.android.photopicker.benchmark.ProcessingBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProcessingBenchmark {
+
+    private static final String LOG_TAG = "PhotoPickerBenchmark";
+
+    private static final int[][] RESOLUTIONS = {{640, 480}, {1920, 1080}, {4032, 3024}};
+    // Source width, height and longest output side.
+    private static final int[][] SCALES = {{4000, 3000, 1080}, {8000, 6000, 512}};
+    private static final long SEED = 0x50686f746fL;
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 20;
+
+    private static File directory;
+    private static File[] corpus;
+
+    @BeforeClass
+    public static void createCorpus() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        directory = new File(context.getCacheDir(), "photopicker-benchmark");
+        if (!directory.exists()) directory.mkdirs();
+        corpus = new File[RESOLUTIONS.length];
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            int width = RESOLUTIONS[i][0];
+            int height = RESOLUTIONS[i][1];
+            File file = new File(directory, width + "x" + height + ".jpg");
+            if (!file.exists() || file.length() == 0) {
+                Bitmap bitmap = draw(width, height);
+                FileOutputStream out = new FileOutputStream(file);
+                try {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                } finally {
+                    out.close();
+                    bitmap.recycle();
+                }
+            }
+            corpus[i] = file;
+        }
+    }
+
+    @AfterClass
+    public static void deleteOutputs() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith("out")) file.delete();
+        }
+    }
+
+    @Test
+    public void decode() throws Exception {
+        for (final File source : corpus) {
+            measure("decode", source, new Operation() {
+                @Override
+                public void run() {
+                    BitmapFactory.decodeFile(source.getAbsolutePath()).recycle();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void compress() throws Exception {
+        for (File source : corpus) {
+            final Bitmap bitmap = BitmapFactory.decodeFile(source.getAbsolutePath());
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) source.length());
+            try {
+                measure("compress", source, new Operation() {
+                    @Override
+                    public void run() {
+                        out.reset();
+                        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                    }
+                });
+            } finally {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Compares {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)} with
+     * {@link BitmapScaler}. The 8000x6000 source alone takes 192MB, so this needs a device
+     * with a large heap.
+     */
+    @Test
+    public void scale() throws Exception {
+        for (int[] scale : SCALES) {
+            final Bitmap bitmap = draw(scale[0], scale[1]);
+            final int width = scale[2];
+            final int height = Math.round(scale[2] * scale[1] / (float) scale[0]);
+            String input = scale[0] + "x" + scale[1] + "_to_" + width;
+            try {
+                measure("scale_platform", input, new Operation() {
+                    @Override
+                    public void run() {
+                        Bitmap.createScaledBitmap(bitmap, width, height, true).recycle();
+                    }
+                });
+                for (final Resampler.Filter filter : Resampler.Filter.values()) {
+                    String stage = "scale_" + filter.name().toLowerCase(Locale.US);
+                    measure(stage, input, new Operation() {
+                        @Override
+                        public void run() {
+                            BitmapScaler.scale(bitmap, width, height, filter).recycle();
+                        }
+                    });
+                }
+            } finally {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    @Test
+    public void copy() throws Exception {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final File destination = new File(directory, "out-copy.jpg");
+        for (File source : corpus) {
+            final Uri uri = Uri.fromFile(source);
+            measure("copy", source, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    FileUtils.copy(context, uri, destination, null, null);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void process() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        final ImageProcessor processor = new ImageProcessor(context,
+                new ProcessingOptions.Builder().maxDimension(2048).build());
+        final File destination = new File(directory, "out-process.jpg");
+        for (File source : corpus) {
+            final Uri uri = Uri.fromFile(source);
+            measure("process", source, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    processor.process(uri, destination);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs <code>operation</code> {@link #WARMUP} times untimed and {@link #RUNS} times timed,
+     * then reports the results.
+     */
+    private static void measure(String stage, File source, Operation operation) throws Exception {
+        measure(stage, source.getName().replace(".jpg", ""), operation);
+    }
+
+    private static void measure(String stage, String input, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) operation.run();
+
+        long[] nanos = new long[RUNS];
+        long allocated = allocatedBytes();
+        long started = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        long elapsed = System.nanoTime() - started;
+        allocated = allocated < 0 ? -1 : (allocatedBytes() - allocated) / RUNS;
+
+        Arrays.sort(nanos);
+        String name = stage + "_" + input;
+        Bundle status = new Bundle();
+        status.putDouble(name + "_ops_per_sec", RUNS / (elapsed / 1e9));
+        status.putDouble(name + "_p50_ms", percentile(nanos, 50) / 1e6);
+        status.putDouble(name + "_p90_ms", percentile(nanos, 90) / 1e6);
+        status.putDouble(name + "_p99_ms", percentile(nanos, 99) / 1e6);
+        status.putLong(name + "_alloc_bytes_per_op", allocated);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%s: %.1f ops/s, p50 %.2fms, p90 %.2fms, p99 %.2fms, %d B/op",
+                name, status.getDouble(name + "_ops_per_sec"),
+                status.getDouble(name + "_p50_ms"), status.getDouble(name + "_p90_ms"),
+                status.getDouble(name + "_p99_ms"), allocated));
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * @return the bytes allocated on the Java heap since the runtime started, or -1 if the
+     * runtime doesn't expose it. Bitmap pixels live on the native heap from API 26, so those
+     * are counted too.
+     */
+    private static long allocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return -1;
+        String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (stat == null) return -1;
+        long bytes = Long.parseLong(stat);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) bytes += Debug.getNativeHeapAllocatedSize();
+        return bytes;
+    }
+
+    /**
+     * Draws a seeded gradient with shapes and noise, so the codecs have edges, smooth areas and
+     * texture to deal with, like a real photo.
+     */
+    private static Bitmap draw(int width, int height) {
+        Random random = new Random(SEED ^ ((long) width << 32 | height));
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        canvas.drawColor(0xFF000000 | random.nextInt());
+        for (int i = 0; i < 64; i++) {
+            paint.setColor(random.nextInt());
+            float x = random.nextInt(width);
+            float y = random.nextInt(height);
+            RectF rect = new RectF(x, y, x + 1 + random.nextInt(width / 4),
+                    y + 1 + random.nextInt(height / 4));
+            if (random.nextBoolean()) canvas.drawOval(rect, paint);
+            else canvas.drawRect(rect, paint);
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int r = clamp(((row[x] >> 16) & 0xFF) + noise);
+                int g = clamp(((row[x] >> 8) & 0xFF) + noise);
+                int b = clamp((row[x] & 0xFF) + noise);
+                row[x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+}
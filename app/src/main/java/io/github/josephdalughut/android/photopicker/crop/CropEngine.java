@@ -0,0 +1,50 @@
+package io.github.josephdalughut.android.photopicker.crop;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import io.github.josephdalughut.android.photopicker.main.ActivityLauncher;
+
+/**
+ * Crops a picked image for a {@link io.github.josephdalughut.android.photopicker.main.PhotoPicker}.
+ *
+ * Engines which hand off to another activity, like {@link UCropEngine}, report back through
+ * {@link #handleActivityResult(int, int, Intent, Callback)}; in-process engines like
+ * {@link RegionCropEngine} call the {@link Callback} directly.
+ */
+public interface CropEngine {
+
+    /**
+     * Starts cropping.
+     * @param context the picker's host {@link Context}.
+     * @param launcher launches any activity the engine needs, so its result is routed back
+     *                 to the picker.
+     * @param source the image to crop.
+     * @param output where the cropped image should be written.
+     * @param callback receives the result on the main thread, unless the engine reports it
+     *                 through {@link #handleActivityResult(int, int, Intent, Callback)}.
+     * @throws Exception if cropping couldn't be started.
+     */
+    void start(Context context, ActivityLauncher launcher, Uri source, Uri output,
+               Callback callback) throws Exception;
+
+    /**
+     * Offers an activity result to the engine.
+     * @return <code>true</code> if the result belonged to this engine, in which case the
+     * callback has been called.
+     */
+    boolean handleActivityResult(int requestCode, int resultCode, Intent data, Callback callback);
+
+    /**
+     * Receives the result of a crop.
+     */
+    interface Callback {
+
+        void onCropped(Uri output);
+
+        void onCropError(Exception e);
+
+    }
+
+}
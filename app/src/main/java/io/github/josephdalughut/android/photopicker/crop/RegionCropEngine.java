@@ -0,0 +1,242 @@
+package io.github.josephdalughut.android.photopicker.crop;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.github.josephdalughut.android.photopicker.main.ActivityLauncher;
+import io.github.josephdalughut.android.photopicker.process.ExifHelper;
+import io.github.josephdalughut.android.photopicker.process.TiledDecoder;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * A headless {@link CropEngine} which crops to a fixed aspect ratio (centered) or region,
+ * without any UI. It uses {@link BitmapRegionDecoder}, so only the selected region is ever
+ * decoded, and at a sample size close to the output size.
+ *
+ * This suits flows like square avatars, where the user doesn't need to choose the crop.
+ */
+public class RegionCropEngine implements CropEngine {
+
+    private static final String LOG_TAG = RegionCropEngine.class.getSimpleName();
+
+    private final float aspectX;
+    private final float aspectY;
+    private final int maxSize;
+    private RectF region;
+    private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+    private int quality = 90;
+    private long memoryBudget = 0;
+
+    /**
+     * @return an engine which crops the largest centered square, at most <code>maxSize</code>
+     * pixels wide.
+     */
+    public static RegionCropEngine square(int maxSize) {
+        return new RegionCropEngine(1, 1, maxSize);
+    }
+
+    /**
+     * Creates an engine which crops the largest centered region with the given aspect ratio.
+     * @param aspectX the horizontal part of the aspect ratio.
+     * @param aspectY the vertical part of the aspect ratio.
+     * @param maxSize the longest side of the output in pixels, or <code>0</code> to keep the
+     *                region's own size.
+     */
+    public RegionCropEngine(float aspectX, float aspectY, int maxSize) {
+        if (aspectX <= 0 || aspectY <= 0) throw new IllegalArgumentException("Aspect ratio must be positive");
+        this.aspectX = aspectX;
+        this.aspectY = aspectY;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Crops an explicit region instead of a centered one.
+     * @param region the region, as fractions (0 to 1) of the upright image's width and height.
+     */
+    public RegionCropEngine setRegion(@Nullable RectF region) {
+        this.region = region;
+        return this;
+    }
+
+    /**
+     * Sets the format and quality the crop is encoded with.
+     */
+    public RegionCropEngine setOutputFormat(Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+        return this;
+    }
+
+    /**
+     * Sets the peak memory a crop may use. Regions too large to decode within it are decoded
+     * tile by tile with {@link TiledDecoder}, and shrunk if the crop itself wouldn't fit.
+     * <code>0</code> uses {@link TiledDecoder#getDefaultBudget()}.
+     */
+    public RegionCropEngine setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    @Override
+    public void start(Context context, ActivityLauncher launcher, final Uri source,
+                      final Uri output, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    crop(appContext.getContentResolver(), source, output);
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCropped(output);
+                        }
+                    });
+                } catch (final Exception e) {
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCropError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean handleActivityResult(int requestCode, int resultCode, Intent data, Callback callback) {
+        return false;
+    }
+
+    /**
+     * Crops on the calling thread. Don't call this from the main thread.
+     */
+    public void crop(ContentResolver resolver, Uri source, Uri output) throws IOException {
+        int orientation = ExifHelper.readOrientation(resolver, source);
+
+        BitmapRegionDecoder decoder = TiledDecoder.open(resolver, source);
+        Bitmap bitmap;
+        try {
+            Rect rect = calculateRegion(decoder.getWidth(), decoder.getHeight(), orientation);
+            long budget = memoryBudget > 0 ? memoryBudget : TiledDecoder.getDefaultBudget();
+            int[] size = TiledDecoder.fit(rect.width(), rect.height(), maxSize, budget);
+            int longest = Math.max(rect.width(), rect.height());
+            int target = Math.max(size[0], size[1]);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = 1;
+            while (longest / (options.inSampleSize * 2) >= target) {
+                options.inSampleSize *= 2;
+            }
+            if (TiledDecoder.exceedsBudget(rect.width(), rect.height(), options.inSampleSize,
+                    size[0], size[1], budget)) {
+                bitmap = TiledDecoder.decode(decoder, rect, size[0], size[1], budget);
+            } else {
+                bitmap = decoder.decodeRegion(rect, options);
+                if (bitmap == null) throw new IOException("Unable to decode region of " + source);
+                bitmap = scaleToFit(bitmap, target);
+            }
+        } finally {
+            decoder.recycle();
+        }
+
+        bitmap = ExifHelper.applyOrientation(bitmap, orientation);
+        try {
+            OutputStream out = resolver.openOutputStream(output);
+            if (out == null) throw new IOException("Unable to open " + output);
+            try {
+                if (!bitmap.compress(format, quality, out))
+                    throw new IOException("Unable to encode crop of " + source);
+            } finally {
+                out.close();
+            }
+        } finally {
+            bitmap.recycle();
+        }
+        Log.d(LOG_TAG, "Cropped " + source + " into " + output);
+    }
+
+    /**
+     * Works out the region to decode, in the raw (un-rotated) image's pixels.
+     */
+    Rect calculateRegion(int rawWidth, int rawHeight, int orientation) {
+        boolean transposed = ExifHelper.isTransposed(orientation);
+        float width = transposed ? rawHeight : rawWidth;
+        float height = transposed ? rawWidth : rawHeight;
+
+        RectF upright = region;
+        if (upright == null) {
+            float targetRatio = aspectX / aspectY;
+            float cropWidth = width, cropHeight = height;
+            if (width / height > targetRatio) cropWidth = height * targetRatio;
+            else cropHeight = width / targetRatio;
+            float left = (width - cropWidth) / 2f / width;
+            float top = (height - cropHeight) / 2f / height;
+            upright = new RectF(left, top, left + cropWidth / width, top + cropHeight / height);
+        }
+
+        float[] a = toRaw(upright.left, upright.top, orientation);
+        float[] b = toRaw(upright.right, upright.bottom, orientation);
+        int left = clamp(Math.round(Math.min(a[0], b[0]) * rawWidth), rawWidth);
+        int top = clamp(Math.round(Math.min(a[1], b[1]) * rawHeight), rawHeight);
+        int right = clamp(Math.round(Math.max(a[0], b[0]) * rawWidth), rawWidth);
+        int bottom = clamp(Math.round(Math.max(a[1], b[1]) * rawHeight), rawHeight);
+        if (right <= left) right = Math.min(rawWidth, left + 1);
+        if (bottom <= top) bottom = Math.min(rawHeight, top + 1);
+        return new Rect(left, top, right, bottom);
+    }
+
+    /**
+     * Maps a point, as fractions of the upright image, back to fractions of the raw image.
+     */
+    private static float[] toRaw(float x, float y, int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new float[]{1 - x, y};
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return new float[]{1 - x, 1 - y};
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new float[]{x, 1 - y};
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new float[]{y, x};
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return new float[]{y, 1 - x};
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new float[]{1 - y, 1 - x};
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return new float[]{1 - y, x};
+            default:
+                return new float[]{x, y};
+        }
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int maxSize) {
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (maxSize <= 0 || longest <= maxSize) return bitmap;
+        float scale = maxSize / (float) longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+}
@@ -0,0 +1,68 @@
+package io.github.josephdalughut.android.photopicker.crop;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import androidx.annotation.ColorRes;
+import androidx.annotation.Nullable;
+
+import com.yalantis.ucrop.UCrop;
+
+import io.github.josephdalughut.android.photopicker.R;
+import io.github.josephdalughut.android.photopicker.main.ActivityLauncher;
+
+import static com.yalantis.ucrop.UCrop.REQUEST_CROP;
+
+/**
+ * A {@link CropEngine} which lets the user crop interactively in uCrop's activity.
+ */
+public class UCropEngine implements CropEngine {
+
+    @ColorRes
+    private final int colorRes;
+    private final UCrop.Options options;
+
+    /**
+     * @param colorRes the colorRes used to theme uCrop, or <code>null</code> for the default.
+     * @param options a custom set of {@link UCrop.Options}, which takes precedence over
+     *                <code>colorRes</code>. May be <code>null</code>.
+     */
+    public UCropEngine(@ColorRes @Nullable Integer colorRes, @Nullable UCrop.Options options) {
+        this.colorRes = colorRes == null ? R.color.colorPrimary : colorRes;
+        this.options = options;
+    }
+
+    @Override
+    public void start(Context context, ActivityLauncher launcher, Uri source, Uri output,
+                      Callback callback) {
+        UCrop.Options options = this.options;
+
+        if (options == null) {
+            options = new UCrop.Options();
+            int color = context.getResources().getColor(this.colorRes);
+            options.setToolbarColor(color);
+            options.setStatusBarColor(color);
+            options.setActiveControlsWidgetColor(color);
+            options.setFreeStyleCropEnabled(true);
+        }
+
+        UCrop uCrop = UCrop.of(source, output)
+                .useSourceImageAspectRatio()
+                .withOptions(options);
+        launcher.startActivityForResult(uCrop.getIntent(context), REQUEST_CROP);
+    }
+
+    @Override
+    public boolean handleActivityResult(int requestCode, int resultCode, Intent data, Callback callback) {
+        if (requestCode != REQUEST_CROP) return false;
+        if (resultCode != Activity.RESULT_OK || data == null || UCrop.getOutput(data) == null) {
+            callback.onCropError(new Exception("An error occurred while cropping your image."));
+        } else {
+            callback.onCropped(UCrop.getOutput(data));
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,163 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.GridView;
+import android.widget.ImageView;
+
+import io.github.josephdalughut.android.photopicker.process.ThumbnailLoader;
+
+/**
+ * A grid of the device's images, run in the app's own process, which returns the tapped
+ * image's {@link Uri} as its result. It's what
+ * {@link io.github.josephdalughut.android.photopicker.main.PhotoPicker.Source#MEDIA_STORE}
+ * opens, in place of the system's chooser.
+ *
+ * Cells are reused as they scroll, and their thumbnails come from a {@link MediaGallery},
+ * which pages the images in and prefetches the thumbnails about a screen ahead.
+ */
+public class GalleryActivity extends Activity {
+
+    private static final String LOG_TAG = GalleryActivity.class.getSimpleName();
+
+    // The narrowest a cell may get, in dp.
+    private static final int MIN_CELL_SIZE = 96;
+    private static final int PLACEHOLDER_COLOR = 0xFFE0E0E0;
+
+    private MediaGallery gallery;
+    private GalleryAdapter adapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int columns = Math.max(3, (int) (metrics.widthPixels / (MIN_CELL_SIZE * metrics.density)));
+        int cellSize = metrics.widthPixels / columns;
+        int rows = metrics.heightPixels / cellSize + 1;
+
+        gallery = new MediaGallery(this, cellSize);
+        gallery.setPrefetchCount(columns * rows);
+        adapter = new GalleryAdapter(cellSize);
+
+        GridView grid = new GridView(this);
+        grid.setNumColumns(columns);
+        grid.setColumnWidth(cellSize);
+        grid.setStretchMode(GridView.NO_STRETCH);
+        grid.setAdapter(adapter);
+        grid.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (visibleItemCount > 0)
+                    gallery.onVisibleRange(firstVisibleItem, firstVisibleItem + visibleItemCount - 1);
+            }
+        });
+        grid.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Intent data = new Intent();
+                data.setData(gallery.getItem(position).getUri());
+                setResult(RESULT_OK, data);
+                finish();
+            }
+        });
+        setContentView(grid);
+
+        gallery.setListener(new MediaGallery.Listener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                adapter.notifyDataSetChanged();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                e.printStackTrace();
+                if (gallery.getCount() == 0) {
+                    setResult(RESULT_CANCELED);
+                    finish();
+                }
+            }
+        });
+        gallery.loadMore();
+    }
+
+    @Override
+    protected void onDestroy() {
+        gallery.close();
+        super.onDestroy();
+    }
+
+    private class GalleryAdapter extends BaseAdapter {
+
+        private final int cellSize;
+
+        GalleryAdapter(int cellSize) {
+            this.cellSize = cellSize;
+        }
+
+        @Override
+        public int getCount() {
+            return gallery.getCount();
+        }
+
+        @Override
+        public MediaItem getItem(int position) {
+            return gallery.getItem(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return gallery.getItem(position).getId();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            final ImageView view;
+            if (convertView == null) {
+                view = new ImageView(GalleryActivity.this);
+                view.setLayoutParams(new AbsListView.LayoutParams(cellSize, cellSize));
+                view.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                view.setBackgroundColor(PLACEHOLDER_COLOR);
+            } else {
+                view = (ImageView) convertView;
+            }
+
+            MediaItem item = gallery.getItem(position);
+            // The cell may be reused for another image before this one's thumbnail arrives.
+            view.setTag(item.getUri());
+            view.setImageDrawable(null);
+            gallery.loadThumbnail(item, new ThumbnailLoader.Callback() {
+                @Override
+                public void onThumbnail(Uri uri, Bitmap thumbnail) {
+                    if (uri.equals(view.getTag())) view.setImageBitmap(thumbnail);
+                }
+
+                @Override
+                public void onError(Uri uri, Exception e) {
+                    Log.d(LOG_TAG, "Unable to load thumbnail for " + uri);
+                }
+            });
+            return view;
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import io.github.josephdalughut.android.photopicker.process.ThumbnailCache;
+import io.github.josephdalughut.android.photopicker.process.ThumbnailLoader;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Backs a scrolling grid of the device's images. Pages are read from a {@link MediaPager} as
+ * the grid nears the end of what's loaded, and the thumbnails just past the visible range are
+ * loaded ahead of time on {@link TaskRunner#prefetchExecutor()}, so they're usually in memory
+ * by the time they're scrolled to.
+ *
+ * Thumbnails are kept in a memory-only {@link ThumbnailCache} of their own, so browsing a
+ * large library costs at most that cache's size and doesn't push the picker's own thumbnails
+ * out. Apart from {@link #loadThumbnail(MediaItem, ThumbnailLoader.Callback)}, call everything
+ * from the main thread.
+ */
+public class MediaGallery {
+
+    private static final String LOG_TAG = MediaGallery.class.getSimpleName();
+
+    public static final int DEFAULT_PREFETCH_COUNT = 30;
+
+    private final MediaPager pager;
+    private final ThumbnailLoader thumbnails;
+    private final int thumbnailSize;
+    private final Executor pageExecutor;
+    private final Executor prefetchExecutor;
+    private final List<MediaItem> items = new ArrayList<>();
+    private Listener listener;
+    private boolean loading = false;
+    private int prefetchedUpTo = -1;
+    // Read by prefetches waiting on the background thread.
+    private volatile int prefetchCount = DEFAULT_PREFETCH_COUNT;
+    private volatile int visibleLast = -1;
+    private volatile boolean closed = false;
+
+    /**
+     * @param thumbnailSize the longest side of the thumbnails, in pixels. Use the size of a
+     *                      grid cell.
+     */
+    public MediaGallery(Context context, int thumbnailSize) {
+        this(new MediaPager(context), new ThumbnailLoader(context,
+                        new ThumbnailCache((int) (Runtime.getRuntime().maxMemory() / 8), null, 0)),
+                thumbnailSize, TaskRunner.executor(), TaskRunner.prefetchExecutor());
+    }
+
+    MediaGallery(MediaPager pager, ThumbnailLoader thumbnails, int thumbnailSize,
+                 Executor pageExecutor, Executor prefetchExecutor) {
+        this.pager = pager;
+        this.thumbnails = thumbnails;
+        this.thumbnailSize = thumbnailSize;
+        this.pageExecutor = pageExecutor;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets how many thumbnails past the visible range are loaded ahead of time. About a
+     * screenful is plenty; many more and they'd push the visible ones out of the cache.
+     */
+    public void setPrefetchCount(int prefetchCount) {
+        if (prefetchCount < 0) throw new IllegalArgumentException("prefetchCount must be >= 0");
+        this.prefetchCount = prefetchCount;
+    }
+
+    /**
+     * @return the number of images loaded so far.
+     */
+    public int getCount() {
+        return items.size();
+    }
+
+    public MediaItem getItem(int position) {
+        return items.get(position);
+    }
+
+    /**
+     * @return <code>true</code> while a page is being read.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return <code>true</code> once every image has been loaded.
+     */
+    public boolean isComplete() {
+        return !loading && pager.isExhausted();
+    }
+
+    /**
+     * Reads the next page, unless one is already being read or there are none left. It's
+     * delivered to {@link Listener#onPageLoaded(int, int)}.
+     */
+    public void loadMore() {
+        if (loading || closed || pager.isExhausted()) return;
+        loading = true;
+        pageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final List<MediaItem> page = pager.next();
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            onPage(page);
+                        }
+                    });
+                } catch (final Exception e) {
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            loading = false;
+                            if (!closed && listener != null) listener.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onPage(List<MediaItem> page) {
+        loading = false;
+        if (closed) return;
+        int start = items.size();
+        items.addAll(page);
+        if (listener != null) listener.onPageLoaded(start, page.size());
+        // The new page may cover part of the prefetch range.
+        prefetch();
+    }
+
+    /**
+     * Call this as the grid scrolls. It reads the next page once the grid is within
+     * {@link #setPrefetchCount(int)} images of the end of what's loaded, and prefetches the
+     * thumbnails just past <code>last</code>.
+     * @param first the position of the first visible image.
+     * @param last the position of the last visible image.
+     */
+    public void onVisibleRange(int first, int last) {
+        if (closed) return;
+        visibleLast = last;
+        if (last >= items.size() - prefetchCount) loadMore();
+        prefetch();
+    }
+
+    private void prefetch() {
+        int last = visibleLast;
+        int count = prefetchCount;
+        // Nothing's been laid out yet; the grid is about to load the first screen itself.
+        if (last < 0) return;
+        // After a jump back, start over from the visible range; thumbnails still cached
+        // from before cost only a lookup.
+        if (prefetchedUpTo > last + count) prefetchedUpTo = last;
+        int start = Math.max(prefetchedUpTo + 1, last + 1);
+        int end = Math.min(items.size() - 1, last + count);
+        for (int i = start; i <= end; i++) {
+            final int position = i;
+            final Uri uri = items.get(i).getUri();
+            prefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Skip those which became visible (the grid loads them itself) or fell out
+                    // of range while they waited.
+                    int last = visibleLast;
+                    if (closed || position <= last || position > last + prefetchCount) return;
+                    try {
+                        thumbnails.loadSync(uri, thumbnailSize);
+                    } catch (IOException e) {
+                        Log.d(LOG_TAG, "Unable to prefetch thumbnail for " + uri);
+                    }
+                }
+            });
+        }
+        if (end >= start) prefetchedUpTo = end;
+    }
+
+    /**
+     * Loads an image's thumbnail, from memory if it was prefetched. Grid cells are reused as
+     * they scroll, so check the cell still shows <code>item</code> before setting it.
+     */
+    public void loadThumbnail(MediaItem item, ThumbnailLoader.Callback callback) {
+        thumbnails.load(item.getUri(), thumbnailSize, callback);
+    }
+
+    /**
+     * Stops loading, and drops every thumbnail held for the gallery. Call this once the grid
+     * is gone.
+     */
+    public void close() {
+        closed = true;
+        thumbnails.getCache().evictMemory();
+    }
+
+    /**
+     * Receives pages on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param start the position of the page's first image.
+         * @param count the number of images in the page, which may be <code>0</code> when
+         *              the last page turns out to be empty.
+         */
+        void onPageLoaded(int start, int count);
+
+        void onError(Exception e);
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.net.Uri;
+
+/**
+ * An image in the device's {@link android.provider.MediaStore}, as listed by a
+ * {@link MediaPager}.
+ */
+public class MediaItem {
+
+    private final long id;
+    private final Uri uri;
+    private final long dateAdded;
+    private final int width;
+    private final int height;
+    private final String mimeType;
+
+    MediaItem(long id, Uri uri, long dateAdded, int width, int height, String mimeType) {
+        this.id = id;
+        this.uri = uri;
+        this.dateAdded = dateAdded;
+        this.width = width;
+        this.height = height;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * @return the image's row id in the media store.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the content {@link Uri} of the image.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * @return when the image was added to the media store, in seconds since the epoch.
+     */
+    public long getDateAdded() {
+        return dateAdded;
+    }
+
+    /**
+     * @return the image's width, or <code>0</code> if the media store doesn't know it.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the image's height, or <code>0</code> if the media store doesn't know it.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaItem{" + uri + ", " + width + "x" + height + ", added " + dateAdded + "}";
+    }
+
+}
@@ -0,0 +1,165 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the images in the {@link MediaStore}, newest first, a page at a time.
+ *
+ * Pages are read by keyset rather than by offset: each query asks for the rows which sort
+ * after the last one we read, on <code>(DATE_ADDED, _ID)</code>. The provider can answer that
+ * from its index no matter how deep into the library we are, where an offset would have it
+ * step over every row before the page, and images added while we're paging don't shift the
+ * pages after them. Only a page's worth of rows is ever read from a cursor, so the provider's
+ * cursor window stays small too.
+ */
+public class MediaPager {
+
+    private static final String LOG_TAG = MediaPager.class.getSimpleName();
+
+    public static final int DEFAULT_PAGE_SIZE = 120;
+
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID,
+            MediaStore.Images.Media.DATE_ADDED,
+            MediaStore.Images.Media.WIDTH,
+            MediaStore.Images.Media.HEIGHT,
+            MediaStore.Images.Media.MIME_TYPE
+    };
+    private static final String SORT_ORDER = MediaStore.Images.Media.DATE_ADDED + " DESC, "
+            + MediaStore.Images.Media._ID + " DESC";
+    // The rows sorting after (date, id), in SORT_ORDER.
+    private static final String AFTER_KEY = MediaStore.Images.Media.DATE_ADDED + " < ? OR ("
+            + MediaStore.Images.Media.DATE_ADDED + " = ? AND " + MediaStore.Images.Media._ID + " < ?)";
+
+    private final ContentResolver resolver;
+    private final Uri collection;
+    private final int pageSize;
+    private long lastDateAdded;
+    private long lastId;
+    private boolean started = false;
+    private boolean exhausted = false;
+
+    public MediaPager(Context context) {
+        this(context, DEFAULT_PAGE_SIZE);
+    }
+
+    public MediaPager(Context context, int pageSize) {
+        this(context.getContentResolver(), MediaStore.Images.Media.EXTERNAL_CONTENT_URI, pageSize);
+    }
+
+    MediaPager(ContentResolver resolver, Uri collection, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be > 0");
+        this.resolver = resolver;
+        this.collection = collection;
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return <code>true</code> once the last page has been read.
+     */
+    public synchronized boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Reads the page after the last one read. This queries the provider, so don't call it
+     * from the main thread.
+     * @return the page, which is shorter than {@link #getPageSize()} (possibly empty) once
+     * the end of the library is reached.
+     */
+    public synchronized List<MediaItem> next() {
+        if (exhausted) return Collections.emptyList();
+
+        String selection = null;
+        String[] selectionArgs = null;
+        if (started) {
+            String date = String.valueOf(lastDateAdded);
+            selection = AFTER_KEY;
+            selectionArgs = new String[]{date, date, String.valueOf(lastId)};
+        }
+
+        Cursor cursor = query(selection, selectionArgs);
+        List<MediaItem> page = new ArrayList<>(pageSize);
+        if (cursor != null) {
+            try {
+                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+                int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED);
+                int widthColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.WIDTH);
+                int heightColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.HEIGHT);
+                int mimeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE);
+                // Providers which ignore the limit still only have a page read from them.
+                while (page.size() < pageSize && cursor.moveToNext()) {
+                    long id = cursor.getLong(idColumn);
+                    page.add(new MediaItem(id, ContentUris.withAppendedId(collection, id),
+                            cursor.getLong(dateColumn), cursor.getInt(widthColumn),
+                            cursor.getInt(heightColumn), cursor.getString(mimeColumn)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        started = true;
+        if (page.size() < pageSize) exhausted = true;
+        if (!page.isEmpty()) {
+            MediaItem last = page.get(page.size() - 1);
+            lastDateAdded = last.getDateAdded();
+            lastId = last.getId();
+        }
+        Log.d(LOG_TAG, "Read " + page.size() + " images" + (exhausted ? ", done" : ""));
+        return page;
+    }
+
+    /**
+     * Starts over from the newest image, e.g after the library has changed.
+     */
+    public synchronized void reset() {
+        started = false;
+        exhausted = false;
+        lastDateAdded = 0;
+        lastId = 0;
+    }
+
+    private Cursor query(String selection, String[] selectionArgs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return queryWithLimit(selection, selectionArgs);
+        }
+        // Before R, the media provider takes the limit as part of the sort order.
+        return resolver.query(collection, PROJECTION, selection, selectionArgs,
+                SORT_ORDER + " LIMIT " + pageSize);
+    }
+
+    /**
+     * From R, the media provider rejects a limit in the sort order, and takes it as a query
+     * argument instead.
+     */
+    @TargetApi(Build.VERSION_CODES.R)
+    private Cursor queryWithLimit(String selection, String[] selectionArgs) {
+        Bundle args = new Bundle();
+        if (selection != null) {
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+        }
+        args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+        args.putInt(ContentResolver.QUERY_ARG_LIMIT, pageSize);
+        return resolver.query(collection, PROJECTION, args, null);
+    }
+
+}
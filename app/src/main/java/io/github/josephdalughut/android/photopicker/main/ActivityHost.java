@@ -0,0 +1,53 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.activity.ComponentActivity;
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.core.app.ActivityCompat;
+import androidx.savedstate.SavedStateRegistry;
+
+/**
+ * A {@link PickerHost} for pickers started straight from a {@link ComponentActivity},
+ * without a fragment.
+ */
+public class ActivityHost implements PickerHost {
+
+    private final ComponentActivity activity;
+
+    public ActivityHost(ComponentActivity activity) {
+        this.activity = activity;
+    }
+
+    @Override
+    public Context getContext() {
+        return activity;
+    }
+
+    @Override
+    public ActivityLauncher createLauncher(PhotoPicker picker) {
+        return new ActivityLauncher() {
+            @Override
+            public void startActivityForResult(Intent intent, int requestCode) {
+                activity.startActivityForResult(intent, requestCode);
+            }
+
+            @Override
+            public void requestPermissions(String[] permissions, int requestCode) {
+                ActivityCompat.requestPermissions(activity, permissions, requestCode);
+            }
+        };
+    }
+
+    @Override
+    public ActivityResultRegistry getActivityResultRegistry() {
+        return activity.getActivityResultRegistry();
+    }
+
+    @Override
+    public SavedStateRegistry getSavedStateRegistry() {
+        return activity.getSavedStateRegistry();
+    }
+
+}
@@ -0,0 +1,23 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Intent;
+
+/**
+ * Launches the external activities and permission requests a {@link PhotoPicker} needs, and
+ * routes their results back to it.
+ */
+public interface ActivityLauncher {
+
+    /**
+     * Starts an activity. Its result ends up in
+     * {@link PhotoPicker#handleActivityResult(int, int, Intent)} with the same request code.
+     */
+    void startActivityForResult(Intent intent, int requestCode);
+
+    /**
+     * Requests permissions. The result ends up in
+     * {@link PhotoPicker#handlePermissionsResult(int, String[], int[])} with the same request code.
+     */
+    void requestPermissions(String[] permissions, int requestCode);
+
+}
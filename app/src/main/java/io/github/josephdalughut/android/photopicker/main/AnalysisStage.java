@@ -0,0 +1,65 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import io.github.josephdalughut.android.photopicker.metrics.Span;
+import io.github.josephdalughut.android.photopicker.metrics.Tracer;
+import io.github.josephdalughut.android.photopicker.process.BatchResult;
+import io.github.josephdalughut.android.photopicker.process.ImageAnalysis;
+import io.github.josephdalughut.android.photopicker.process.ImageAnalyzer;
+
+/**
+ * Analyzes a {@link PhotoPicker}'s images before they're delivered, if
+ * {@link PhotoPicker.Builder#analyze(boolean)} is enabled. Analysis is advisory, so an image
+ * which can't be analyzed is still delivered.
+ */
+class AnalysisStage {
+
+    private static final String LOG_TAG = AnalysisStage.class.getSimpleName();
+
+    boolean enabled = false;
+    PhotoPicker.OnAnalyzedListener listener;
+
+    /**
+     * Analyzes a single pick, reporting it to the listener, then runs <code>then</code>.
+     */
+    void analyze(Context context, final Uri uri, final Tracer tracer, final Runnable then) {
+        tracer.beginAsync(Span.Name.ANALYZE);
+        new ImageAnalyzer(context).analyzeAsync(uri, new ImageAnalyzer.Callback() {
+            @Override
+            public void onAnalyzed(ImageAnalysis analysis) {
+                tracer.endAsync(Span.Name.ANALYZE, true);
+                if (listener != null) {
+                    listener.onImageAnalyzed(analysis);
+                }
+                then.run();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.d(LOG_TAG, "Unable to analyze " + uri + ": " + e.getMessage());
+                tracer.endAsync(Span.Name.ANALYZE, false);
+                then.run();
+            }
+        });
+    }
+
+    /**
+     * Analyzes a multi-photo pick, handing <code>then</code> the batch with each item's
+     * analysis.
+     */
+    void analyze(Context context, BatchResult batch, final Tracer tracer,
+                 final ImageAnalyzer.BatchCallback then) {
+        tracer.beginAsync(Span.Name.ANALYZE);
+        new ImageAnalyzer(context).analyzeAsync(batch, new ImageAnalyzer.BatchCallback() {
+            @Override
+            public void onAnalyzed(BatchResult result) {
+                tracer.endAsync(Span.Name.ANALYZE, true);
+                then.onAnalyzed(result);
+            }
+        });
+    }
+
+}
@@ -1,15 +1,21 @@
 package io.github.josephdalughut.android.photopicker.main;
 
+import android.Manifest;
 import android.annotation.SuppressLint;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.provider.MediaStore;
 
+import androidx.core.content.FileProvider;
 import androidx.fragment.app.Fragment;
 
 import java.io.IOException;
 
-import io.github.josephdalughut.android.photopicker.util.FileUtils;
+import io.github.josephdalughut.android.photopicker.util.CaptureJournal;
 
 /**
  * Created by Joseph Dalughut on 2019-09-10
@@ -20,7 +26,11 @@ import io.github.josephdalughut.android.photopicker.util.FileUtils;
 public class CameraPhotoPicker extends PhotoPicker {
 
     public CameraPhotoPicker(Fragment fragment) {
-        super(fragment);
+        this(new FragmentHost(fragment));
+    }
+
+    public CameraPhotoPicker(PickerHost host) {
+        super(host);
     }
 
     @SuppressLint("QueryPermissionsNeeded")
@@ -29,13 +39,50 @@ public class CameraPhotoPicker extends PhotoPicker {
         if (authority == null || authority.isEmpty())
             throw new IOException("Please provide a file-provider authority.");
 
-        Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        if (intent.resolveActivity(fragment.getContext().getPackageManager()) == null)
+        Prewarmer prewarmer = Prewarmer.getInstance();
+        if (prewarmer.resolveCamera(host.getContext()) == null)
             throw new IOException("Unable to open camera");
+        Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
 
-        cropUri = FileUtils.createTemporaryExternalUri(fragment.getContext(), authority);
+        if (createCaptureOutput()) {
+            // The capture is delivered as it is, so the camera writes it straight to the target.
+            captureFile = output.getFile();
+            Uri uri = output.getUri();
+            cropUri = ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()) ? uri :
+                    FileProvider.getUriForFile(host.getContext(), authority, captureFile);
+        } else {
+            Prewarmer.Capture capture = prewarmer.takeCapture(host.getContext(), authority,
+                    storage.nameGenerator);
+            captureFile = capture.getFile();
+            storage.addIntermediate(captureFile);
+            new CaptureJournal(host.getContext()).record(captureFile);
+            cropUri = capture.getUri();
+        }
         intent.putExtra(MediaStore.EXTRA_OUTPUT, cropUri);
-        fragment.startActivityForResult(intent, REQUEST_CODE_PICK_IMAGE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+        launcher.startActivityForResult(intent, requestCode(ResultRouter.PICK));
+    }
+
+    /**
+     * The camera only needs {@link Manifest.permission#CAMERA} if the app declares it in its
+     * manifest; otherwise the system lets us start the camera app without it.
+     */
+    @Override
+    String[] getSourcePermissions() {
+        Context context = host.getContext();
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(),
+                    PackageManager.GET_PERMISSIONS);
+            if (info.requestedPermissions != null) {
+                for (String permission : info.requestedPermissions) {
+                    if (Manifest.permission.CAMERA.equals(permission))
+                        return new String[]{Manifest.permission.CAMERA};
+                }
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+        return new String[0];
     }
 
 }
@@ -0,0 +1,181 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.crop.CropEngine;
+import io.github.josephdalughut.android.photopicker.crop.RegionCropEngine;
+import io.github.josephdalughut.android.photopicker.metrics.Span;
+import io.github.josephdalughut.android.photopicker.process.TiledDecoder;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Runs the crop stage of a {@link PhotoPicker}'s pick: creates the crop's output, downscales
+ * sources which wouldn't fit in the memory budget, and launches the {@link CropEngine} under
+ * the picker's own request code.
+ */
+class CropController {
+
+    private static final String LOG_TAG = CropController.class.getSimpleName();
+
+    private static final String STATE_REQUEST_CODE = "cropRequestCode";
+    private static final String STATE_OUTPUT = "cropOutput";
+
+    private final PhotoPicker picker;
+    CropEngine engine;
+    long memoryBudget = 0;
+
+    // The request code the crop engine launched with, which goes out under our own.
+    private int requestCode = -1;
+    private File output;
+
+    CropController(PhotoPicker picker) {
+        this.picker = picker;
+    }
+
+    /**
+     * Crops {@link PhotoPicker#cropUri}.
+     */
+    void start() throws Exception {
+        Uri outputUri = createOutput();
+        picker.setProgress(PickProgress.Stage.CROPPING);
+        picker.tracer.beginAsync(Span.Name.CROP);
+        if (memoryBudget > 0 && !(engine instanceof RegionCropEngine)) {
+            downscale(outputUri);
+            return;
+        }
+        engine.start(picker.host.getContext(), launcher, picker.cropUri, outputUri, callback);
+    }
+
+    /**
+     * Passes the result of the crop activity on to the engine.
+     * @return <code>true</code> if the engine handled it.
+     */
+    boolean handleActivityResult(int resultCode, Intent data) {
+        return engine != null && engine.handleActivityResult(requestCode, resultCode, data,
+                callback);
+    }
+
+    /**
+     * @return the file the crop is written to, or <code>null</code> if it isn't a file or
+     * nothing has been cropped.
+     */
+    File getOutput() {
+        return output;
+    }
+
+    private Uri createOutput() throws IOException {
+        String name = picker.storage.getCropName();
+        Context context = picker.host.getContext();
+        if (picker.outputTarget != null && picker.processingOptions == null) {
+            // The crop is what we deliver, so it goes straight to the output target.
+            picker.output = picker.outputTarget.create(context, name, "image/jpeg");
+            output = picker.output.getFile();
+            return picker.output.getUri();
+        }
+        output = picker.storage.getExternalTarget().create(context, name, "image/jpeg").getFile();
+        return Uri.fromFile(output);
+    }
+
+    /**
+     * Crop engines which decode the whole source, like uCrop, can run out of memory on huge
+     * images. Sources which wouldn't fit in {@link #memoryBudget} are downscaled in tiles to
+     * an intermediate file in the background, and that is cropped instead.
+     */
+    private void downscale(final Uri outputUri) {
+        final Context context = picker.host.getContext().getApplicationContext();
+        final Uri cropUri = picker.cropUri;
+        final File intermediate = new File(context.getCacheDir(),
+                picker.storage.nameGenerator.next("CROP", ".jpg"));
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                Uri source = cropUri;
+                Exception error = null;
+                try {
+                    if (TiledDecoder.downscale(context.getContentResolver(), cropUri, intermediate,
+                            memoryBudget)) {
+                        source = Uri.fromFile(intermediate);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    error = e;
+                }
+                final Uri cropSource = source;
+                final Exception cropError = error;
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cropError != null) {
+                            callback.onCropError(cropError);
+                            return;
+                        }
+                        if (cropSource != cropUri) picker.storage.addIntermediate(intermediate);
+                        try {
+                            engine.start(picker.host.getContext(), launcher, cropSource, outputUri,
+                                    callback);
+                        } catch (Exception e) {
+                            callback.onCropError(e);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Launches on behalf of the crop engine. Engines launch with request codes of their own,
+     * which would clash between pickers, so those go out under this picker's crop code and
+     * are handed back to the engine with its result.
+     */
+    private final ActivityLauncher launcher = new ActivityLauncher() {
+        @Override
+        public void startActivityForResult(Intent intent, int requestCode) {
+            CropController.this.requestCode = requestCode;
+            picker.launcher.startActivityForResult(intent, picker.requestCode(ResultRouter.CROP));
+        }
+
+        @Override
+        public void requestPermissions(String[] permissions, int requestCode) {
+            picker.launcher.requestPermissions(permissions, requestCode);
+        }
+    };
+
+    private final CropEngine.Callback callback = new CropEngine.Callback() {
+        @Override
+        public void onCropped(Uri uri) {
+            picker.tracer.endAsync(Span.Name.CROP, true);
+            Log.d(LOG_TAG, "Image cropped: " + uri.toString());
+            if (picker.processingOptions != null && output != null) {
+                picker.storage.addIntermediate(output);
+            }
+            picker.deliverImage(uri);
+        }
+
+        @Override
+        public void onCropError(Exception e) {
+            Log.d(LOG_TAG, "Crop error: " + e.getMessage());
+            picker.tracer.endAsync(Span.Name.CROP, false);
+            picker.finishPick(null);
+            picker.notifyError(e);
+        }
+    };
+
+    void saveState(Bundle state) {
+        state.putInt(STATE_REQUEST_CODE, requestCode);
+        if (output != null) state.putString(STATE_OUTPUT, output.getPath());
+    }
+
+    void restoreState(Bundle state) {
+        requestCode = state.getInt(STATE_REQUEST_CODE, -1);
+        String path = state.getString(STATE_OUTPUT);
+        output = path == null ? null : new File(path);
+    }
+
+}
@@ -0,0 +1,41 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.fragment.app.Fragment;
+import androidx.savedstate.SavedStateRegistry;
+
+/**
+ * A {@link PickerHost} for pickers started from a {@link Fragment}.
+ */
+public class FragmentHost implements PickerHost {
+
+    private final Fragment fragment;
+
+    public FragmentHost(Fragment fragment) {
+        this.fragment = fragment;
+    }
+
+    @Override
+    public Context getContext() {
+        return fragment.getContext();
+    }
+
+    @Override
+    public ActivityLauncher createLauncher(PhotoPicker picker) {
+        return new FragmentLauncher(fragment);
+    }
+
+    @Override
+    public ActivityResultRegistry getActivityResultRegistry() {
+        // The activity's, looked up each time, as it's replaced on configuration changes.
+        return fragment.requireActivity().getActivityResultRegistry();
+    }
+
+    @Override
+    public SavedStateRegistry getSavedStateRegistry() {
+        return fragment.getSavedStateRegistry();
+    }
+
+}
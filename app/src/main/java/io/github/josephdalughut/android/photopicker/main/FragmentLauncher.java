@@ -0,0 +1,31 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Intent;
+
+import androidx.fragment.app.Fragment;
+
+/**
+ * An {@link ActivityLauncher} which goes through the fragment's own
+ * <code>startActivityForResult</code>. The fragment has to pass its results on to the picker
+ * with {@link PhotoPicker#handleActivityResult(int, int, Intent)} and
+ * {@link PhotoPicker#handlePermissionsResult(int, String[], int[])}.
+ */
+class FragmentLauncher implements ActivityLauncher {
+
+    private final Fragment fragment;
+
+    FragmentLauncher(Fragment fragment) {
+        this.fragment = fragment;
+    }
+
+    @Override
+    public void startActivityForResult(Intent intent, int requestCode) {
+        fragment.startActivityForResult(intent, requestCode);
+    }
+
+    @Override
+    public void requestPermissions(String[] permissions, int requestCode) {
+        fragment.requestPermissions(permissions, requestCode);
+    }
+
+}
@@ -1,7 +1,7 @@
 package io.github.josephdalughut.android.photopicker.main;
 
 import android.content.Intent;
-import android.provider.MediaStore;
+import android.os.Build;
 
 import androidx.fragment.app.Fragment;
 
@@ -15,16 +15,49 @@ import java.io.IOException;
  */
 public class GalleryPhotoPicker extends PhotoPicker {
 
+    // MediaStore.ACTION_PICK_IMAGES and MediaStore.EXTRA_PICK_IMAGES_MAX, added in API 33.
+    private static final String ACTION_PICK_IMAGES = "android.provider.action.PICK_IMAGES";
+    private static final String EXTRA_PICK_IMAGES_MAX = "android.provider.extra.PICK_IMAGES_MAX";
+    private static final int API_PICK_IMAGES = 33;
+
     public GalleryPhotoPicker(Fragment fragment) {
-        super(fragment);
+        this(new FragmentHost(fragment));
+    }
+
+    public GalleryPhotoPicker(PickerHost host) {
+        super(host);
     }
 
     @Override
     void loadPhoto() throws IOException {
-        Intent intent = new Intent(Intent.ACTION_PICK);
-        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION|Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
-        intent.setDataAndType(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, "image/*");
-        fragment.startActivityForResult(Intent.createChooser(intent, "Pick Photo"),
-                REQUEST_CODE_PICK_IMAGE);
+        if (multiple) {
+            loadPhotos();
+            return;
+        }
+        launcher.startActivityForResult(Prewarmer.getInstance().getGalleryChooser(),
+                requestCode(ResultRouter.PICK));
+    }
+
+    /**
+     * Opens the system photo picker where available, or a multi-select capable
+     * {@link Intent#ACTION_GET_CONTENT} otherwise.
+     */
+    private void loadPhotos() {
+        Intent intent;
+        if (Build.VERSION.SDK_INT >= API_PICK_IMAGES) {
+            intent = new Intent(ACTION_PICK_IMAGES);
+            intent.setType("image/*");
+            if (maxCount > 1) intent.putExtra(EXTRA_PICK_IMAGES_MAX, maxCount);
+            launcher.startActivityForResult(intent, requestCode(ResultRouter.PICK));
+            return;
+        }
+
+        intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("image/*");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        launcher.startActivityForResult(Intent.createChooser(intent, "Pick Photos"),
+                requestCode(ResultRouter.PICK));
     }
 }
@@ -0,0 +1,46 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.Manifest;
+import android.content.Intent;
+import android.os.Build;
+
+import androidx.fragment.app.Fragment;
+
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.gallery.GalleryActivity;
+
+/**
+ * This is a {@link PhotoPicker} which selects images from the device's media store, with the
+ * library's own {@link GalleryActivity} rather than the system's chooser. Reading the media
+ * store needs a runtime permission, which the app must declare in its manifest:
+ * <code>READ_MEDIA_IMAGES</code> from API 33, and
+ * {@link Manifest.permission#READ_EXTERNAL_STORAGE} before it.
+ */
+public class MediaStorePhotoPicker extends PhotoPicker {
+
+    // Manifest.permission.READ_MEDIA_IMAGES, added in API 33.
+    private static final String READ_MEDIA_IMAGES = "android.permission.READ_MEDIA_IMAGES";
+    private static final int API_READ_MEDIA_IMAGES = 33;
+
+    public MediaStorePhotoPicker(Fragment fragment) {
+        this(new FragmentHost(fragment));
+    }
+
+    public MediaStorePhotoPicker(PickerHost host) {
+        super(host);
+    }
+
+    @Override
+    void loadPhoto() throws IOException {
+        launcher.startActivityForResult(new Intent(host.getContext(), GalleryActivity.class),
+                requestCode(ResultRouter.PICK));
+    }
+
+    @Override
+    String[] getSourcePermissions() {
+        if (Build.VERSION.SDK_INT >= API_READ_MEDIA_IMAGES)
+            return new String[]{READ_MEDIA_IMAGES};
+        return new String[]{Manifest.permission.READ_EXTERNAL_STORAGE};
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+/**
+ * Fails a {@link PickFuture} when the user denies the permissions the picker needs.
+ */
+public class PermissionDeniedException extends Exception {
+
+    public PermissionDeniedException() {
+        super("The permissions required to pick a photo were denied");
+    }
+
+}
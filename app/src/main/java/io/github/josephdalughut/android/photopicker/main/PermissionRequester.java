@@ -0,0 +1,81 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.github.josephdalughut.android.photopicker.metrics.Span;
+
+/**
+ * Works out which runtime permissions a {@link PhotoPicker}'s pick needs, and requests the
+ * ones which haven't been granted yet under the picker's own request code.
+ */
+class PermissionRequester {
+
+    private static final String LOG_TAG = PermissionRequester.class.getSimpleName();
+
+    private final PhotoPicker picker;
+
+    PermissionRequester(PhotoPicker picker) {
+        this.picker = picker;
+    }
+
+    /**
+     * Requests whichever of {@link #getRequired()} haven't been granted yet.
+     * @return <code>true</code> if they all have, so the pick can go ahead right away.
+     */
+    boolean request() {
+        Context context = picker.host.getContext();
+        List<String> missing = new ArrayList<>();
+        for (String permission : getRequired()) {
+            if (ContextCompat.checkSelfPermission(context, permission) != PackageManager.PERMISSION_GRANTED)
+                missing.add(permission);
+        }
+        if (missing.isEmpty()) return true;
+
+        Log.d(LOG_TAG, "Requesting permissions: " + missing);
+        picker.tracer.beginAsync(Span.Name.PERMISSIONS);
+        picker.launcher.requestPermissions(missing.toArray(new String[missing.size()]),
+                picker.requestCode(ResultRouter.PERMISSIONS));
+        return false;
+    }
+
+    /**
+     * @return the permissions the pick needs: those of its source, and those of wherever it
+     * writes. Picking from the gallery and writing to app-specific storage need none.
+     */
+    String[] getRequired() {
+        Set<String> permissions = new LinkedHashSet<>();
+        Collections.addAll(permissions, picker.getSourcePermissions());
+        if (picker.cropped || picker instanceof CameraPhotoPicker) {
+            // Captures and crops go to the app's external files directory.
+            Collections.addAll(permissions, picker.storage.getExternalTarget().getRequiredPermissions());
+        }
+        if (picker.outputTarget != null) {
+            Collections.addAll(permissions, picker.outputTarget.getRequiredPermissions());
+        }
+        return permissions.toArray(new String[permissions.size()]);
+    }
+
+    /**
+     * Ends the permissions span of a request made by {@link #request()}.
+     * @return <code>true</code> if every permission was granted.
+     */
+    boolean handleResult(int[] grantResults) {
+        boolean granted = grantResults.length > 0;
+        for (int result : grantResults) {
+            if (result != PackageManager.PERMISSION_GRANTED) granted = false;
+        }
+        picker.tracer.endAsync(Span.Name.PERMISSIONS, granted);
+        return granted;
+    }
+
+}
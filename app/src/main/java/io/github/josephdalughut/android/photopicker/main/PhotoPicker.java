@@ -1,67 +1,181 @@
 package io.github.josephdalughut.android.photopicker.main;
 
-import android.Manifest;
 import android.app.Activity;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.Environment;
+import android.os.Bundle;
 import android.util.Log;
 
 import androidx.annotation.ColorRes;
-import androidx.core.content.ContextCompat;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.savedstate.SavedStateRegistry;
 
 import com.yalantis.ucrop.UCrop;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
-import io.github.josephdalughut.android.photopicker.R;
-
-import static com.yalantis.ucrop.UCrop.REQUEST_CROP;
+import io.github.josephdalughut.android.photopicker.crop.CropEngine;
+import io.github.josephdalughut.android.photopicker.crop.RegionCropEngine;
+import io.github.josephdalughut.android.photopicker.crop.UCropEngine;
+import io.github.josephdalughut.android.photopicker.metrics.MetricsListener;
+import io.github.josephdalughut.android.photopicker.metrics.Span;
+import io.github.josephdalughut.android.photopicker.metrics.Tracer;
+import io.github.josephdalughut.android.photopicker.output.FileTarget;
+import io.github.josephdalughut.android.photopicker.output.MediaStoreTarget;
+import io.github.josephdalughut.android.photopicker.output.Output;
+import io.github.josephdalughut.android.photopicker.output.OutputTarget;
+import io.github.josephdalughut.android.photopicker.process.BatchProcessor;
+import io.github.josephdalughut.android.photopicker.process.BatchResult;
+import io.github.josephdalughut.android.photopicker.process.ImageAnalysis;
+import io.github.josephdalughut.android.photopicker.process.ImageAnalyzer;
+import io.github.josephdalughut.android.photopicker.process.ImageCache;
+import io.github.josephdalughut.android.photopicker.process.ImageProcessor;
+import io.github.josephdalughut.android.photopicker.process.OutputFormat;
+import io.github.josephdalughut.android.photopicker.process.ProcessedImage;
+import io.github.josephdalughut.android.photopicker.process.ProcessingOptions;
+import io.github.josephdalughut.android.photopicker.process.ThumbnailLoader;
+import io.github.josephdalughut.android.photopicker.process.TiledDecoder;
+import io.github.josephdalughut.android.photopicker.util.CaptureJournal;
+import io.github.josephdalughut.android.photopicker.util.FileNameGenerator;
+import io.github.josephdalughut.android.photopicker.util.StorageManager;
+import io.github.josephdalughut.android.photopicker.upload.UploadOptions;
+import io.github.josephdalughut.android.photopicker.upload.UploadWorker;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
 
 /**
  * Created by Joseph Dalughut on 2019-09-10
  * Copyright © 2019
  *
- * Base class for each kind of photo picker.
+ * Base class for each kind of photo picker. A picker only reaches its surroundings through a
+ * {@link PickerHost}, so it runs the same in a fragment, an activity or a Compose screen.
+ *
+ * The picker itself runs the pick and delivers its result; its stages are left to
+ * collaborators: {@link PermissionRequester}, {@link CropController}, {@link AnalysisStage}
+ * and {@link UploadScheduler}. Files are placed and cleaned up by {@link PickStorage}, and
+ * saved across process death by {@link PickerState}.
  */
 public abstract class PhotoPicker {
 
     private static final String LOG_TAG = PhotoPicker.class.getSimpleName();
 
-    private static final int REQUEST_CODE_PERMISSIONS = 404;
-    static final int REQUEST_CODE_PICK_IMAGE = 405;
+    // Key of the picker's state in the host's SavedStateRegistry.
+    private static final String STATE_KEY = "io.github.josephdalughut.android.photopicker";
 
-    Fragment fragment;
+    final PickerHost host;
+    ActivityLauncher launcher;
+    // The picker's slot in the ResultRouter, which its request codes are derived from.
+    int slot;
     private OnResultListener mOnResultListener;
-    private String fileName;
-    private String folderName;
     String authority;
-    private boolean cached = false;
-    private boolean cropped = true;
-    private boolean timestamped = false;
+    boolean cropped = true;
+
+    final PickStorage storage = new PickStorage();
+    final CropController crop = new CropController(this);
+    private final PermissionRequester permissions = new PermissionRequester(this);
+    private final AnalysisStage analysis = new AnalysisStage();
+    private final UploadScheduler uploads = new UploadScheduler();
+    // Created by the Builder, under its key.
+    private PickerState state;
 
-    @ColorRes
-    private Integer colorRes = R.color.colorPrimary;
-    private UCrop.Options options;
+    ProcessingOptions processingOptions;
+    private OnProcessedListener mOnProcessedListener;
+    private OnBatchResultListener mOnBatchResultListener;
+    private ImageCache cache;
+    boolean multiple = false;
+    int maxCount = 0;
+    int thumbnailSize = 0;
+    // The picker's own, as it tracks the pick's async spans.
+    Tracer tracer = new Tracer(null);
+    OutputTarget outputTarget;
 
     // Uri we'll be cropping from.
     Uri cropUri;
+    File captureFile;
+    // Where the delivered image is written when an OutputTarget is set, until it's committed.
+    Output output;
+    // Set once the result is cancelled, after which the pick's work is dropped, not delivered.
+    private boolean canceled;
 
+    private final PickFuture<Uri> result = new PickFuture<>();
+    private final PickFuture<BatchResult> batchResult = new PickFuture<>();
 
 
     /**
      * Creates a new instance.
-     * @param fragment the fragment handling this instance and handling the photo picking.
+     * @param host whatever is handling this instance and the photo picking.
+     */
+    PhotoPicker(PickerHost host) {
+        this.host = host;
+        this.launcher = host.createLauncher(this);
+        this.slot = ResultRouter.getInstance().register(this);
+        // No more results are expected once a pick finishes, so its request codes can go.
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                ResultRouter.getInstance().release(PhotoPicker.this, slot);
+            }
+        };
+        result.whenDone(release);
+        batchResult.whenDone(release);
+        // Cancelling may happen on any thread, but the pick's state is only touched on the main one.
+        Runnable cancel = new Runnable() {
+            @Override
+            public void run() {
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCanceled();
+                    }
+                });
+            }
+        };
+        result.setOnCancel(cancel);
+        batchResult.setOnCancel(cancel);
+    }
+
+    /**
+     * Stops the pick once its result is cancelled: whatever was written for it is removed,
+     * and work still in flight is dropped instead of being delivered.
+     */
+    private void onCanceled() {
+        if (canceled) return;
+        Log.d(LOG_TAG, "Pick cancelled");
+        canceled = true;
+        tracer.endAsync(Span.Name.PICKER, false);
+        tracer.endAsync(Span.Name.PICK, false);
+        abandonOutput();
+        finishPick(null);
+    }
+
+    /**
+     * @return this picker's request code for a kind of launch, e.g {@link ResultRouter#PICK}.
+     * It's unique to the picker, so pickers sharing a host only handle their own results.
+     */
+    int requestCode(int kind) {
+        return ResultRouter.requestCode(slot, kind);
+    }
+
+    /**
+     * @return a handle on the result of a single-photo pick.
+     */
+    public PickFuture<Uri> getResult() {
+        return result;
+    }
+
+    /**
+     * @return a handle on the result of a multi-photo pick.
+     * @see Builder#multiple(boolean)
      */
-    PhotoPicker(Fragment fragment) {
-        this.fragment = fragment;
+    public PickFuture<BatchResult> getBatchResult() {
+        return batchResult;
     }
 
     /**
@@ -69,54 +183,58 @@ public abstract class PhotoPicker {
      */
     void start() {
         Log.d(LOG_TAG, "Starting photo picker");
-        if (hasPermissions()) {
+        tracer.beginAsync(Span.Name.PICK);
+        state.register();
+        storage.enforceQuota(host.getContext());
+        setProgress(PickProgress.Stage.PERMISSIONS);
+        if (permissions.request()) {
             tryLoadPhoto();
         }
     }
 
     private void tryLoadPhoto() {
+        setProgress(PickProgress.Stage.PICKING);
+        tracer.beginAsync(Span.Name.PICKER);
         try {
             loadPhoto();
         } catch (IOException e) {
             e.printStackTrace();
-            if (mOnResultListener != null) {
-                mOnResultListener.onImageError(e);
-            }
+            tracer.endAsync(Span.Name.PICKER, false);
+            notifyError(e);
         }
     }
 
-    private boolean hasPermissions() {
-        Context context = fragment.getContext();
-        boolean hasCameraPermissions = ContextCompat.checkSelfPermission(context,
-                Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
-        boolean hasStoragePermissions = ContextCompat.checkSelfPermission(context,
-                Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
-        boolean hasPermissions = hasCameraPermissions && hasStoragePermissions;
-        if (!hasPermissions) {
-            fragment.requestPermissions(new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE,
-                            Manifest.permission.CAMERA},
-                    REQUEST_CODE_PERMISSIONS);
-        }
-        return hasPermissions;
+    /**
+     * @return the permissions needed to read from this picker's source.
+     */
+    String[] getSourcePermissions() {
+        return new String[0];
     }
 
     abstract void loadPhoto() throws IOException;
 
+    Source getSource() {
+        if (this instanceof CameraPhotoPicker) return Source.CAMERA;
+        if (this instanceof MediaStorePhotoPicker) return Source.MEDIA_STORE;
+        return Source.GALLERY;
+    }
+
     /**
      * Call this to allow the picker handle permissions results from your
-     * {@link Fragment#onRequestPermissionsResult(int, String[], int[])} callback.
+     * <code>onRequestPermissionsResult</code> callback, if your {@link PickerHost} forwards it.
      * @param requestCode the request code from the callback.
      * @param permissions the array of permissions requested.
      * @param grantResults the results of the request.
      * @return <code>true</code> if the request was made by this photo-picker.
+     * @see ResultRouter#dispatchPermissionsResult(int, String[], int[])
      */
     public boolean handlePermissionsResult(int requestCode, String permissions[], int[] grantResults) {
-        if (requestCode != REQUEST_CODE_PERMISSIONS) return false;
+        if (canceled || requestCode != requestCode(ResultRouter.PERMISSIONS)) return false;
 
-        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+        if (this.permissions.handleResult(grantResults)) {
             tryLoadPhoto();
-        } else if (mOnResultListener != null) {
-            mOnResultListener.onPermissionDenied();
+        } else {
+            notifyPermissionDenied();
         }
         return true;
     }
@@ -128,95 +246,450 @@ public abstract class PhotoPicker {
      * @param resultCode the result of the operation
      * @param data the accompanying data
      * @return <code>true</code> if the picker handled this request.
+     * @see ResultRouter#dispatchActivityResult(int, int, Intent)
      */
     public boolean handleActivityResult(int requestCode, int resultCode, Intent data) {
         Log.d(LOG_TAG, "Handling activity result, code: " + resultCode);
-        if (requestCode != REQUEST_CODE_PICK_IMAGE && requestCode != REQUEST_CROP) return false;
+        if (canceled) return false;
+        if (requestCode == requestCode(ResultRouter.CROP)) {
+            return crop.handleActivityResult(resultCode, data);
+        }
+        if (requestCode != requestCode(ResultRouter.PICK)) return false;
+        tracer.endAsync(Span.Name.PICKER, resultCode == Activity.RESULT_OK);
         if (resultCode != Activity.RESULT_OK) {
             Log.d(LOG_TAG, "Error from activity");
-            if (mOnResultListener != null) {
-                mOnResultListener.onImageError(new Exception("The image couldn't be loaded"));
-            }
+            finishPick(null);
+            notifyError(new Exception(multiple ? "The images couldn't be loaded" : "The image couldn't be loaded"));
             return true;
         }
 
-        switch (requestCode) {
-            case REQUEST_CODE_PICK_IMAGE:
-                if (data != null && data.getData() != null) {
-                    Log.d(LOG_TAG, "Uri: " + data.getData());
-                    Log.d(LOG_TAG, "Crop uri: " + cropUri);
-                    cropUri = data.getData();
-                } else {
-                    Log.d(LOG_TAG, "No uri");
+        if (multiple) {
+            deliverBatch(readUris(data));
+            return true;
+        }
+        if (data != null && data.getData() != null) {
+            Log.d(LOG_TAG, "Uri: " + data.getData());
+            Log.d(LOG_TAG, "Crop uri: " + cropUri);
+            cropUri = data.getData();
+        } else {
+            Log.d(LOG_TAG, "No uri");
+        }
+
+        if (cropped) {
+            try {
+                crop.start();
+            } catch (Exception e) {
+                e.printStackTrace();
+                tracer.endAsync(Span.Name.CROP, false);
+                finishPick(null);
+                notifyError(new Exception("An error occurred while cropping your image."));
+            }
+        } else {
+            deliverImage(cropUri);
+        }
+        return true;
+    }
+
+    /**
+     * Reads every picked {@link Uri} from a multi-select result, in selection order.
+     */
+    private List<Uri> readUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+        if (data == null) return uris;
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                Uri uri = clipData.getItemAt(i).getUri();
+                if (uri != null) uris.add(uri);
+            }
+        } else if (data.getData() != null) {
+            uris.add(data.getData());
+        }
+        if (maxCount > 0 && uris.size() > maxCount) {
+            uris = new ArrayList<>(uris.subList(0, maxCount));
+        }
+        Log.d(LOG_TAG, "Picked " + uris.size() + " uris");
+        return uris;
+    }
+
+    /**
+     * Sets up {@link #output} for a camera capture which is delivered as it is, so the camera
+     * can write straight to the output target.
+     * @return <code>false</code> if the capture is cropped or processed first, or there's
+     * no output target.
+     */
+    boolean createCaptureOutput() throws IOException {
+        if (outputTarget == null || cropped || processingOptions != null) return false;
+        output = outputTarget.create(host.getContext(), storage.nextCaptureName(), "image/jpeg");
+        return true;
+    }
+
+    /**
+     * Deletes the current pick's intermediate files.
+     * @param result the file handed to the listener, which is kept. May be <code>null</code>.
+     */
+    void finishPick(File result) {
+        if (captureFile != null) {
+            new CaptureJournal(host.getContext()).clear(captureFile);
+        }
+        storage.release(result);
+    }
+
+    /**
+     * Hands the picked (and possibly cropped) image to the listener, running it through the
+     * processing stage first if one was configured.
+     */
+    void deliverImage(Uri uri) {
+        if (canceled) {
+            finishPick(null);
+            return;
+        }
+        if (processingOptions == null) {
+            finishPick(cropped ? crop.getOutput() : captureFile);
+            if (output != null) {
+                publish(output, null);
+                return;
+            }
+            prefetchThumbnail(uri);
+            notifyPicked(uri);
+            return;
+        }
+
+        File file;
+        try {
+            Context context = host.getContext();
+            String extension = processingOptions.getExtension();
+            if (outputTarget != null) {
+                output = outputTarget.create(context, storage.nextName(extension),
+                        processingOptions.getMimeType());
+            }
+            if (output != null && output.getFile() != null) {
+                file = output.getFile();
+            } else {
+                // Processing needs a file, so MediaStore outputs are staged in private storage.
+                file = storage.createProcessedFile(context, extension);
+                if (output != null) storage.addIntermediate(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            finishPick(null);
+            notifyError(e);
+            return;
+        }
+        final File processed = file;
+
+        setProgress(PickProgress.Stage.PROCESSING);
+        ImageProcessor processor = new ImageProcessor(host.getContext(), processingOptions)
+                .setCache(cache)
+                .setTracer(tracer);
+        processor.processAsync(uri, processed, new ImageProcessor.Callback() {
+            @Override
+            public void onProcessed(ProcessedImage image) {
+                if (canceled) {
+                    image.getFile().delete();
+                    finishPick(null);
+                    return;
+                }
+                if (output != null) {
+                    publish(output, image);
+                    return;
+                }
+                finishPick(null);
+                prefetchThumbnail(image.getUri());
+                if (mOnProcessedListener != null) {
+                    mOnProcessedListener.onImageProcessed(image);
                 }
+                notifyPicked(image.getUri());
+            }
+
+            @Override
+            public void onError(Exception e) {
+                e.printStackTrace();
+                finishPick(null);
+                if (!canceled) notifyError(e);
+            }
+        });
+    }
+
 
-                if (cropped) {
-                    try {
-                        startCrop();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        mOnResultListener.onImageError(new Exception("An error occurred while cropping your image."));
+
+    /**
+     * Commits {@link #output} in the background, copying the processed image into it first if
+     * it was staged elsewhere, then delivers it. It's kept in {@link #output} until it's
+     * delivered, so a pick cancelled while it's being analyzed still removes it.
+     * @param image the processed image, or <code>null</code> if the output was written
+     *              directly, e.g by the crop engine or camera.
+     */
+    private void publish(final Output output, @Nullable final ProcessedImage image) {
+        final Context context = host.getContext().getApplicationContext();
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (image != null && !image.getFile().equals(output.getFile())) {
+                        output.write(context, image.getFile());
                     }
-                } else {
-                    mOnResultListener.onImagePicked(cropUri);
+                    output.commit(context);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishPick(null);
+                            if (canceled) abandon(output);
+                            else notifyError(e);
+                        }
+                    });
+                    return;
                 }
-                break;
-            case REQUEST_CROP:
-                Log.d(LOG_TAG, "Request crop result: " + data);
-                if (data != null) {
-                    onPhotoCropped(UCrop.getOutput(data));
-                } else if (mOnResultListener != null) {
-                    mOnResultListener.onImageError(new Exception("An error occurred while cropping your image."));
-                }
-                break;
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (canceled) {
+                            abandon(output);
+                            return;
+                        }
+                        finishPick(null);
+                        prefetchThumbnail(output.getUri());
+                        if (image != null && mOnProcessedListener != null) {
+                            mOnProcessedListener.onImageProcessed(image);
+                        }
+                        notifyPicked(output.getUri());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts loading the result's thumbnail as soon as we have it, so a preview requested
+     * from {@link OnResultListener#onImagePicked(Uri)} is ready sooner.
+     */
+    private void prefetchThumbnail(Uri uri) {
+        if (thumbnailSize <= 0) return;
+        ThumbnailLoader.getInstance(host.getContext()).load(uri, thumbnailSize,
+                new ThumbnailLoader.Callback() {
+                    @Override
+                    public void onThumbnail(Uri uri, Bitmap thumbnail) {
+                    }
+
+                    @Override
+                    public void onError(Uri uri, Exception e) {
+                        Log.d(LOG_TAG, "Unable to prefetch thumbnail for " + uri);
+                    }
+                });
+    }
+
+    /**
+     * Loads a small preview of a picked image, without decoding it at full size.
+     * Previews are cached in memory and on disk.
+     * @param uri the picked image, e.g from {@link OnResultListener#onImagePicked(Uri)}.
+     * @param size the longest side of the preview in pixels. Use the same size as
+     *             {@link Builder#thumbnailSize(int)} to pick up the prefetched preview.
+     * @param callback receives the preview on the main thread.
+     */
+    public void loadThumbnail(Uri uri, int size, ThumbnailLoader.Callback callback) {
+        ThumbnailLoader.getInstance(host.getContext()).load(uri, size, callback);
+    }
+
+    /**
+     * Hands a multi-photo pick to the batch listener, processing every image concurrently
+     * first if a processing stage was configured. Multi-photo picks aren't cropped.
+     */
+    private void deliverBatch(final List<Uri> uris) {
+        if (uris.isEmpty()) {
+            notifyError(new Exception("No images were selected"));
+            return;
         }
-        return true;
+        if (processingOptions == null) {
+            notifyBatch(BatchResult.unprocessed(uris));
+            return;
+        }
+        setProgress(PickProgress.Stage.PROCESSING, 0, uris.size());
+
+        final Context context = host.getContext().getApplicationContext();
+        final String extension = processingOptions.getExtension();
+        BatchProcessor processor = new BatchProcessor(context, processingOptions,
+                new BatchProcessor.OutputFactory() {
+                    @Override
+                    public File createOutput(int index) throws IOException {
+                        if (outputTarget instanceof FileTarget) {
+                            return outputTarget.create(context, storage.nextName(extension),
+                                    processingOptions.getMimeType()).getFile();
+                        }
+                        return storage.createProcessedFile(context, extension);
+                    }
+                });
+        processor.setCache(cache);
+        processor.setTracer(tracer);
+        processor.process(uris, new BatchProcessor.Callback() {
+            @Override
+            public void onItemComplete(BatchResult.Item item, int completed, int total) {
+                if (canceled) return;
+                setProgress(PickProgress.Stage.PROCESSING, completed, total);
+                if (mOnBatchResultListener != null) {
+                    mOnBatchResultListener.onImageProgress(item, completed, total);
+                }
+            }
+
+            @Override
+            public void onComplete(BatchResult result) {
+                if (canceled) {
+                    for (BatchResult.Item item : result.getItems()) {
+                        if (item.getImage() != null) item.getImage().getFile().delete();
+                    }
+                    return;
+                }
+                notifyBatch(result);
+            }
+        });
     }
 
-    private Uri createImageFile() {
-        File fileDir = cached ? fragment.getContext().getExternalCacheDir() : fragment.getContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        String finalFolderName = folderName == null || folderName.trim().isEmpty() ? "" : folderName;
-        String imagePath = fileDir + File.separator + finalFolderName;
-        File path = new File(imagePath);
-        if (!path.exists()) path.mkdir();
+    void setProgress(PickProgress.Stage stage) {
+        setProgress(stage, 0, 0);
+    }
 
-        String name = fileName == null || fileName.trim().isEmpty() ? "" : fileName;
-        if (this.timestamped || name.isEmpty()) {
-            if (!name.isEmpty()) name += "_";
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-            name += timeStamp;
+    private void setProgress(PickProgress.Stage stage, int completed, int total) {
+        if (multiple) batchResult.setProgress(stage, completed, total);
+        else result.setProgress(stage, completed, total);
+    }
+
+    /**
+     * Delivers the picked image, analyzing it first if {@link Builder#analyze(boolean)} is
+     * enabled. Analysis is advisory, so an image which can't be analyzed is still delivered.
+     */
+    private void notifyPicked(final Uri uri) {
+        if (!analysis.enabled) {
+            deliverPicked(uri);
+            return;
         }
-        name += ".jpg";
+        setProgress(PickProgress.Stage.ANALYZING);
+        analysis.analyze(host.getContext(), uri, tracer, new Runnable() {
+            @Override
+            public void run() {
+                deliverPicked(uri);
+            }
+        });
+    }
 
-        File photo = new File(path, name);
-        return Uri.fromFile(photo);
+    private void deliverPicked(Uri uri) {
+        if (canceled) return;
+        output = null;
+        if (mOnResultListener != null) {
+            mOnResultListener.onImagePicked(uri);
+        }
+        tracer.endAsync(Span.Name.PICK, true);
+        result.set(uri);
+        uploads.schedule(host.getContext(), uri);
     }
 
-    private void startCrop() throws Exception {
-        Uri outputUri = createImageFile();
+    /**
+     * Delivers a multi-photo pick, analyzing its images first if
+     * {@link Builder#analyze(boolean)} is enabled.
+     */
+    private void notifyBatch(BatchResult batch) {
+        if (!analysis.enabled) {
+            deliverBatchResult(batch);
+            return;
+        }
+        setProgress(PickProgress.Stage.ANALYZING, 0, batch.getItems().size());
+        analysis.analyze(host.getContext(), batch, tracer, new ImageAnalyzer.BatchCallback() {
+            @Override
+            public void onAnalyzed(BatchResult result) {
+                deliverBatchResult(result);
+            }
+        });
+    }
 
-        UCrop.Options options = this.options;
+    private void deliverBatchResult(BatchResult batch) {
+        if (canceled) return;
+        if (mOnBatchResultListener != null) {
+            mOnBatchResultListener.onImagesPicked(batch);
+        }
+        tracer.endAsync(Span.Name.PICK, true);
+        batchResult.set(batch);
+        for (BatchResult.Item item : batch.getItems()) {
+            if (item.isSuccessful()) uploads.schedule(host.getContext(), item.getUri());
+        }
+    }
 
-        if (options == null) {
-            options = new UCrop.Options();
-            int color = fragment.getResources().getColor(this.colorRes);
-            options.setToolbarColor(color);
-            options.setStatusBarColor(color);
-            options.setActiveControlsWidgetColor(color);
-            options.setFreeStyleCropEnabled(true);
+    void notifyError(Exception e) {
+        if (canceled) return;
+        tracer.endAsync(Span.Name.PICK, false);
+        abandonOutput();
+        if (multiple) {
+            if (mOnBatchResultListener != null) {
+                mOnBatchResultListener.onImageError(e);
+            }
+            batchResult.setException(e);
+        } else {
+            if (mOnResultListener != null) {
+                mOnResultListener.onImageError(e);
+            }
+            result.setException(e);
         }
+    }
 
-        UCrop uCrop = UCrop.of(cropUri, outputUri)
-                .useSourceImageAspectRatio()
-                .withOptions(options);
-        uCrop.start(fragment.getActivity(), fragment);
+    /**
+     * Removes {@link #output} in the background, e.g after a failed or canceled pick.
+     */
+    private void abandonOutput() {
+        if (output == null) return;
+        abandon(output);
+        output = null;
+    }
+
+    private void abandon(final Output abandoned) {
+        final Context context = host.getContext().getApplicationContext();
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                abandoned.abandon(context);
+            }
+        });
     }
 
-    private void onPhotoCropped(Uri uri) {
-        Log.d(LOG_TAG, "Image cropped: "+uri.toString());
+    private void notifyPermissionDenied() {
+        if (canceled) return;
+        tracer.endAsync(Span.Name.PICK, false);
         if (mOnResultListener != null) {
-            mOnResultListener.onImagePicked(uri);
+            mOnResultListener.onPermissionDenied();
         }
+        if (multiple) batchResult.setException(new PermissionDeniedException());
+        else result.setException(new PermissionDeniedException());
+    }
+
+
+
+    /**
+     * Finds camera captures left behind by picks the process didn't survive, e.g because the
+     * system killed it while the camera was open and the picker was never restored. Empty
+     * captures are deleted. Call this after restoring any picker, so its capture isn't
+     * mistaken for an orphan.
+     * @return the orphaned captures which hold a photo, oldest first. They're no longer
+     * tracked, so delete them once you're done.
+     */
+    public static List<File> recoverOrphanedCaptures(Context context) {
+        return new CaptureJournal(context).recoverOrphans(StorageManager.getInstance().getInFlight());
+    }
+
+    /**
+     * Gets pickers ready ahead of time, in the background, so they open faster when tapped:
+     * the camera and gallery activities are resolved, and uCrop and the processing stage are
+     * loaded. Call this early, e.g when the screen with the "pick photo" button opens.
+     * @see Prewarmer
+     */
+    public static void prewarm(Context context) {
+        Prewarmer.getInstance().prewarm(context, null);
+    }
+
+    /**
+     * Like {@link #prewarm(Context)}, and also creates a few capture files and their uris
+     * ahead of time for camera pickers using <code>authority</code>.
+     * @param authority the file-provider authority passed to {@link Builder#authority(String)}.
+     */
+    public static void prewarm(Context context, String authority) {
+        Prewarmer.getInstance().prewarm(context, authority);
     }
 
 
@@ -239,6 +712,26 @@ public abstract class PhotoPicker {
         private OnResultListener onResultListener;
         private Integer colorRes;
         private UCrop.Options uCropOptions;
+        private CropEngine cropEngine;
+        private ProcessingOptions processingOptions;
+        private OnProcessedListener onProcessedListener;
+        private OnBatchResultListener onBatchResultListener;
+        private ImageCache cache;
+        private long quotaBytes = 0;
+        private long quotaAgeMillis = 0;
+        private int thumbnailSize = 0;
+        private boolean multiple = false;
+        private int maxCount = 0;
+        private MetricsListener metricsListener;
+        private FileNameGenerator.Policy namingPolicy;
+        private OutputTarget outputTarget;
+        private OutputFormat format;
+        private long memoryBudget = 0;
+        private UploadOptions uploadOptions;
+        private OnUploadListener onUploadListener;
+        private boolean analyze = false;
+        private OnAnalyzedListener onAnalyzedListener;
+        private String key;
 
         /**
          * Sets the name of the photo file
@@ -259,13 +752,26 @@ public abstract class PhotoPicker {
         /**
          * Sets the {@link Source} of the photo.
          *
-         * Options include {@link Source#CAMERA} or {@link Source#GALLERY}
+         * Options include {@link Source#CAMERA}, {@link Source#GALLERY} or
+         * {@link Source#MEDIA_STORE}
          */
         public Builder source(Source source) {
             this.source = source;
             return this;
         }
 
+        /**
+         * Names the picker, for when several share a host, e.g an avatar and a cover photo
+         * picker in one fragment. Each is then saved under its own key, and restored with
+         * {@link #restore(Fragment)} on a builder given the same key. Their results are kept
+         * apart regardless, as each picker has request codes of its own; see
+         * {@link ResultRouter}.
+         */
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
         /**
          * Sets the {@link androidx.core.content.FileProvider} authority used in sharing files
          * with external apps.
@@ -315,6 +821,218 @@ public abstract class PhotoPicker {
             return this;
         }
 
+        /**
+         * Sets the {@link CropEngine} used when {@link #cropped(boolean)} is enabled. This
+         * defaults to a {@link UCropEngine} configured by {@link #color(Integer)} and
+         * {@link #uCropOptions(UCrop.Options)}.
+         *
+         * @see RegionCropEngine
+         */
+        public Builder cropEngine(CropEngine cropEngine) {
+            this.cropEngine = cropEngine;
+            return this;
+        }
+
+        /**
+         * Enables the processing stage, which downsamples and re-encodes the picked image on a
+         * background thread before it is delivered to
+         * {@link OnResultListener#onImagePicked(Uri)}.
+         *
+         * @see ProcessingOptions
+         */
+        public Builder processing(ProcessingOptions processingOptions) {
+            this.processingOptions = processingOptions;
+            return this;
+        }
+
+        /**
+         * Sets the format the delivered image is encoded in, e.g {@link OutputFormat#WEBP_LOSSY}
+         * or {@link OutputFormat#HEIC}, which are much smaller than JPEG at the same perceived
+         * quality. This enables the processing stage with default {@link ProcessingOptions}
+         * if {@link #processing(ProcessingOptions)} isn't set, and overrides its format if it
+         * is. Combine with {@link ProcessingOptions.Builder#maxBytes(long)} to hit a target
+         * size.
+         */
+        public Builder format(OutputFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Sets the peak memory the crop and processing stages may use, so images of any size
+         * (e.g 100+ MP panoramas) can be picked without running out of memory. Images which
+         * wouldn't fit are decoded in tiles and delivered downscaled. This enables the
+         * processing stage like {@link #format(OutputFormat)} does, and overrides
+         * {@link ProcessingOptions.Builder#maxMemoryBytes(long)} if it's set.
+         * @param bytes the budget, or <code>0</code> to leave the crop stage unbounded and the
+         *              processing stage at {@link TiledDecoder#getDefaultBudget()}.
+         * @see TiledDecoder
+         */
+        public Builder memoryBudget(long bytes) {
+            if (bytes < 0) throw new IllegalArgumentException("bytes must be >= 0");
+            this.memoryBudget = bytes;
+            return this;
+        }
+
+        /**
+         * Sets an {@link ImageCache} for the processing stage. Re-picking an image which was
+         * already processed with the same {@link ProcessingOptions} then delivers a copy of
+         * the cached output instead of processing it again.
+         *
+         * @see ImageCache#getDefault(Context)
+         */
+        public Builder cache(ImageCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Puts the output directories under a storage quota. Each time a picker starts, the
+         * oldest files are deleted in the background until each directory fits its quota.
+         * Pickers saving to other folders keep their own quotas.
+         * Only the picker's own folder is swept: if no {@link #folderName(String)} is set,
+         * outputs go in a <code>photopicker</code> folder rather than the storage root.
+         * @param maxBytes the size each output directory may grow to, or <code>0</code> for
+         *                 no limit.
+         * @param maxAgeMillis how old an output file may get, or <code>0</code> for no limit.
+         * @see StorageManager
+         */
+        public Builder storageQuota(long maxBytes, long maxAgeMillis) {
+            this.quotaBytes = maxBytes;
+            this.quotaAgeMillis = maxAgeMillis;
+            return this;
+        }
+
+        /**
+         * Sets the size of the preview you'll load with
+         * {@link PhotoPicker#loadThumbnail(Uri, int, ThumbnailLoader.Callback)}, so it can be
+         * generated as soon as the image is ready. <code>0</code> disables prefetching.
+         */
+        public Builder thumbnailSize(int thumbnailSize) {
+            this.thumbnailSize = thumbnailSize;
+            return this;
+        }
+
+        /**
+         * Enables/disables picking several photos at once. This only applies to
+         * {@link Source#GALLERY}, and multi-photo picks aren't cropped. Results are delivered
+         * to the {@link OnBatchResultListener}.
+         */
+        public Builder multiple(boolean multiple) {
+            this.multiple = multiple;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of photos which can be picked when {@link #multiple(boolean)}
+         * is enabled. <code>0</code> means no limit.
+         */
+        public Builder maxCount(int maxCount) {
+            this.maxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OnBatchResultListener} which would receive multi-photo picks.
+         */
+        public Builder setOnBatchResultListener(OnBatchResultListener onBatchResultListener) {
+            this.onBatchResultListener = onBatchResultListener;
+            return this;
+        }
+
+        /**
+         * Enables the analysis stage, which computes perceptual hashes and a sharpness score
+         * for each delivered image, in a few milliseconds per image, so near-duplicates and
+         * blurry photos can be rejected before they're uploaded. Single picks report it to
+         * {@link OnAnalyzedListener}; multi-photo picks carry it on each
+         * {@link BatchResult.Item}.
+         *
+         * @see ImageAnalysis
+         * @see BatchResult#getNearDuplicates()
+         */
+        public Builder analyze(boolean analyze) {
+            this.analyze = analyze;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OnAnalyzedListener} which would receive the analysis of each
+         * single-photo pick. This is only called if {@link #analyze(boolean)} is enabled.
+         */
+        public Builder setOnAnalyzedListener(OnAnalyzedListener onAnalyzedListener) {
+            this.onAnalyzedListener = onAnalyzedListener;
+            return this;
+        }
+
+        /**
+         * Enables the upload stage. Each delivered image is uploaded in the background, in
+         * resumable chunks, right after it's handed to the listener, so it's usually
+         * underway while the user is still on the next screen. Uploads are run by
+         * WorkManager, so they wait for a network and survive process death.
+         *
+         * @see UploadOptions
+         * @see UploadWorker
+         */
+        public Builder upload(UploadOptions uploadOptions) {
+            this.uploadOptions = uploadOptions;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OnUploadListener} which would be told when each upload is
+         * scheduled. This is only called if {@link #upload(UploadOptions)} is set.
+         */
+        public Builder setOnUploadListener(OnUploadListener onUploadListener) {
+            this.onUploadListener = onUploadListener;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OnProcessedListener} which would receive the details of each
+         * processed image. This is only called if {@link #processing(ProcessingOptions)} is set.
+         */
+        public Builder setOnProcessedListener(OnProcessedListener onProcessedListener) {
+            this.onProcessedListener = onProcessedListener;
+            return this;
+        }
+
+        /**
+         * Sets the {@link OutputTarget} the delivered image is written to: the crop, the
+         * processed image, or the camera capture if it's neither cropped nor processed.
+         * Gallery picks which aren't cropped or processed are delivered as they are. Batch
+         * picks only use {@link FileTarget}s.
+         *
+         * The picker only asks for the runtime permissions the source and target need; with
+         * {@link FileTarget#internal(boolean, String)}, or {@link MediaStoreTarget} on API 29+,
+         * a gallery pick needs none. By default crops go to the app's external files
+         * directory and processed images to its internal files directory.
+         */
+        public Builder output(OutputTarget outputTarget) {
+            this.outputTarget = outputTarget;
+            return this;
+        }
+
+        /**
+         * Sets the {@link FileNameGenerator.Policy} which names the files the picker creates,
+         * e.g to include a user id. Names are timestamped <code>base_yyyyMMdd_HHmmss</code>
+         * in UTC by default.
+         */
+        public Builder namingPolicy(FileNameGenerator.Policy namingPolicy) {
+            this.namingPolicy = namingPolicy;
+            return this;
+        }
+
+        /**
+         * Sets a {@link MetricsListener} which would receive timing {@link Span}s for each
+         * stage of the pick: the permission, picker and crop round-trips, and the decode,
+         * encode and write of the processing stage. Without one, the stages are only marked
+         * as {@link android.os.Trace} sections.
+         */
+        public Builder metrics(MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
         /**
          * Sets the {@link OnResultListener} which would receive callbacks on the photo
          * picking progress.
@@ -332,19 +1050,150 @@ public abstract class PhotoPicker {
          * @return the {@link PhotoPicker} instance
          */
         public PhotoPicker start(Fragment fragment) {
-            PhotoPicker picker = source == Source.GALLERY ? new GalleryPhotoPicker(fragment) :
-                    new CameraPhotoPicker(fragment);
+            return start(new FragmentHost(fragment));
+        }
+
+        /**
+         * Starts the picker in any {@link PickerHost}, which forwards its activity and
+         * permission results to the picker.
+         * @return the {@link PhotoPicker} instance
+         */
+        public PhotoPicker start(PickerHost host) {
+            PhotoPicker picker = build(host);
+            picker.start();
+            return picker;
+        }
+
+        /**
+         * Starts the picker, with its results delivered through the activity's
+         * {@link androidx.activity.result.ActivityResultRegistry}. The fragment doesn't need
+         * to forward its activity or permission results.
+         * @param fragment a {@link Fragment} which would overseer the pickers operations.
+         * @return a handle on the picked image.
+         */
+        public PickFuture<Uri> startForResult(Fragment fragment) {
+            return startForResult(new FragmentHost(fragment));
+        }
+
+        /**
+         * Starts the picker, with its results delivered through the host's
+         * {@link androidx.activity.result.ActivityResultRegistry}.
+         * @return a handle on the picked image.
+         */
+        public PickFuture<Uri> startForResult(PickerHost host) {
+            PhotoPicker picker = build(host);
+            picker.launcher = new RegistryLauncher(host, picker);
+            picker.start();
+            return picker.getResult();
+        }
+
+        /**
+         * Starts a multi-photo picker, with its results delivered through the activity's
+         * {@link androidx.activity.result.ActivityResultRegistry}.
+         * @param fragment a {@link Fragment} which would overseer the pickers operations.
+         * @return a handle on the picked images.
+         * @see #multiple(boolean)
+         */
+        public PickFuture<BatchResult> startForBatchResult(Fragment fragment) {
+            return startForBatchResult(new FragmentHost(fragment));
+        }
+
+        /**
+         * Starts a multi-photo picker, with its results delivered through the host's
+         * {@link androidx.activity.result.ActivityResultRegistry}.
+         * @return a handle on the picked images.
+         * @see #multiple(boolean)
+         */
+        public PickFuture<BatchResult> startForBatchResult(PickerHost host) {
+            multiple(true);
+            PhotoPicker picker = build(host);
+            picker.launcher = new RegistryLauncher(host, picker);
+            picker.start();
+            return picker.getBatchResult();
+        }
+
+        /**
+         * Restores a picker whose pick was in flight when the process was killed, e.g while
+         * the camera was open. Call this from your fragment's <code>onCreate</code> with the
+         * same listeners, caches and crop engine you started it with; its other configuration
+         * comes from the saved state. Results then reach it as usual.
+         * @param fragment the re-created fragment.
+         * @return the restored {@link PhotoPicker}, or <code>null</code> if there was none.
+         */
+        public PhotoPicker restore(Fragment fragment) {
+            return restore(new FragmentHost(fragment));
+        }
+
+        /**
+         * Restores a picker in any {@link PickerHost}, see {@link #restore(Fragment)}.
+         * @return the restored {@link PhotoPicker}, or <code>null</code> if there was none,
+         * or the host has no {@link SavedStateRegistry}.
+         */
+        public PhotoPicker restore(PickerHost host) {
+            SavedStateRegistry registry = host.getSavedStateRegistry();
+            Bundle state = registry == null ? null : registry.consumeRestoredStateForKey(getStateKey());
+            if (state == null) return null;
+            source = PickerState.getSource(state);
+            PhotoPicker picker = build(host);
+            picker.state.restore(state);
+            Log.d(LOG_TAG, "Restored photo picker, crop uri: " + picker.cropUri);
+            return picker;
+        }
+
+        private String getStateKey() {
+            return key == null ? STATE_KEY : STATE_KEY + "." + key;
+        }
+
+        private PhotoPicker build(PickerHost host) {
+            PhotoPicker picker;
+            switch (source) {
+                case CAMERA:
+                    picker = new CameraPhotoPicker(host);
+                    break;
+                case MEDIA_STORE:
+                    picker = new MediaStorePhotoPicker(host);
+                    break;
+                default:
+                    picker = new GalleryPhotoPicker(host);
+            }
             picker.authority = authority;
-            picker.cached = cached;
             picker.cropped = cropped;
-            picker.fileName = fileName;
-            picker.folderName = folderName;
+            picker.storage.cached = cached;
+            picker.storage.fileName = fileName;
+            picker.storage.folderName = folderName;
+            picker.storage.timestamped = timestamped;
+            picker.storage.quotaBytes = quotaBytes;
+            picker.storage.quotaAgeMillis = quotaAgeMillis;
+            if (namingPolicy != null) picker.storage.nameGenerator = new FileNameGenerator(namingPolicy);
             picker.mOnResultListener = onResultListener;
-            picker.colorRes = colorRes;
-            picker.timestamped = timestamped;
-            picker.options = uCropOptions;
+            picker.crop.engine = cropEngine != null ? cropEngine : new UCropEngine(colorRes, uCropOptions);
+            if (format == null && memoryBudget == 0) {
+                picker.processingOptions = processingOptions;
+            } else {
+                ProcessingOptions.Builder options = processingOptions == null ?
+                        new ProcessingOptions.Builder() : new ProcessingOptions.Builder(processingOptions);
+                if (format != null) options.format(format);
+                if (memoryBudget > 0) options.maxMemoryBytes(memoryBudget);
+                picker.processingOptions = options.build();
+            }
+            picker.crop.memoryBudget = memoryBudget;
+            if (memoryBudget > 0 && picker.crop.engine instanceof RegionCropEngine) {
+                ((RegionCropEngine) picker.crop.engine).setMemoryBudget(memoryBudget);
+            }
+            picker.mOnProcessedListener = onProcessedListener;
+            picker.mOnBatchResultListener = onBatchResultListener;
+            picker.cache = cache;
+            picker.thumbnailSize = thumbnailSize;
+            picker.multiple = multiple && source == Source.GALLERY;
+            picker.maxCount = maxCount;
+            if (metricsListener != null) picker.tracer = Tracer.of(metricsListener);
+            picker.outputTarget = outputTarget;
+            picker.uploads.options = uploadOptions;
+            picker.uploads.listener = onUploadListener;
+            picker.analysis.enabled = analyze;
+            picker.analysis.listener = onAnalyzedListener;
+            picker.state = new PickerState(picker, getStateKey());
 
-            picker.start();
             return picker;
         }
 
@@ -375,13 +1224,87 @@ public abstract class PhotoPicker {
 
     }
 
+    /**
+     * Interface for receiving the details of an image produced by the processing stage.
+     */
+    public interface OnProcessedListener {
+
+        /**
+         * Called on the main thread when an image has been processed, just before
+         * {@link OnResultListener#onImagePicked(Uri)}.
+         * @param image the processed image, along with its decode/encode timings.
+         */
+        void onImageProcessed(ProcessedImage image);
+
+    }
+
+    /**
+     * Interface for receiving the analysis of a picked image.
+     */
+    public interface OnAnalyzedListener {
+
+        /**
+         * Called on the main thread when an image has been analyzed, just before
+         * {@link OnResultListener#onImagePicked(Uri)}. Images which couldn't be analyzed
+         * are delivered without it.
+         * @param analysis the image's hashes and sharpness.
+         */
+        void onImageAnalyzed(ImageAnalysis analysis);
+
+    }
+
+    /**
+     * Interface for receiving multi-photo picks.
+     */
+    public interface OnBatchResultListener {
+
+        /**
+         * Called as each image in the batch finishes processing.
+         * @param item the finished image, which may hold an error.
+         * @param completed how many images have finished so far.
+         * @param total the number of images picked.
+         */
+        void onImageProgress(BatchResult.Item item, int completed, int total);
+
+        /**
+         * Called once every picked image has been processed. Some items may have failed,
+         * see {@link BatchResult#getFailures()}.
+         */
+        void onImagesPicked(BatchResult result);
+
+        /**
+         * Called when nothing could be picked at all.
+         */
+        void onImageError(Exception e);
+
+    }
+
     /**
      * Enum representation of each image source
      */
     public enum Source {
-        CAMERA, GALLERY
+        CAMERA, GALLERY,
+        /**
+         * The device's media store, browsed in the library's own in-process gallery rather
+         * than the system's chooser. See {@link MediaStorePhotoPicker}.
+         */
+        MEDIA_STORE
     }
 
+    /**
+     * Interface for following the upload stage.
+     */
+    public interface OnUploadListener {
+
+        /**
+         * Called on the main thread once a delivered image has been scheduled for upload.
+         * @param photoUri the image being uploaded.
+         * @param workId the id of the upload's work, for observing its progress and result
+         *               with {@link androidx.work.WorkManager#getWorkInfoById(UUID)}.
+         * @see UploadWorker
+         */
+        void onUploadScheduled(Uri photoUri, UUID workId);
 
+    }
 
 }
@@ -0,0 +1,274 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * A handle on the result of a pick, in the style of a <code>ListenableFuture</code>.
+ *
+ * Callbacks can be attached at any time, including after the pick has finished, and run on
+ * the main thread unless an {@link Executor} is given, so follow-up work such as an upload
+ * can start on a background thread as soon as the image is ready. {@link #get()} blocks,
+ * so only call it off the main thread.
+ *
+ * @param <V> the result type: a {@link android.net.Uri}, or a
+ *           {@link io.github.josephdalughut.android.photopicker.process.BatchResult} for
+ *           multi-photo picks.
+ */
+public class PickFuture<V> implements Future<V> {
+
+    private static final Executor MAIN_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            TaskRunner.postToMain(runnable);
+        }
+    };
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private final List<ProgressObserver> observers = new ArrayList<>();
+    private V value;
+    private Exception error;
+    private boolean cancelled;
+    private boolean completed;
+    private PickProgress progress;
+    private Runnable onCancel;
+
+    PickFuture() {
+    }
+
+    /**
+     * Sets what runs when the future is cancelled, on the cancelling thread: the picker stops
+     * its pick, so nothing is delivered and its files are removed. It mustn't block.
+     */
+    synchronized void setOnCancel(Runnable onCancel) {
+        this.onCancel = onCancel;
+    }
+
+    /**
+     * Adds a callback which runs on the main thread once the pick finishes.
+     */
+    public PickFuture<V> addCallback(Callback<V> callback) {
+        return addCallback(callback, MAIN_EXECUTOR);
+    }
+
+    /**
+     * Adds a callback which runs on <code>executor</code> once the pick finishes.
+     */
+    public PickFuture<V> addCallback(final Callback<V> callback, final Executor executor) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(callback);
+                    }
+                });
+            }
+        };
+        synchronized (this) {
+            if (!completed) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.run();
+        return this;
+    }
+
+    /**
+     * Runs <code>listener</code> on whichever thread finishes the pick, or straight away if
+     * it has finished. For the picker's own bookkeeping; it mustn't block.
+     */
+    void whenDone(Runnable listener) {
+        synchronized (this) {
+            if (!completed) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Adds an observer which receives progress updates on the main thread. It's immediately
+     * sent the latest progress, if there is any.
+     */
+    public PickFuture<V> addProgressObserver(final ProgressObserver observer) {
+        final PickProgress latest;
+        synchronized (this) {
+            observers.add(observer);
+            latest = progress;
+        }
+        if (latest != null) {
+            TaskRunner.postToMain(new Runnable() {
+                @Override
+                public void run() {
+                    observer.onProgress(latest);
+                }
+            });
+        }
+        return this;
+    }
+
+    public synchronized void removeProgressObserver(ProgressObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * @return the latest progress, or <code>null</code> if the pick hasn't started.
+     */
+    @Nullable
+    public synchronized PickProgress getProgress() {
+        return progress;
+    }
+
+    void setProgress(PickProgress.Stage stage) {
+        setProgress(stage, 0, 0);
+    }
+
+    void setProgress(PickProgress.Stage stage, int completedItems, int total) {
+        final PickProgress update = new PickProgress(stage, completedItems, total);
+        final List<ProgressObserver> snapshot;
+        synchronized (this) {
+            if (completed) return;
+            progress = update;
+            snapshot = new ArrayList<>(observers);
+        }
+        if (snapshot.isEmpty()) return;
+        TaskRunner.postToMain(new Runnable() {
+            @Override
+            public void run() {
+                for (ProgressObserver observer : snapshot) {
+                    observer.onProgress(update);
+                }
+            }
+        });
+    }
+
+    boolean set(V value) {
+        return complete(value, null, false);
+    }
+
+    boolean setException(Exception error) {
+        return complete(null, error, false);
+    }
+
+    /**
+     * Cancels the pick. Callbacks receive a {@link CancellationException}, the picker drops
+     * any work still in flight and removes whatever it wrote for the pick, and its request
+     * codes are released.
+     * @param mayInterruptIfRunning ignored; the pick is always stopped.
+     * @return <code>false</code> if the pick had already finished.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!complete(null, null, true)) return false;
+        Runnable listener;
+        synchronized (this) {
+            listener = onCancel;
+        }
+        if (listener != null) listener.run();
+        return true;
+    }
+
+    private boolean complete(V value, Exception error, boolean cancelled) {
+        List<Runnable> toNotify;
+        synchronized (this) {
+            if (completed) return false;
+            this.value = value;
+            this.error = error;
+            this.cancelled = cancelled;
+            this.completed = true;
+            this.progress = new PickProgress(PickProgress.Stage.COMPLETE,
+                    progress == null ? 0 : progress.getTotal(), progress == null ? 0 : progress.getTotal());
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        done.countDown();
+        for (Runnable listener : toNotify) {
+            listener.run();
+        }
+        return true;
+    }
+
+    private void deliver(Callback<V> callback) {
+        V value;
+        Exception error;
+        boolean cancelled;
+        synchronized (this) {
+            value = this.value;
+            error = this.error;
+            cancelled = this.cancelled;
+        }
+        if (cancelled) callback.onFailure(new CancellationException());
+        else if (error != null) callback.onFailure(error);
+        else callback.onSuccess(value);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return completed;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) throw new TimeoutException();
+        return result();
+    }
+
+    private synchronized V result() throws ExecutionException {
+        if (cancelled) throw new CancellationException();
+        if (error != null) throw new ExecutionException(error);
+        return value;
+    }
+
+    /**
+     * Receives the outcome of a {@link PickFuture}.
+     */
+    public interface Callback<V> {
+
+        void onSuccess(V result);
+
+        /**
+         * @param e the error. This is a {@link PermissionDeniedException} if the user denied
+         *          the picker's permissions, or a {@link CancellationException} if the
+         *          future was cancelled.
+         */
+        void onFailure(Exception e);
+
+    }
+
+    /**
+     * Receives {@link PickProgress} updates on the main thread.
+     */
+    public interface ProgressObserver {
+
+        void onProgress(PickProgress progress);
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+/**
+ * A snapshot of how far a pick has got, delivered to {@link PickFuture.ProgressObserver}s.
+ */
+public class PickProgress {
+
+    /**
+     * The stages a pick moves through, in order. Not every pick visits every stage.
+     */
+    public enum Stage {
+        PERMISSIONS, PICKING, CROPPING, PROCESSING, ANALYZING, COMPLETE
+    }
+
+    private final Stage stage;
+    private final int completed;
+    private final int total;
+
+    PickProgress(Stage stage, int completed, int total) {
+        this.stage = stage;
+        this.completed = completed;
+        this.total = total;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * @return how many images have finished the current stage; for multi-photo picks this
+     * counts up during {@link Stage#PROCESSING}.
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the number of images in the pick, or <code>0</code> if not known yet.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "PickProgress{" + stage + ", " + completed + "/" + total + "}";
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Environment;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.josephdalughut.android.photopicker.output.FileTarget;
+import io.github.josephdalughut.android.photopicker.util.FileNameGenerator;
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+import io.github.josephdalughut.android.photopicker.util.StorageManager;
+
+/**
+ * Decides where a {@link PhotoPicker}'s files go and what they're called, puts its output
+ * directories under the storage quota, and keeps track of the intermediate files a pick
+ * creates so they're deleted once it finishes.
+ */
+class PickStorage {
+
+    // Where outputs go when they're under a quota and no folder was set, so sweeps never
+    // reach the storage roots the host app keeps its own files in.
+    private static final String QUOTA_FOLDER_NAME = "photopicker";
+
+    private static final String STATE_FILE_NAME = "fileName";
+    private static final String STATE_FOLDER_NAME = "folderName";
+    private static final String STATE_CACHED = "cached";
+    private static final String STATE_TIMESTAMPED = "timestamped";
+    private static final String STATE_QUOTA_BYTES = "quotaBytes";
+    private static final String STATE_QUOTA_AGE_MILLIS = "quotaAgeMillis";
+    private static final String STATE_INTERMEDIATES = "intermediates";
+
+    String fileName;
+    String folderName;
+    boolean cached = false;
+    boolean timestamped = false;
+    long quotaBytes = 0;
+    long quotaAgeMillis = 0;
+    FileNameGenerator nameGenerator = FileNameGenerator.getDefault();
+
+    // Files we've created for the current pick: the camera capture and crop output, if any.
+    private final List<File> intermediates = new ArrayList<>();
+
+    /**
+     * Puts each output directory under the quota and starts a sweep, if a quota was set.
+     */
+    void enforceQuota(Context context) {
+        if (!hasQuota()) return;
+        StorageManager storage = StorageManager.getInstance();
+        storage.manage(getOutputDirectory(context), quotaBytes, quotaAgeMillis);
+        storage.manage(getProcessedDirectory(context), quotaBytes, quotaAgeMillis);
+        storage.sweep();
+    }
+
+    private boolean hasQuota() {
+        return quotaBytes > 0 || quotaAgeMillis > 0;
+    }
+
+    /**
+     * @return the directory cropped images are saved in.
+     */
+    File getOutputDirectory(Context context) {
+        File fileDir = cached ? context.getExternalCacheDir() : context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        String finalFolderName = getFolderName() == null ? "" : getFolderName();
+        String imagePath = fileDir + File.separator + finalFolderName;
+        return new File(imagePath);
+    }
+
+    /**
+     * @return the directory processed images are saved in, see
+     * {@link FileUtils#createFile(Context, boolean, String, String)}.
+     */
+    File getProcessedDirectory(Context context) {
+        File storageDir = cached ? context.getCacheDir() : context.getFilesDir();
+        return getFolderName() == null ? storageDir : new File(storageDir, getFolderName());
+    }
+
+    /**
+     * @return the folder outputs are saved in, or <code>null</code> for the storage root.
+     * Quota sweeps delete whatever is in the output directories, so under a quota this is
+     * never the root.
+     */
+    @Nullable
+    String getFolderName() {
+        if (folderName != null && !folderName.trim().isEmpty()) return folderName;
+        return hasQuota() ? QUOTA_FOLDER_NAME : null;
+    }
+
+    /**
+     * @return where captures and crops go: the app's external files directory.
+     */
+    FileTarget getExternalTarget() {
+        return FileTarget.external(cached, getFolderName());
+    }
+
+    /**
+     * Creates an empty file for a processed image in the processed directory.
+     */
+    File createProcessedFile(Context context, String extension) throws IOException {
+        return FileUtils.createFile(context, cached, fileName, getFolderName(), extension,
+                nameGenerator);
+    }
+
+    /**
+     * @return a unique name for a processed image.
+     */
+    String nextName(String extension) {
+        return nameGenerator.next(fileName, extension);
+    }
+
+    /**
+     * @return a unique name for a camera capture.
+     */
+    String nextCaptureName() {
+        return nameGenerator.next(getBaseName(), ".jpg");
+    }
+
+    /**
+     * @return the name of a crop: the file name as it is, unless it's timestamped or wasn't
+     * set.
+     */
+    String getCropName() {
+        String name = getBaseName();
+        if (timestamped || name.isEmpty()) return nameGenerator.next(name, ".jpg");
+        return name + ".jpg";
+    }
+
+    private String getBaseName() {
+        return fileName == null || fileName.trim().isEmpty() ? "" : fileName;
+    }
+
+    /**
+     * Records a file created for the current pick, which is deleted once the pick
+     * finishes unless it turns out to be the final result.
+     */
+    void addIntermediate(File file) {
+        intermediates.add(file);
+        StorageManager.getInstance().track(file);
+    }
+
+    /**
+     * Deletes the current pick's intermediate files.
+     * @param result the file handed to the listener, which is kept. May be <code>null</code>.
+     */
+    void release(@Nullable File result) {
+        StorageManager storage = StorageManager.getInstance();
+        if (result != null && intermediates.remove(result)) storage.untrack(result);
+        storage.release(intermediates);
+        intermediates.clear();
+    }
+
+    void saveState(Bundle state) {
+        state.putString(STATE_FILE_NAME, fileName);
+        state.putString(STATE_FOLDER_NAME, folderName);
+        state.putBoolean(STATE_CACHED, cached);
+        state.putBoolean(STATE_TIMESTAMPED, timestamped);
+        state.putLong(STATE_QUOTA_BYTES, quotaBytes);
+        state.putLong(STATE_QUOTA_AGE_MILLIS, quotaAgeMillis);
+        String[] paths = new String[intermediates.size()];
+        for (int i = 0; i < paths.length; i++) paths[i] = intermediates.get(i).getPath();
+        state.putStringArray(STATE_INTERMEDIATES, paths);
+    }
+
+    void restoreState(Bundle state) {
+        fileName = state.getString(STATE_FILE_NAME);
+        folderName = state.getString(STATE_FOLDER_NAME);
+        cached = state.getBoolean(STATE_CACHED);
+        timestamped = state.getBoolean(STATE_TIMESTAMPED);
+        quotaBytes = state.getLong(STATE_QUOTA_BYTES);
+        quotaAgeMillis = state.getLong(STATE_QUOTA_AGE_MILLIS);
+        String[] paths = state.getStringArray(STATE_INTERMEDIATES);
+        if (paths != null) {
+            for (String path : paths) addIntermediate(new File(path));
+        }
+    }
+
+}
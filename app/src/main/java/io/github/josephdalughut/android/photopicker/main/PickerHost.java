@@ -0,0 +1,48 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.annotation.Nullable;
+import androidx.savedstate.SavedStateRegistry;
+
+/**
+ * Whatever a {@link PhotoPicker} runs in: a {@link FragmentHost}, an {@link ActivityHost},
+ * or a {@link RegistryHost} for anything else with an {@link ActivityResultRegistry}, like a
+ * Compose screen.
+ *
+ * The picker only talks to its host through this, so it can also be driven by a fake host in
+ * a JVM (e.g Robolectric) test or benchmark, with an {@link ActivityLauncher} which answers
+ * launches itself.
+ */
+public interface PickerHost {
+
+    /**
+     * @return the {@link Context} the picker works in.
+     */
+    Context getContext();
+
+    /**
+     * Creates the launcher used by {@link PhotoPicker.Builder#start(PickerHost)}, whose
+     * results the host forwards to {@link PhotoPicker#handleActivityResult(int, int, android.content.Intent)}
+     * and {@link PhotoPicker#handlePermissionsResult(int, String[], int[])}.
+     */
+    ActivityLauncher createLauncher(PhotoPicker picker);
+
+    /**
+     * @return the registry used by {@link PhotoPicker.Builder#startForResult(PickerHost)},
+     * which delivers results to the picker without any forwarding, or <code>null</code> if
+     * the host has none.
+     */
+    @Nullable
+    ActivityResultRegistry getActivityResultRegistry();
+
+    /**
+     * @return the registry an in-flight pick is saved to, so it survives process death, or
+     * <code>null</code> if the host has none.
+     * @see PhotoPicker.Builder#restore(PickerHost)
+     */
+    @Nullable
+    SavedStateRegistry getSavedStateRegistry();
+
+}
@@ -0,0 +1,121 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.os.Bundle;
+
+import androidx.savedstate.SavedStateRegistry;
+
+import java.io.File;
+
+import io.github.josephdalughut.android.photopicker.output.Output;
+import io.github.josephdalughut.android.photopicker.process.ProcessingOptions;
+
+/**
+ * Saves a {@link PhotoPicker} to its host's {@link SavedStateRegistry}, so an in-flight pick
+ * can be picked back up with {@link PhotoPicker.Builder#restore(PickerHost)} if the process
+ * is killed while the camera or gallery is open.
+ *
+ * Only the picker's configuration and the state of the pick are saved. Listeners, caches and
+ * crop engines aren't; they're supplied again by the {@link PhotoPicker.Builder} on restore.
+ */
+class PickerState implements SavedStateRegistry.SavedStateProvider {
+
+    private static final String STATE_SOURCE = "source";
+    private static final String STATE_SLOT = "slot";
+    private static final String STATE_AUTHORITY = "authority";
+    private static final String STATE_CROPPED = "cropped";
+    private static final String STATE_MULTIPLE = "multiple";
+    private static final String STATE_MAX_COUNT = "maxCount";
+    private static final String STATE_THUMBNAIL_SIZE = "thumbnailSize";
+    private static final String STATE_PROCESSING = "processing";
+    private static final String STATE_CROP_URI = "cropUri";
+    private static final String STATE_CAPTURE_FILE = "captureFile";
+    private static final String STATE_OUTPUT = "output";
+    private static final String STATE_LAUNCHER = "launcher";
+
+    private final PhotoPicker picker;
+    private final String key;
+
+    PickerState(PhotoPicker picker, String key) {
+        this.picker = picker;
+        this.key = key;
+    }
+
+    /**
+     * @return the source a picker was saved with, so the right kind can be built to restore
+     * it.
+     */
+    static PhotoPicker.Source getSource(Bundle state) {
+        return PhotoPicker.Source.valueOf(state.getString(STATE_SOURCE));
+    }
+
+    /**
+     * Registers with the host's {@link SavedStateRegistry}, replacing whatever was saved
+     * under our key before.
+     */
+    void register() {
+        SavedStateRegistry registry = picker.host.getSavedStateRegistry();
+        if (registry == null) return;
+        registry.unregisterSavedStateProvider(key);
+        registry.registerSavedStateProvider(key, this);
+    }
+
+    @Override
+    public Bundle saveState() {
+        Bundle state = new Bundle();
+        state.putString(STATE_SOURCE, picker.getSource().name());
+        state.putInt(STATE_SLOT, picker.slot);
+        state.putString(STATE_AUTHORITY, picker.authority);
+        state.putBoolean(STATE_CROPPED, picker.cropped);
+        state.putBoolean(STATE_MULTIPLE, picker.multiple);
+        state.putInt(STATE_MAX_COUNT, picker.maxCount);
+        state.putInt(STATE_THUMBNAIL_SIZE, picker.thumbnailSize);
+        if (picker.processingOptions != null) {
+            state.putBundle(STATE_PROCESSING, picker.processingOptions.toBundle());
+        }
+        picker.storage.saveState(state);
+
+        state.putParcelable(STATE_CROP_URI, picker.cropUri);
+        picker.crop.saveState(state);
+        if (picker.captureFile != null) state.putString(STATE_CAPTURE_FILE, picker.captureFile.getPath());
+        if (picker.output != null) state.putBundle(STATE_OUTPUT, picker.output.toBundle());
+        if (picker.launcher instanceof RegistryLauncher) {
+            state.putBundle(STATE_LAUNCHER, ((RegistryLauncher) picker.launcher).saveState());
+        }
+        return state;
+    }
+
+    /**
+     * Restores state saved with {@link #saveState()}, and registers to save it again.
+     */
+    void restore(Bundle state) {
+        picker.slot = ResultRouter.getInstance().reclaim(picker, picker.slot,
+                state.getInt(STATE_SLOT, picker.slot));
+        picker.authority = state.getString(STATE_AUTHORITY);
+        picker.cropped = state.getBoolean(STATE_CROPPED);
+        picker.multiple = state.getBoolean(STATE_MULTIPLE);
+        picker.maxCount = state.getInt(STATE_MAX_COUNT);
+        picker.thumbnailSize = state.getInt(STATE_THUMBNAIL_SIZE);
+        Bundle processing = state.getBundle(STATE_PROCESSING);
+        if (picker.processingOptions == null && processing != null) {
+            picker.processingOptions = ProcessingOptions.fromBundle(processing);
+        }
+        picker.storage.restoreState(state);
+
+        picker.cropUri = state.getParcelable(STATE_CROP_URI);
+        picker.crop.restoreState(state);
+        String capture = state.getString(STATE_CAPTURE_FILE);
+        picker.captureFile = capture == null ? null : new File(capture);
+        Bundle outputState = state.getBundle(STATE_OUTPUT);
+        picker.output = outputState == null ? null : Output.fromBundle(outputState);
+        register();
+
+        // Last, as a result the registry held on to is delivered as soon as we re-register.
+        Bundle launcherState = state.getBundle(STATE_LAUNCHER);
+        if (launcherState != null) {
+            RegistryLauncher launcher = new RegistryLauncher(picker.host, picker);
+            picker.launcher = launcher;
+            launcher.restoreState(launcherState);
+        }
+    }
+
+}
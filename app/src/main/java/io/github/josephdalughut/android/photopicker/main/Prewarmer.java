@@ -0,0 +1,235 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import io.github.josephdalughut.android.photopicker.util.FileNameGenerator;
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Does the work of starting a pick ahead of time, so tapping "take photo" goes straight to
+ * the camera. See {@link PhotoPicker#prewarm(Context, String)}.
+ *
+ * <ul>
+ *     <li>The camera activity is resolved once and remembered, instead of querying the
+ *     package manager on every tap.</li>
+ *     <li>The gallery chooser is built once and copied.</li>
+ *     <li>A small pool of capture files and their {@link FileProvider} uris is kept ready.
+ *     Making the first uri parses the provider's paths from its meta-data, and the external
+ *     files directory is created on first use, both of which are disk reads on the main
+ *     thread otherwise. The pool is topped up in the background as it's used.</li>
+ *     <li>uCrop's and the processing stage's classes are loaded and initialized, so the first
+ *     crop doesn't pay for it.</li>
+ * </ul>
+ *
+ * Everything falls back to doing the work there and then when it isn't warm.
+ */
+public class Prewarmer {
+
+    private static final String LOG_TAG = Prewarmer.class.getSimpleName();
+
+    private static final int POOL_SIZE = 2;
+    private static final String[] PRELOADED_CLASSES = {
+            "com.yalantis.ucrop.UCrop",
+            "com.yalantis.ucrop.UCropActivity",
+            "com.yalantis.ucrop.view.UCropView",
+            "com.yalantis.ucrop.view.GestureCropImageView",
+            "com.yalantis.ucrop.view.OverlayView",
+            "com.yalantis.ucrop.task.BitmapLoadTask",
+            "com.yalantis.ucrop.task.BitmapCropTask",
+            "androidx.exifinterface.media.ExifInterface",
+            "io.github.josephdalughut.android.photopicker.process.ImageProcessor",
+    };
+
+    private static Prewarmer sInstance;
+
+    private volatile ComponentName camera;
+    private Intent galleryChooser;
+    private final Deque<Capture> pool = new ArrayDeque<>();
+    private String poolAuthority;
+    private boolean filling = false;
+    private volatile boolean classesLoaded = false;
+
+    /**
+     * @return the shared instance.
+     */
+    public static synchronized Prewarmer getInstance() {
+        if (sInstance == null) sInstance = new Prewarmer();
+        return sInstance;
+    }
+
+    /**
+     * Warms everything up on the {@link TaskRunner} executor.
+     * @param authority the file-provider authority camera pickers use, or <code>null</code>
+     *                  to skip pooling capture files.
+     */
+    public void prewarm(Context context, @Nullable final String authority) {
+        final Context appContext = context.getApplicationContext();
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                prewarmNow(appContext, authority);
+            }
+        });
+    }
+
+    /**
+     * Warms everything up on the calling thread. Don't call this from the main thread.
+     * @see #prewarm(Context, String)
+     */
+    public void prewarmNow(Context context, @Nullable String authority) {
+        long start = System.nanoTime();
+        resolveCamera(context);
+        if (authority != null) fillPool(context.getApplicationContext(), authority);
+        loadClasses();
+        Log.d(LOG_TAG, "Prewarmed in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * @return the activity which handles {@link MediaStore#ACTION_IMAGE_CAPTURE}, or
+     * <code>null</code> if there's none. Only a found camera is remembered, so one
+     * installed later is still picked up.
+     */
+    public ComponentName resolveCamera(Context context) {
+        ComponentName resolved = camera;
+        if (resolved != null) return resolved;
+        resolved = new Intent(MediaStore.ACTION_IMAGE_CAPTURE)
+                .resolveActivity(context.getPackageManager());
+        camera = resolved;
+        return resolved;
+    }
+
+    /**
+     * @return a copy of the chooser for {@link Intent#ACTION_PICK}ing an image.
+     */
+    synchronized Intent getGalleryChooser() {
+        if (galleryChooser == null) {
+            Intent intent = new Intent(Intent.ACTION_PICK);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+            intent.setDataAndType(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, "image/*");
+            galleryChooser = Intent.createChooser(intent, "Pick Photo");
+        }
+        return new Intent(galleryChooser);
+    }
+
+    /**
+     * Hands out a capture file and its uri, from the pool if one's ready for
+     * <code>authority</code>, or freshly created otherwise. Pooled files are named by the
+     * default {@link FileNameGenerator}, so they're only used with that.
+     */
+    public Capture takeCapture(Context context, String authority, FileNameGenerator generator)
+            throws IOException {
+        Capture capture = null;
+        if (generator == FileNameGenerator.getDefault()) {
+            synchronized (this) {
+                if (authority.equals(poolAuthority)) capture = pool.poll();
+            }
+        }
+        if (capture != null) {
+            final Context appContext = context.getApplicationContext();
+            final String poolAuthority = authority;
+            TaskRunner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fillPool(appContext, poolAuthority);
+                }
+            });
+            return capture;
+        }
+        return createCapture(context, authority, generator);
+    }
+
+    /**
+     * Drops everything which has been warmed up, e.g on low memory.
+     */
+    public synchronized void clear() {
+        camera = null;
+        galleryChooser = null;
+        pool.clear();
+        poolAuthority = null;
+    }
+
+    private void fillPool(Context context, String authority) {
+        synchronized (this) {
+            if (filling) return;
+            if (!authority.equals(poolAuthority)) {
+                pool.clear();
+                poolAuthority = authority;
+            }
+            filling = true;
+        }
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (pool.size() >= POOL_SIZE || !authority.equals(poolAuthority)) return;
+                }
+                Capture capture = createCapture(context, authority, FileNameGenerator.getDefault());
+                synchronized (this) {
+                    if (authority.equals(poolAuthority)) pool.add(capture);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // E.g no external storage, or the authority isn't set up; pickers report it.
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                filling = false;
+            }
+        }
+    }
+
+    private void loadClasses() {
+        if (classesLoaded) return;
+        ClassLoader loader = Prewarmer.class.getClassLoader();
+        for (String name : PRELOADED_CLASSES) {
+            try {
+                Class.forName(name, true, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                Log.d(LOG_TAG, "Couldn't preload " + name + ": " + e);
+            }
+        }
+        classesLoaded = true;
+    }
+
+    private static Capture createCapture(Context context, String authority,
+                                         FileNameGenerator generator) throws IOException {
+        File file = FileUtils.createTemporaryExternalFile(context, generator);
+        return new Capture(file, FileProvider.getUriForFile(context, authority, file));
+    }
+
+    /**
+     * A file for the camera to write to, along with the uri it's shared through.
+     */
+    public static class Capture {
+
+        private final File file;
+        private final Uri uri;
+
+        Capture(File file, Uri uri) {
+            this.file = file;
+            this.uri = uri;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Uri getUri() {
+            return uri;
+        }
+    }
+
+}
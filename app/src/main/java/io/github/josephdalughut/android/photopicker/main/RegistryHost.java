@@ -0,0 +1,54 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.annotation.Nullable;
+import androidx.savedstate.SavedStateRegistry;
+
+/**
+ * A {@link PickerHost} made from its parts, for hosts which are neither a fragment nor an
+ * activity. In Compose, for instance, take them from <code>LocalContext</code>,
+ * <code>LocalActivityResultRegistryOwner</code> and <code>LocalSavedStateRegistryOwner</code>.
+ *
+ * Results always go through the {@link ActivityResultRegistry}, as there's nothing to
+ * forward them from, so start pickers with
+ * {@link PhotoPicker.Builder#startForResult(PickerHost)}.
+ */
+public class RegistryHost implements PickerHost {
+
+    private final Context context;
+    private final ActivityResultRegistry activityResultRegistry;
+    private final SavedStateRegistry savedStateRegistry;
+
+    /**
+     * @param savedStateRegistry saves in-flight picks, or <code>null</code> to not save them.
+     */
+    public RegistryHost(Context context, ActivityResultRegistry activityResultRegistry,
+                        @Nullable SavedStateRegistry savedStateRegistry) {
+        this.context = context;
+        this.activityResultRegistry = activityResultRegistry;
+        this.savedStateRegistry = savedStateRegistry;
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+
+    @Override
+    public ActivityLauncher createLauncher(PhotoPicker picker) {
+        return new RegistryLauncher(this, picker);
+    }
+
+    @Override
+    public ActivityResultRegistry getActivityResultRegistry() {
+        return activityResultRegistry;
+    }
+
+    @Override
+    public SavedStateRegistry getSavedStateRegistry() {
+        return savedStateRegistry;
+    }
+
+}
@@ -0,0 +1,149 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+import androidx.activity.result.ActivityResult;
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.activity.result.contract.ActivityResultContracts;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An {@link ActivityLauncher} backed by the activity's {@link ActivityResultRegistry}, which
+ * delivers results straight to the picker, so the host doesn't have to forward anything.
+ *
+ * Each launch registers under a fresh key and unregisters once its result arrives. We
+ * register without a lifecycle owner, as pickers are usually started after the host
+ * has been created, when lifecycle-bound registration is no longer allowed. The pending key
+ * is part of the picker's saved state, so a restored picker can re-register under it and
+ * receive the result the registry held on to.
+ */
+class RegistryLauncher implements ActivityLauncher {
+
+    private static final String STATE_KEY = "key";
+    private static final String STATE_REQUEST_CODE = "requestCode";
+    private static final String STATE_PERMISSIONS = "permissions";
+
+    private final PickerHost host;
+    private final PhotoPicker picker;
+
+    // The launch we're waiting on, if any.
+    private String pendingKey;
+    private int pendingRequestCode;
+    private String[] pendingPermissions;
+    private ActivityResultLauncher<?> pendingLauncher;
+
+    RegistryLauncher(PickerHost host, PhotoPicker picker) {
+        this.host = host;
+        this.picker = picker;
+    }
+
+    @Override
+    public void startActivityForResult(Intent intent, int requestCode) {
+        String key = newKey();
+        ActivityResultLauncher<Intent> launcher = registerActivity(key, requestCode);
+        setPending(key, requestCode, null, launcher);
+        launcher.launch(intent);
+    }
+
+    @Override
+    public void requestPermissions(String[] permissions, int requestCode) {
+        String key = newKey();
+        ActivityResultLauncher<String[]> launcher = registerPermissions(key, requestCode, permissions);
+        setPending(key, requestCode, permissions, launcher);
+        launcher.launch(permissions);
+    }
+
+    /**
+     * @return the pending launch, or <code>null</code> if there isn't one.
+     */
+    Bundle saveState() {
+        if (pendingKey == null) return null;
+        Bundle state = new Bundle();
+        state.putString(STATE_KEY, pendingKey);
+        state.putInt(STATE_REQUEST_CODE, pendingRequestCode);
+        state.putStringArray(STATE_PERMISSIONS, pendingPermissions);
+        return state;
+    }
+
+    /**
+     * Re-registers a launch saved with {@link #saveState()}. If its result arrived while we
+     * were gone, the registry delivers it straight away.
+     */
+    void restoreState(Bundle state) {
+        String key = state.getString(STATE_KEY);
+        int requestCode = state.getInt(STATE_REQUEST_CODE);
+        String[] permissions = state.getStringArray(STATE_PERMISSIONS);
+        // Set the pending launch first, as a held result is delivered during registration.
+        setPending(key, requestCode, permissions, null);
+        ActivityResultLauncher<?> launcher = permissions != null ?
+                registerPermissions(key, requestCode, permissions) : registerActivity(key, requestCode);
+        if (key.equals(pendingKey)) pendingLauncher = launcher;
+        else launcher.unregister();
+    }
+
+    private ActivityResultLauncher<Intent> registerActivity(final String key, final int requestCode) {
+        return registry().register(key, new ActivityResultContracts.StartActivityForResult(),
+                new ActivityResultCallback<ActivityResult>() {
+                    @Override
+                    public void onActivityResult(ActivityResult result) {
+                        finish(key);
+                        picker.handleActivityResult(requestCode, result.getResultCode(), result.getData());
+                    }
+                });
+    }
+
+    private ActivityResultLauncher<String[]> registerPermissions(final String key, final int requestCode,
+                                                                 final String[] permissions) {
+        return registry().register(key, new ActivityResultContracts.RequestMultiplePermissions(),
+                new ActivityResultCallback<Map<String, Boolean>>() {
+                    @Override
+                    public void onActivityResult(Map<String, Boolean> result) {
+                        finish(key);
+                        int[] grantResults = new int[permissions.length];
+                        for (int i = 0; i < permissions.length; i++) {
+                            Boolean granted = result.get(permissions[i]);
+                            grantResults[i] = granted != null && granted ?
+                                    PackageManager.PERMISSION_GRANTED : PackageManager.PERMISSION_DENIED;
+                        }
+                        picker.handlePermissionsResult(requestCode, permissions, grantResults);
+                    }
+                });
+    }
+
+    private void setPending(String key, int requestCode, String[] permissions,
+                            ActivityResultLauncher<?> launcher) {
+        pendingKey = key;
+        pendingRequestCode = requestCode;
+        pendingPermissions = permissions;
+        pendingLauncher = launcher;
+    }
+
+    /**
+     * Unregisters a finished launch. When a restored launch's result is delivered during
+     * registration we don't have its launcher yet, so {@link #restoreState(Bundle)}
+     * unregisters it instead.
+     */
+    private void finish(String key) {
+        if (!key.equals(pendingKey)) return;
+        ActivityResultLauncher<?> launcher = pendingLauncher;
+        setPending(null, 0, null, null);
+        if (launcher != null) launcher.unregister();
+    }
+
+    private ActivityResultRegistry registry() {
+        ActivityResultRegistry registry = host.getActivityResultRegistry();
+        if (registry == null) throw new IllegalStateException("The host has no ActivityResultRegistry");
+        return registry;
+    }
+
+    private static String newKey() {
+        return "photopicker_" + UUID.randomUUID();
+    }
+
+}
@@ -0,0 +1,137 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Intent;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Hands out request codes, so that several pickers can be in flight in the same host (e.g an
+ * avatar and a cover photo picker in one fragment) without claiming each other's results.
+ *
+ * Each live {@link PhotoPicker} holds a slot, and each slot owns a small block of request
+ * codes: one for permissions, one for the picker activity and one for the crop activity. A
+ * result's slot is read straight off its request code, so
+ * {@link #dispatchActivityResult(int, int, Intent)} finds the picker which launched it
+ * without asking every picker in turn. Codes stay in the lower 16 bits, as fragments require.
+ *
+ * Slots are held weakly and freed once their pick finishes, so a picker which is abandoned
+ * mid-pick doesn't hold on to its slot either.
+ */
+public class ResultRouter {
+
+    private static final String LOG_TAG = ResultRouter.class.getSimpleName();
+
+    static final int PERMISSIONS = 0;
+    static final int PICK = 1;
+    static final int CROP = 2;
+
+    // Each slot's block of codes; a power of two so the slot is a shift away.
+    private static final int CODES_PER_SLOT_SHIFT = 2;
+    private static final int BASE_REQUEST_CODE = 0x5000;
+    private static final int MAX_SLOTS = 256;
+
+    private static ResultRouter sInstance;
+
+    @SuppressWarnings("unchecked")
+    private final WeakReference<PhotoPicker>[] slots = new WeakReference[MAX_SLOTS];
+    // Where to start looking for a free slot, so freed slots aren't reused straight away.
+    private int next = 0;
+
+    public static synchronized ResultRouter getInstance() {
+        if (sInstance == null) sInstance = new ResultRouter();
+        return sInstance;
+    }
+
+    ResultRouter() {
+    }
+
+    /**
+     * @return the request code of a slot's launch, e.g {@link #PICK}.
+     */
+    static int requestCode(int slot, int kind) {
+        return BASE_REQUEST_CODE + (slot << CODES_PER_SLOT_SHIFT) + kind;
+    }
+
+    /**
+     * @return the slot a request code belongs to, or <code>-1</code> if it isn't one of ours.
+     */
+    static int slotOf(int requestCode) {
+        int slot = (requestCode - BASE_REQUEST_CODE) >> CODES_PER_SLOT_SHIFT;
+        return requestCode < BASE_REQUEST_CODE || slot >= MAX_SLOTS ? -1 : slot;
+    }
+
+    /**
+     * Gives a picker a free slot.
+     * @throws IllegalStateException if every slot is held by a live, unfinished picker.
+     */
+    synchronized int register(PhotoPicker picker) {
+        for (int i = 0; i < MAX_SLOTS; i++) {
+            int slot = (next + i) % MAX_SLOTS;
+            if (get(slot) == null) {
+                slots[slot] = new WeakReference<>(picker);
+                next = (slot + 1) % MAX_SLOTS;
+                return slot;
+            }
+        }
+        throw new IllegalStateException("Too many photo pickers in flight");
+    }
+
+    /**
+     * Moves a restored picker back into the slot it had before the process died, so the
+     * result of its launch, which carries the old slot's request code, still reaches it.
+     * @return the picker's slot: <code>slot</code>, unless another picker holds it now, in
+     * which case the picker keeps <code>current</code>.
+     */
+    synchronized int reclaim(PhotoPicker picker, int current, int slot) {
+        if (slot == current) return slot;
+        if (slot < 0 || slot >= MAX_SLOTS || get(slot) != null) {
+            Log.w(LOG_TAG, "Unable to restore slot " + slot + ", results for it will be missed");
+            return current;
+        }
+        release(picker, current);
+        slots[slot] = new WeakReference<>(picker);
+        return slot;
+    }
+
+    /**
+     * Frees a picker's slot, e.g once its pick has finished.
+     */
+    synchronized void release(PhotoPicker picker, int slot) {
+        if (slot >= 0 && slot < MAX_SLOTS && get(slot) == picker) slots[slot] = null;
+    }
+
+    /**
+     * Routes an activity result to the picker which launched it. Call this from your
+     * <code>onActivityResult</code> callback instead of passing the result to each picker.
+     * @return <code>true</code> if a picker handled the result.
+     */
+    public boolean dispatchActivityResult(int requestCode, int resultCode, Intent data) {
+        PhotoPicker picker = find(requestCode);
+        return picker != null && picker.handleActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Routes a permissions result to the picker which requested it. Call this from your
+     * <code>onRequestPermissionsResult</code> callback instead of passing the result to each
+     * picker.
+     * @return <code>true</code> if a picker handled the result.
+     */
+    public boolean dispatchPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        PhotoPicker picker = find(requestCode);
+        return picker != null && picker.handlePermissionsResult(requestCode, permissions, grantResults);
+    }
+
+    private synchronized PhotoPicker find(int requestCode) {
+        int slot = slotOf(requestCode);
+        return slot < 0 ? null : get(slot);
+    }
+
+    private PhotoPicker get(int slot) {
+        WeakReference<PhotoPicker> reference = slots[slot];
+        PhotoPicker picker = reference == null ? null : reference.get();
+        if (picker == null) slots[slot] = null;
+        return picker;
+    }
+
+}
@@ -0,0 +1,28 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.util.UUID;
+
+import io.github.josephdalughut.android.photopicker.upload.UploadOptions;
+import io.github.josephdalughut.android.photopicker.upload.UploadWorker;
+
+/**
+ * Hands a {@link PhotoPicker}'s delivered images to the upload stage, if
+ * {@link PhotoPicker.Builder#upload(UploadOptions)} was set.
+ */
+class UploadScheduler {
+
+    UploadOptions options;
+    PhotoPicker.OnUploadListener listener;
+
+    void schedule(Context context, Uri uri) {
+        if (options == null || uri == null) return;
+        UUID id = UploadWorker.enqueue(context, uri, options);
+        if (listener != null) {
+            listener.onUploadScheduled(uri, id);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package io.github.josephdalughut.android.photopicker.metrics;
+
+/**
+ * Receives timing {@link Span}s as a pick runs.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called as each {@link Span} ends. Round-trip spans arrive on the main thread, processing
+     * spans on the worker thread which ran them, so keep this quick and thread-safe.
+     */
+    void onSpan(Span span);
+
+}
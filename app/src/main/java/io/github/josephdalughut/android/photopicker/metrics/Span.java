@@ -0,0 +1,89 @@
+package io.github.josephdalughut.android.photopicker.metrics;
+
+import java.util.Locale;
+
+/**
+ * A timed stage of a pick, reported to a {@link MetricsListener}.
+ */
+public class Span {
+
+    /**
+     * The stages of a pick which are timed.
+     */
+    public enum Name {
+        /** The whole pick, from start to the result (or error) being delivered. */
+        PICK,
+        /** The runtime permission dialog round-trip. */
+        PERMISSIONS,
+        /** The camera or gallery activity round-trip. */
+        PICKER,
+        /** The crop round-trip, whichever {@link io.github.josephdalughut.android.photopicker.crop.CropEngine} is used. */
+        CROP,
+        /** Reading, decoding, scaling and rotating an image for processing. */
+        DECODE,
+        /** Compressing a processed image, including any retries to meet the byte budget. */
+        ENCODE,
+        /** Writing a processed image and its metadata to storage. */
+        WRITE,
+        /** Hashing and scoring the sharpness of the delivered image(s). */
+        ANALYZE;
+
+        final String section = "PhotoPicker:" + name().toLowerCase(Locale.US);
+    }
+
+    private final Name name;
+    private final long startNanos;
+    private final long durationNanos;
+    private final long bytes;
+    private final boolean successful;
+
+    Span(Name name, long startNanos, long durationNanos, long bytes, boolean successful) {
+        this.name = name;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.bytes = bytes;
+        this.successful = successful;
+    }
+
+    public Name getName() {
+        return name;
+    }
+
+    /**
+     * @return when the span started, on the {@link System#nanoTime()} clock. Useful for
+     * ordering spans, not as a wall-clock time.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return durationNanos / 1000000;
+    }
+
+    /**
+     * @return the bytes written during the span, or <code>-1</code> if it didn't write any.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return <code>false</code> if the stage failed, was canceled or was denied.
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return "Span{" + name + " " + getDurationMillis() + "ms" +
+                (bytes >= 0 ? ", " + bytes + " bytes" : "") +
+                (successful ? "" : ", failed") + "}";
+    }
+
+}
@@ -0,0 +1,96 @@
+package io.github.josephdalughut.android.photopicker.metrics;
+
+import android.os.Build;
+import android.os.Trace;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Times the stages of a pick, reporting them to a {@link MetricsListener} and marking them as
+ * {@link Trace} sections so they show up in systrace/Perfetto captures.
+ *
+ * Without a listener nothing is timed or allocated; only the trace markers remain, which
+ * cost next to nothing while tracing is off.
+ */
+public class Tracer {
+
+    /**
+     * A tracer without a listener, for code which only opens spans with
+     * {@link #begin(Span.Name)}. It's shared, so async spans opened on it are ignored; use
+     * {@link #of(MetricsListener)} to get a tracer of your own.
+     */
+    public static final Tracer DISABLED = new Tracer(null);
+
+    private final MetricsListener listener;
+    // Start times of the open round-trip spans, by Span.Name ordinal. Main thread only.
+    private final long[] starts = new long[Span.Name.values().length];
+    private final boolean[] open = new boolean[starts.length];
+    private final int cookie = System.identityHashCode(this);
+
+    public Tracer(@Nullable MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return a new tracer for one pick. Each pick needs its own, as async spans are tracked
+     * per tracer, so concurrent picks would otherwise close each other's.
+     */
+    public static Tracer of(@Nullable MetricsListener listener) {
+        return new Tracer(listener);
+    }
+
+    public boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * Opens a span which starts and ends on the calling thread, e.g a decode.
+     * @return the start time, to hand back to {@link #end(Span.Name, long, long, boolean)}.
+     */
+    public long begin(Span.Name name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) Trace.beginSection(name.section);
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Closes a span opened with {@link #begin(Span.Name)}, on the same thread.
+     * Call this from a <code>finally</code> block, so trace sections stay balanced.
+     * @param bytes the bytes written during the span, or <code>-1</code>.
+     * @param successful <code>false</code> if the stage threw.
+     */
+    public void end(Span.Name name, long start, long bytes, boolean successful) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) Trace.endSection();
+        if (listener == null) return;
+        listener.onSpan(new Span(name, start, System.nanoTime() - start, bytes, successful));
+    }
+
+    /**
+     * Opens a span which ends in a later callback, e.g an activity round-trip. Call this and
+     * {@link #endAsync(Span.Name, boolean)} on the main thread. Re-opening a span restarts it.
+     */
+    public void beginAsync(Span.Name name) {
+        if (this == DISABLED) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            if (open[name.ordinal()]) Trace.endAsyncSection(name.section, cookie);
+            Trace.beginAsyncSection(name.section, cookie);
+        }
+        open[name.ordinal()] = true;
+        if (listener != null) starts[name.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Closes a span opened with {@link #beginAsync(Span.Name)}. Does nothing if it isn't open,
+     * e.g because the process was killed and the picker restored in between.
+     * @param successful <code>false</code> if the stage failed, was canceled or was denied.
+     */
+    public void endAsync(Span.Name name, boolean successful) {
+        if (this == DISABLED) return;
+        if (!open[name.ordinal()]) return;
+        open[name.ordinal()] = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.endAsyncSection(name.section, cookie);
+        if (listener == null) return;
+        long start = starts[name.ordinal()];
+        listener.onSpan(new Span(name, start, System.nanoTime() - start, -1, successful));
+    }
+
+}
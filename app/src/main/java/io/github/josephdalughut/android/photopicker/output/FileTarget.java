@@ -0,0 +1,83 @@
+package io.github.josephdalughut.android.photopicker.output;
+
+import android.Manifest;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes images as files in the app's own storage, which needs no runtime permission.
+ */
+public class FileTarget implements OutputTarget {
+
+    private final boolean external;
+    private final boolean cached;
+    private final String folderName;
+
+    private FileTarget(boolean external, boolean cached, @Nullable String folderName) {
+        this.external = external;
+        this.cached = cached;
+        this.folderName = folderName;
+    }
+
+    /**
+     * Writes to the app's internal files (or cache) directory. Only the app can read these,
+     * so share them through a {@link androidx.core.content.FileProvider}.
+     * @param cached true to write to the cache directory.
+     * @param folderName a folder within the directory. May be <code>null</code>.
+     */
+    public static FileTarget internal(boolean cached, @Nullable String folderName) {
+        return new FileTarget(false, cached, folderName);
+    }
+
+    /**
+     * Writes to the app's external files (or cache) directory, under
+     * {@link Environment#DIRECTORY_PICTURES}. Other apps can't see these from API 29 on,
+     * and they're removed with the app. This needs
+     * {@link Manifest.permission#WRITE_EXTERNAL_STORAGE} before API 19.
+     * @param cached true to write to the external cache directory.
+     * @param folderName a folder within the directory. May be <code>null</code>.
+     */
+    public static FileTarget external(boolean cached, @Nullable String folderName) {
+        return new FileTarget(true, cached, folderName);
+    }
+
+    @Override
+    public String[] getRequiredPermissions() {
+        if (external && Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT)
+            return new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE};
+        return new String[0];
+    }
+
+    /**
+     * @return the directory images are written to. It may not exist yet.
+     */
+    public File getDirectory(Context context) throws IOException {
+        File directory;
+        if (external) {
+            directory = cached ? context.getExternalCacheDir() :
+                    context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (directory == null) throw new IOException("External storage isn't available");
+        } else {
+            directory = cached ? context.getCacheDir() : context.getFilesDir();
+        }
+        return folderName == null || folderName.trim().isEmpty() ? directory :
+                new File(directory, folderName);
+    }
+
+    @Override
+    public Output create(Context context, String fileName, String mimeType) throws IOException {
+        File directory = getDirectory(context);
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Unable to create " + directory);
+        File file = new File(directory, fileName);
+        return new Output(Uri.fromFile(file), file, false);
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.github.josephdalughut.android.photopicker.output;
+
+import android.Manifest;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes images into the shared MediaStore, under {@link Environment#DIRECTORY_PICTURES}, so
+ * they show up in the user's gallery.
+ *
+ * From API 29 this needs no permission: each image is inserted as a pending item, which
+ * other apps can't see until {@link Output#commit(Context)} publishes it, so a failed or
+ * canceled pick never leaves a half-written image behind. Before API 29 the image is written
+ * to the public Pictures directory, which needs
+ * {@link Manifest.permission#WRITE_EXTERNAL_STORAGE}.
+ */
+public class MediaStoreTarget implements OutputTarget {
+
+    private final String folderName;
+
+    /**
+     * @param folderName a folder within Pictures, e.g your app's name. May be <code>null</code>.
+     */
+    public MediaStoreTarget(@Nullable String folderName) {
+        this.folderName = folderName == null || folderName.trim().isEmpty() ? null : folderName;
+    }
+
+    @Override
+    public String[] getRequiredPermissions() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) return new String[0];
+        return new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE};
+    }
+
+    @Override
+    public Output create(Context context, String fileName, String mimeType) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES +
+                    (folderName == null ? "" : File.separator + folderName));
+            values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+            Uri uri = context.getContentResolver().insert(
+                    MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values);
+            if (uri == null) throw new IOException("Unable to insert " + fileName + " into MediaStore");
+            return new Output(uri, null, true);
+        }
+
+        File directory = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        if (folderName != null) directory = new File(directory, folderName);
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Unable to create " + directory);
+        File file = new File(directory, fileName);
+        values.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
+        Uri uri = context.getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) throw new IOException("Unable to insert " + fileName + " into MediaStore");
+        return new Output(uri, file, false);
+    }
+
+}
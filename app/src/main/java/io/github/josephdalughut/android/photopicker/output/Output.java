@@ -0,0 +1,151 @@
+package io.github.josephdalughut.android.photopicker.output;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.github.josephdalughut.android.photopicker.util.BufferPool;
+import io.github.josephdalughut.android.photopicker.util.Copier;
+
+/**
+ * A place an {@link OutputTarget} has set aside for one image. Write to it through
+ * {@link #getUri()} (or {@link #getFile()}, if it has one), then {@link #commit(Context)} it
+ * to make it visible, or {@link #abandon(Context)} it to remove it.
+ */
+public class Output {
+
+    private final Uri uri;
+    private final File file;
+    private final boolean pending;
+
+    Output(Uri uri, @Nullable File file, boolean pending) {
+        this.uri = uri;
+        this.file = file;
+        this.pending = pending;
+    }
+
+    /**
+     * @return the {@link Uri} to write the image to, and to hand to listeners.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the file behind {@link #getUri()}, or <code>null</code> if it can only be
+     * reached through the {@link ContentResolver}, e.g in MediaStore on API 29+.
+     */
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return <code>true</code> if this is a MediaStore item which other apps can't see
+     * until it's committed.
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
+    public OutputStream openOutputStream(Context context) throws FileNotFoundException {
+        if (file != null) return new FileOutputStream(file);
+        OutputStream out = context.getContentResolver().openOutputStream(uri);
+        if (out == null) throw new FileNotFoundException("Unable to open " + uri);
+        return out;
+    }
+
+    /**
+     * Copies a finished image into this output. This blocks, so don't call it from the main
+     * thread.
+     */
+    public void write(Context context, File source) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        OutputStream out;
+        try {
+            out = openOutputStream(context);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        try {
+            if (out instanceof FileOutputStream) {
+                Copier.transfer(in.getChannel(), ((FileOutputStream) out).getChannel(),
+                        source.length(), null);
+            } else {
+                byte[] buffer = BufferPool.getInstance().acquire(Copier.BUFFER_SIZE);
+                try {
+                    Copier.stream(in, out, buffer, null);
+                } finally {
+                    BufferPool.getInstance().release(buffer);
+                }
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Makes the written image visible to other apps: pending MediaStore items are published,
+     * and files in shared storage are scanned.
+     */
+    public void commit(Context context) {
+        if (pending && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            context.getContentResolver().update(uri, values, null, null);
+        } else if (file != null && ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            MediaScannerConnection.scanFile(context.getApplicationContext(),
+                    new String[]{file.getAbsolutePath()}, null, null);
+        }
+    }
+
+    /**
+     * Removes the output, e.g because the pick failed or was canceled.
+     */
+    public void abandon(Context context) {
+        if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            try {
+                context.getContentResolver().delete(uri, null, null);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (file != null) file.delete();
+    }
+
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable("uri", uri);
+        if (file != null) bundle.putString("file", file.getPath());
+        bundle.putBoolean("pending", pending);
+        return bundle;
+    }
+
+    public static Output fromBundle(Bundle bundle) {
+        String path = bundle.getString("file");
+        return new Output((Uri) bundle.getParcelable("uri"), path == null ? null : new File(path),
+                bundle.getBoolean("pending"));
+    }
+
+    @Override
+    public String toString() {
+        return "Output{" + uri + (pending ? ", pending" : "") + "}";
+    }
+
+}
@@ -0,0 +1,30 @@
+package io.github.josephdalughut.android.photopicker.output;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Where a picker writes the image it delivers.
+ *
+ * @see FileTarget
+ * @see MediaStoreTarget
+ */
+public interface OutputTarget {
+
+    /**
+     * @return the runtime permissions needed to write here on this device. Empty if none are.
+     */
+    String[] getRequiredPermissions();
+
+    /**
+     * Sets aside a place for one image. This may block briefly, e.g on a MediaStore insert.
+     * @param context a {@link Context}
+     * @param fileName the name of the image, including its extension.
+     * @param mimeType the image's mime type, e.g <code>image/jpeg</code>
+     * @return the {@link Output}
+     * @throws IOException if the output couldn't be created.
+     */
+    Output create(Context context, String fileName, String mimeType) throws IOException;
+
+}
@@ -0,0 +1,131 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.josephdalughut.android.photopicker.metrics.Tracer;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Processes several picked images concurrently on the bounded {@link TaskRunner} pool.
+ *
+ * Each image is submitted as its own task, so a batch takes roughly as long as its slowest
+ * images rather than the sum of all of them, while the pool size caps how many sampled
+ * bitmaps are in memory at once. A failing image doesn't stop the rest of the batch.
+ */
+public class BatchProcessor {
+
+    private final ImageProcessor processor;
+    private final OutputFactory outputFactory;
+    private ImageCache cache;
+
+    /**
+     * @param context a {@link Context}
+     * @param options the options each image is processed with.
+     * @param outputFactory creates the output file for each image.
+     */
+    public BatchProcessor(Context context, ProcessingOptions options, OutputFactory outputFactory) {
+        this.processor = new ImageProcessor(context, options);
+        this.outputFactory = outputFactory;
+    }
+
+    /**
+     * Sets an {@link ImageCache} which every image in the batch is looked up in.
+     */
+    public BatchProcessor setCache(ImageCache cache) {
+        this.cache = cache;
+        processor.setCache(cache);
+        return this;
+    }
+
+    /**
+     * Sets a {@link Tracer} which times every image in the batch.
+     */
+    public BatchProcessor setTracer(Tracer tracer) {
+        processor.setTracer(tracer);
+        return this;
+    }
+
+    /**
+     * Processes every image in <code>sources</code>. All callbacks arrive on the main thread.
+     * @param sources the picked images, in selection order.
+     * @param callback receives per-item progress and the final {@link BatchResult}.
+     */
+    public void process(final List<Uri> sources, final Callback callback) {
+        final int total = sources.size();
+        final BatchResult.Item[] items = new BatchResult.Item[total];
+        if (total == 0) {
+            callback.onComplete(new BatchResult(items));
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < total; i++) {
+            final int index = i;
+            final Uri source = sources.get(i);
+            TaskRunner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    BatchResult.Item item;
+                    try {
+                        File output = outputFactory.createOutput(index);
+                        ProcessedImage image = processor.process(source, output);
+                        item = new BatchResult.Item(index, source, image.getUri(), image, null);
+                    } catch (Exception e) {
+                        item = new BatchResult.Item(index, source, null, null, e);
+                    }
+                    // Each slot is written by exactly one task; the decrement below publishes it.
+                    items[index] = item;
+                    final BatchResult.Item result = item;
+                    final int done = completed.incrementAndGet();
+                    final boolean last = remaining.decrementAndGet() == 0;
+                    // Lookups only mark the index dirty, so write it once for the batch.
+                    if (last && cache != null) cache.flush();
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onItemComplete(result, done, total);
+                            if (last) callback.onComplete(new BatchResult(items));
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the file each image in a batch is written to.
+     */
+    public interface OutputFactory {
+
+        File createOutput(int index) throws IOException;
+
+    }
+
+    /**
+     * Receives the progress of a batch on the main thread.
+     */
+    public interface Callback {
+
+        /**
+         * Called as each image finishes, successfully or not.
+         * @param item the finished image.
+         * @param completed how many images have finished so far.
+         * @param total the number of images in the batch.
+         */
+        void onItemComplete(BatchResult.Item item, int completed, int total);
+
+        /**
+         * Called once every image has finished.
+         */
+        void onComplete(BatchResult result);
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a multi-photo pick. Each picked image has an {@link Item}, in the order the
+ * user selected them, which either holds the resulting {@link Uri} or the error which
+ * prevented it from being processed.
+ */
+public class BatchResult {
+
+    private final List<Item> items;
+
+    BatchResult(Item[] items) {
+        List<Item> list = new ArrayList<>(items.length);
+        Collections.addAll(list, items);
+        this.items = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Creates a result for a batch which wasn't processed, where every item is simply
+     * the picked {@link Uri}.
+     */
+    public static BatchResult unprocessed(List<Uri> uris) {
+        Item[] items = new Item[uris.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(i, uris.get(i), uris.get(i), null, null);
+        }
+        return new BatchResult(items);
+    }
+
+    /**
+     * @return every item in the batch, in selection order.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the {@link Uri}s of every item which succeeded, in selection order.
+     */
+    public List<Uri> getUris() {
+        List<Uri> uris = new ArrayList<>(items.size());
+        for (Item item : items) {
+            if (item.isSuccessful()) uris.add(item.getUri());
+        }
+        return uris;
+    }
+
+    /**
+     * @return the items which failed.
+     */
+    public List<Item> getFailures() {
+        List<Item> failures = new ArrayList<>();
+        for (Item item : items) {
+            if (!item.isSuccessful()) failures.add(item);
+        }
+        return failures;
+    }
+
+    /**
+     * @return the analyzed items which look like the same photo as an earlier item, within
+     * {@link ImageAnalysis#DEFAULT_DUPLICATE_DISTANCE}. Empty unless the batch was analyzed.
+     * @see io.github.josephdalughut.android.photopicker.main.PhotoPicker.Builder#analyze(boolean)
+     */
+    public List<Item> getNearDuplicates() {
+        List<Item> duplicates = new ArrayList<>();
+        List<ImageAnalysis> seen = new ArrayList<>(items.size());
+        for (Item item : items) {
+            ImageAnalysis analysis = item.getAnalysis();
+            if (analysis == null) continue;
+            for (ImageAnalysis earlier : seen) {
+                if (analysis.isNearDuplicateOf(earlier)) {
+                    duplicates.add(item);
+                    break;
+                }
+            }
+            seen.add(analysis);
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return <code>true</code> if at least one, but not every item failed.
+     */
+    public boolean isPartial() {
+        int failures = getFailures().size();
+        return failures > 0 && failures < items.size();
+    }
+
+    /**
+     * A single image in a {@link BatchResult}.
+     */
+    public static class Item {
+
+        private final int index;
+        private final Uri source;
+        private final Uri uri;
+        private final ProcessedImage image;
+        private final Exception error;
+        private final ImageAnalysis analysis;
+
+        Item(int index, Uri source, Uri uri, ProcessedImage image, Exception error) {
+            this(index, source, uri, image, error, null);
+        }
+
+        private Item(int index, Uri source, Uri uri, ProcessedImage image, Exception error,
+                     ImageAnalysis analysis) {
+            this.index = index;
+            this.source = source;
+            this.uri = uri;
+            this.image = image;
+            this.error = error;
+            this.analysis = analysis;
+        }
+
+        /**
+         * @return a copy of this item carrying <code>analysis</code>.
+         */
+        Item withAnalysis(ImageAnalysis analysis) {
+            return new Item(index, source, uri, image, error, analysis);
+        }
+
+        /**
+         * @return the position of this image in the user's selection.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the {@link Uri} the user picked.
+         */
+        public Uri getSource() {
+            return source;
+        }
+
+        /**
+         * @return the {@link Uri} of the final image, or <code>null</code> if it failed.
+         */
+        public Uri getUri() {
+            return uri;
+        }
+
+        /**
+         * @return the {@link ProcessedImage}, or <code>null</code> if it failed or processing
+         * is disabled.
+         */
+        public ProcessedImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return the {@link ImageAnalysis}, or <code>null</code> if it failed or analysis
+         * is disabled.
+         */
+        public ImageAnalysis getAnalysis() {
+            return analysis;
+        }
+
+        /**
+         * @return the error which occurred, or <code>null</code> if it succeeded.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+}
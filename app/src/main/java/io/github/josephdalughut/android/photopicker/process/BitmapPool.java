@@ -0,0 +1,306 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.github.josephdalughut.android.photopicker.util.BufferPool;
+
+/**
+ * A pool of mutable bitmaps, so processing a batch of images decodes and scales into the
+ * same few bitmaps instead of allocating new ones (and fragmenting the heap) for each image.
+ *
+ * Bitmaps are bucketed by their allocation size. From API 19 any pooled bitmap which is
+ * large enough (but not wastefully so) can be reconfigured to the size asked for, or decoded
+ * into with {@link BitmapFactory.Options#inBitmap}; before that, only one of exactly the
+ * same size and config can be reused, and only for decodes which aren't sampled.
+ *
+ * The pool holds at most {@link #maxSize()} bytes, dropping the least recently added bitmaps
+ * first, and trims itself when the system is short of memory once
+ * {@link #registerMemoryCallbacks(Context)} has been called.
+ */
+public class BitmapPool {
+
+    private static final String LOG_TAG = BitmapPool.class.getSimpleName();
+
+    // The most a reused bitmap's allocation may exceed what's needed by.
+    private static final int MAX_OVERSIZE = 4;
+
+    private static BitmapPool sInstance;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    // Every pooled bitmap, least recently added first.
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+    private long maxSize;
+    private long size;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+    private boolean registered = false;
+
+    /**
+     * @return the shared instance, capped at an eighth of the heap until
+     * {@link #setMaxSize(long)} says otherwise.
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+        return sInstance;
+    }
+
+    public BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Trims this pool and the shared {@link BufferPool} from the application's
+     * {@link ComponentCallbacks2#onTrimMemory(int)}. Only the first call registers.
+     */
+    public void registerMemoryCallbacks(Context context) {
+        synchronized (this) {
+            if (registered) return;
+            registered = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration configuration) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Sets the most bytes pooled, dropping bitmaps if it's already over.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * @return a mutable bitmap of the given size and config, from the pool if there's one,
+     * cleared to transparent. Pass it to {@link #put(Bitmap)} once you're done with it.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) return Bitmap.createBitmap(width, height, config);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Sets {@link BitmapFactory.Options#inBitmap} to a pooled bitmap the decode fits in, if
+     * there's one. Decoders may still reject it, by throwing an
+     * {@link IllegalArgumentException}; put it back with {@link #put(Bitmap)} and decode
+     * again without it.
+     * @param width the source's width, before sampling.
+     * @param height the source's height, before sampling.
+     */
+    public void prepare(BitmapFactory.Options options, int width, int height) {
+        options.inMutable = true;
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize > 1) return;
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig :
+                Bitmap.Config.ARGB_8888;
+        // Sampled sizes round differently across decoders, so allow for rounding up.
+        options.inBitmap = take((width + sampleSize - 1) / sampleSize,
+                (height + sampleSize - 1) / sampleSize, config);
+    }
+
+    /**
+     * Adds a bitmap to the pool, or recycles it if it can't be reused or doesn't fit. Don't
+     * use it afterwards.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+        int bytes = allocationSize(bitmap);
+        synchronized (this) {
+            // Putting one twice, e.g from an error path, would hand it out twice.
+            if (order.contains(bitmap)) return;
+            // Hardware bitmaps are immutable, so they're turned away here too.
+            if (bitmap.isMutable() && bytes <= maxSize && bitmap.getConfig() != null) {
+                ArrayDeque<Bitmap> bucket = buckets.get(bytes);
+                if (bucket == null) {
+                    bucket = new ArrayDeque<>();
+                    buckets.put(bytes, bucket);
+                }
+                bucket.addLast(bitmap);
+                order.addLast(bitmap);
+                size += bytes;
+                trimToSize(maxSize);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * Trims the pool (and the shared {@link BufferPool}) for a
+     * {@link ComponentCallbacks2#onTrimMemory(int)} level: emptied once the system is
+     * critically low on memory or the app is in the background, and halved when it's low.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+            BufferPool.getInstance().clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+            BufferPool buffers = BufferPool.getInstance();
+            buffers.trimToSize(buffers.maxSize() / 2);
+        }
+        Log.d(LOG_TAG, "Trimmed for level " + level + ": " + this);
+    }
+
+    /**
+     * Recycles the least recently added bitmaps until at most <code>bytes</code> are pooled.
+     */
+    public synchronized void trimToSize(long bytes) {
+        Iterator<Bitmap> iterator = order.iterator();
+        while (size > bytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            int allocation = allocationSize(bitmap);
+            removeFromBucket(allocation, bitmap);
+            size -= allocation;
+            evictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Recycles every pooled bitmap.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the bytes currently pooled.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of times a pooled bitmap was handed out.
+     */
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of times none fit, and a new one was allocated (or decoded without
+     * one).
+     */
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of bitmaps recycled to stay under the cap, or trimmed.
+     */
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = hitCount + missCount;
+        return String.format(Locale.US, "BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,"
+                        + "evictions=%d,hitRate=%d%%]", size, maxSize, hitCount, missCount,
+                evictionCount, accesses == 0 ? 0 : 100 * hitCount / accesses);
+    }
+
+    /**
+     * Removes and returns a pooled bitmap which can hold <code>width</code> by
+     * <code>height</code> pixels of <code>config</code>, or <code>null</code>.
+     */
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+        Bitmap found = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(needed);
+            if (entry != null && entry.getKey() <= (long) needed * MAX_OVERSIZE) {
+                found = entry.getValue().pollLast();
+                if (entry.getValue().isEmpty()) buckets.remove(entry.getKey());
+            }
+        } else {
+            ArrayDeque<Bitmap> bucket = buckets.get(needed);
+            if (bucket != null) {
+                for (Iterator<Bitmap> iterator = bucket.descendingIterator(); iterator.hasNext(); ) {
+                    Bitmap bitmap = iterator.next();
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                            && bitmap.getConfig() == config) {
+                        iterator.remove();
+                        found = bitmap;
+                        break;
+                    }
+                }
+                if (bucket.isEmpty()) buckets.remove(needed);
+            }
+        }
+        if (found == null) {
+            missCount++;
+            return null;
+        }
+        order.removeLastOccurrence(found);
+        size -= allocationSize(found);
+        hitCount++;
+        return found;
+    }
+
+    private void removeFromBucket(int allocation, Bitmap bitmap) {
+        ArrayDeque<Bitmap> bucket = buckets.get(allocation);
+        if (bucket == null) return;
+        bucket.removeFirstOccurrence(bitmap);
+        if (bucket.isEmpty()) buckets.remove(allocation);
+    }
+
+    /**
+     * @return the bytes a bitmap occupies, which from API 19 may be more than its current
+     * size needs.
+     */
+    private static int allocationSize(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ?
+                bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.graphics.Bitmap;
+
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Scales {@link Bitmap}s with a {@link Resampler}, as a sharper alternative to
+ * {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)}, e.g for resizing a picked
+ * image yourself. Rows are shared out over the {@link TaskRunner} executor.
+ *
+ * The source's and output's pixels are copied into <code>int</code> arrays along the way, so
+ * this briefly needs about twice the memory of the two bitmaps. It blocks, so call it off
+ * the main thread.
+ */
+public class BitmapScaler {
+
+    /**
+     * @return an <code>ARGB_8888</code> bitmap of the given size, from the
+     * {@link BitmapPool}. The source is left as it is.
+     */
+    public static Bitmap scale(Bitmap source, int width, int height, Resampler.Filter filter) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int[] pixels = new int[sourceWidth * sourceHeight];
+        source.getPixels(pixels, 0, sourceWidth, 0, 0, sourceWidth, sourceHeight);
+        int[] scaled = new int[width * height];
+        Resampler.resize(pixels, sourceWidth, sourceHeight, scaled, width, height, filter,
+                TaskRunner.executor());
+        Bitmap output = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+        output.setPixels(scaled, 0, width, 0, 0, width, height);
+        return output;
+    }
+
+}
@@ -0,0 +1,186 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads and applies EXIF metadata without touching the image data. {@link ExifInterface}
+ * only parses the header, so reading the orientation is cheap even for very large images.
+ */
+public class ExifHelper {
+
+    private static final String LOG_TAG = ExifHelper.class.getSimpleName();
+
+    // Tags copied to the output when metadata is preserved. Orientation is handled separately.
+    private static final String[] PRESERVED_TAGS = {
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_DATETIME_ORIGINAL,
+            ExifInterface.TAG_DATETIME_DIGITIZED,
+            ExifInterface.TAG_OFFSET_TIME_ORIGINAL,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_SOFTWARE,
+            ExifInterface.TAG_EXPOSURE_TIME,
+            ExifInterface.TAG_F_NUMBER,
+            ExifInterface.TAG_PHOTOGRAPHIC_SENSITIVITY,
+            ExifInterface.TAG_FOCAL_LENGTH,
+            ExifInterface.TAG_FLASH,
+            ExifInterface.TAG_WHITE_BALANCE,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF,
+            ExifInterface.TAG_GPS_ALTITUDE,
+            ExifInterface.TAG_GPS_ALTITUDE_REF,
+            ExifInterface.TAG_GPS_TIMESTAMP,
+            ExifInterface.TAG_GPS_DATESTAMP,
+    };
+
+    /**
+     * Reads the EXIF header of an image.
+     * @return the {@link ExifInterface}, or <code>null</code> if the image has no readable header.
+     */
+    @Nullable
+    public static ExifInterface read(ContentResolver resolver, Uri uri) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(uri);
+            return in == null ? null : new ExifInterface(in);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "No EXIF header in " + uri);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the EXIF orientation of an image, or {@link ExifInterface#ORIENTATION_NORMAL}
+     * if it doesn't have one.
+     */
+    public static int readOrientation(ContentResolver resolver, Uri uri) {
+        return getOrientation(read(resolver, uri));
+    }
+
+    /**
+     * @return the orientation in <code>exif</code>, or {@link ExifInterface#ORIENTATION_NORMAL}.
+     */
+    public static int getOrientation(@Nullable ExifInterface exif) {
+        if (exif == null) return ExifInterface.ORIENTATION_NORMAL;
+        int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.ORIENTATION_NORMAL);
+        return orientation == ExifInterface.ORIENTATION_UNDEFINED ?
+                ExifInterface.ORIENTATION_NORMAL : orientation;
+    }
+
+    /**
+     * @return <code>true</code> if the orientation swaps the image's width and height.
+     */
+    public static boolean isTransposed(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270
+                || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Rotates/flips a bitmap upright. Call this on the downsampled bitmap, so the extra
+     * allocation is only as large as the output.
+     * @return the upright bitmap, from the {@link BitmapPool}. If it's a new bitmap, the
+     * original has been returned to the pool.
+     */
+    public static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        // Move the transformed image back to the origin, as Bitmap.createBitmap would.
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() :
+                Bitmap.Config.ARGB_8888;
+        Bitmap rotated = pool.get(Math.round(bounds.width()), Math.round(bounds.height()), config);
+        try {
+            rotated.setHasAlpha(bitmap.hasAlpha());
+            new Canvas(rotated).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        } catch (RuntimeException e) {
+            pool.put(rotated);
+            throw e;
+        }
+        pool.put(bitmap);
+        return rotated;
+    }
+
+    /**
+     * Writes metadata into an encoded output file. Only the header is rewritten.
+     * @param source the source's EXIF header. May be <code>null</code>.
+     * @param output the encoded file.
+     * @param orientation the orientation tag to write, e.g to keep an unrotated image
+     *                    displaying upright.
+     * @param preserve <code>true</code> to also copy date, camera and location tags from
+     *                 <code>source</code>.
+     */
+    public static void write(@Nullable ExifInterface source, File output, int orientation,
+                             boolean preserve) {
+        boolean copy = preserve && source != null;
+        if (!copy && orientation == ExifInterface.ORIENTATION_NORMAL) return;
+        try {
+            ExifInterface exif = new ExifInterface(output.getPath());
+            if (copy) {
+                for (String tag : PRESERVED_TAGS) {
+                    String value = source.getAttribute(tag);
+                    if (value != null) exif.setAttribute(tag, value);
+                }
+            }
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+            exif.saveAttributes();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write metadata to " + output, e);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.net.Uri;
+
+/**
+ * The result of {@link ImageAnalyzer}: perceptual hashes for spotting near-duplicates, and a
+ * sharpness score for spotting blurry photos, before they're uploaded.
+ */
+public class ImageAnalysis {
+
+    /**
+     * The sharpness below which {@link #isBlurry()} considers an image blurry. Tune it for
+     * your photos with {@link #isBlurry(double)}.
+     */
+    public static final double DEFAULT_BLUR_THRESHOLD = 100;
+
+    /**
+     * The {@link #distance(ImageAnalysis)} up to which {@link #isNearDuplicateOf(ImageAnalysis)}
+     * considers two images the same photo.
+     */
+    public static final int DEFAULT_DUPLICATE_DISTANCE = 10;
+
+    private final Uri uri;
+    private final long dHash;
+    private final long pHash;
+    private final double sharpness;
+    private final long analyzeMillis;
+
+    ImageAnalysis(Uri uri, long dHash, long pHash, double sharpness, long analyzeMillis) {
+        this.uri = uri;
+        this.dHash = dHash;
+        this.pHash = pHash;
+        this.sharpness = sharpness;
+        this.analyzeMillis = analyzeMillis;
+    }
+
+    /**
+     * @return the {@link Uri} of the analyzed image.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the 64-bit difference hash.
+     * @see LumaKernels#dHash(int[], int, int)
+     */
+    public long getDHash() {
+        return dHash;
+    }
+
+    /**
+     * @return the 64-bit DCT hash.
+     * @see LumaKernels#pHash(int[], int, int)
+     */
+    public long getPHash() {
+        return pHash;
+    }
+
+    /**
+     * @return the variance of the Laplacian of the image, analyzed at
+     * {@link ImageAnalyzer#ANALYSIS_SIZE}. Higher is sharper.
+     */
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * @return the time spent decoding and analyzing the image, in milliseconds.
+     */
+    public long getAnalyzeMillis() {
+        return analyzeMillis;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #getSharpness()} is below
+     * {@link #DEFAULT_BLUR_THRESHOLD}.
+     */
+    public boolean isBlurry() {
+        return isBlurry(DEFAULT_BLUR_THRESHOLD);
+    }
+
+    public boolean isBlurry(double threshold) {
+        return sharpness < threshold;
+    }
+
+    /**
+     * @return the number of bits which differ between the two images' DCT hashes, from 0
+     * (the same photo) to 64. Unrelated photos are usually around 32 apart.
+     */
+    public int distance(ImageAnalysis other) {
+        return LumaKernels.distance(pHash, other.pHash);
+    }
+
+    /**
+     * @return <code>true</code> if both images are likely the same photo, e.g re-picked or
+     * re-saved, within {@link #DEFAULT_DUPLICATE_DISTANCE}.
+     */
+    public boolean isNearDuplicateOf(ImageAnalysis other) {
+        return isNearDuplicateOf(other, DEFAULT_DUPLICATE_DISTANCE);
+    }
+
+    public boolean isNearDuplicateOf(ImageAnalysis other, int maxDistance) {
+        return distance(other) <= maxDistance;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageAnalysis{" + uri + ", dHash=" + Long.toHexString(dHash) + ", pHash="
+                + Long.toHexString(pHash) + ", sharpness=" + Math.round(sharpness)
+                + ", " + analyzeMillis + "ms}";
+    }
+}
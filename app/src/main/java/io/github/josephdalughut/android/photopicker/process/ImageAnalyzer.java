@@ -0,0 +1,185 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Analyzes picked images for near-duplicates and blur, so they can be rejected on the device
+ * rather than after an upload. See {@link ImageAnalysis}.
+ *
+ * The image is decoded at a sample size which leaves it just above {@link #ANALYSIS_SIZE},
+ * in RGB_565, and scaled down to it, so every image is scored at the same size and only a
+ * small bitmap is ever decoded. The hashes and sharpness are then computed over its luma by
+ * {@link LumaKernels}.
+ */
+public class ImageAnalyzer {
+
+    private static final String LOG_TAG = ImageAnalyzer.class.getSimpleName();
+
+    /**
+     * The longest side images are analyzed at.
+     */
+    public static final int ANALYSIS_SIZE = 256;
+
+    private final Context context;
+
+    public ImageAnalyzer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Analyzes the image on the calling thread. Don't call this from the main thread.
+     * @throws IOException if the image couldn't be read.
+     */
+    public ImageAnalysis analyze(Uri uri) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        ContentResolver resolver = context.getContentResolver();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(resolver, uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Unable to read image bounds: " + uri);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ImageProcessor.calculateSampleSize(options.outWidth,
+                options.outHeight, ANALYSIS_SIZE);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = decode(resolver, uri, options);
+        if (bitmap == null) throw new IOException("Unable to decode image: " + uri);
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int longest = Math.max(width, height);
+        if (longest > ANALYSIS_SIZE) {
+            width = Math.max(1, width * ANALYSIS_SIZE / longest);
+            height = Math.max(1, height * ANALYSIS_SIZE / longest);
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+        int[] luma = new int[width * height];
+        bitmap.getPixels(luma, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        LumaKernels.toLuma(luma, luma.length);
+        ImageAnalysis analysis = new ImageAnalysis(uri,
+                LumaKernels.dHash(luma, width, height),
+                LumaKernels.pHash(luma, width, height),
+                LumaKernels.laplacianVariance(luma, width, height),
+                SystemClock.elapsedRealtime() - start);
+        Log.d(LOG_TAG, "Analyzed " + analysis);
+        return analysis;
+    }
+
+    /**
+     * Analyzes the image on the {@link TaskRunner} executor, and reports back on the main
+     * thread.
+     */
+    public void analyzeAsync(final Uri uri, final Callback callback) {
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                ImageAnalysis analysis = null;
+                Exception error = null;
+                try {
+                    analysis = analyze(uri);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final ImageAnalysis result = analysis;
+                final Exception exception = error;
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (exception != null) callback.onError(exception);
+                        else callback.onAnalyzed(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Analyzes every successful item of a batch concurrently, and reports back on the main
+     * thread with a copy of the batch whose items carry their {@link ImageAnalysis}. Items
+     * which couldn't be analyzed are left without one.
+     */
+    public void analyzeAsync(final BatchResult batch, final BatchCallback callback) {
+        final int total = batch.getItems().size();
+        final BatchResult.Item[] items = batch.getItems().toArray(new BatchResult.Item[total]);
+        final AtomicInteger remaining = new AtomicInteger(total);
+        if (total == 0) {
+            callback.onAnalyzed(batch);
+            return;
+        }
+        for (int i = 0; i < total; i++) {
+            final int index = i;
+            TaskRunner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    BatchResult.Item item = items[index];
+                    if (item.isSuccessful()) {
+                        try {
+                            items[index] = item.withAnalysis(analyze(item.getUri()));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    // The decrement publishes this task's slot to whichever finishes last.
+                    if (remaining.decrementAndGet() != 0) return;
+                    final BatchResult result = new BatchResult(items);
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onAnalyzed(result);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private static Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) throw new IOException("Unable to open " + uri);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Receives the result of {@link #analyzeAsync(Uri, Callback)} on the main thread.
+     */
+    public interface Callback {
+
+        void onAnalyzed(ImageAnalysis analysis);
+
+        void onError(Exception e);
+
+    }
+
+    /**
+     * Receives the result of {@link #analyzeAsync(BatchResult, BatchCallback)} on the main
+     * thread.
+     */
+    public interface BatchCallback {
+
+        void onAnalyzed(BatchResult result);
+
+    }
+
+}
@@ -0,0 +1,368 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+import io.github.josephdalughut.android.photopicker.util.Hashing;
+
+/**
+ * An opt-in cache of processed images, keyed by a hash of the source bytes and the
+ * {@link ProcessingOptions} they were processed with. Re-picking an image which was already
+ * processed returns the existing output instead of decoding and encoding it again.
+ *
+ * The cache keeps its own copy of each output in a directory of its own, and hands out a
+ * fresh copy on a hit, so the files the app was given are never shared between picks or
+ * deleted under it. The index is kept in a small text file in the same directory so it
+ * survives process death, and entries are evicted least-recently-used first (deleting their
+ * copies) once the cache grows past its size cap. It's rewritten whenever entries are added or removed; lookups only update access
+ * times, so they're written at most every {@link #FLUSH_INTERVAL_MILLIS}, or on
+ * {@link #flush()}. All methods block on I/O, so call them off the main thread.
+ */
+public class ImageCache {
+
+    private static final String LOG_TAG = ImageCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "photopicker_cache";
+    private static final String INDEX_FILE = "index";
+    private static final long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+    // The longest lookups go unwritten, unless something else writes the index first.
+    static final long FLUSH_INTERVAL_MILLIS = 10 * 1000;
+
+    private static ImageCache sDefault;
+
+    private final File directory;
+    private final File indexFile;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long size;
+    private boolean loaded;
+    // Whether the index on disk is behind, e.g on access times.
+    private boolean dirty;
+    private long lastPersist;
+
+    /**
+     * @return the shared cache, capped at 50MB and kept in the app's files directory.
+     */
+    public static synchronized ImageCache getDefault(Context context) {
+        if (sDefault == null) {
+            sDefault = new ImageCache(new File(context.getApplicationContext().getFilesDir(),
+                    DIRECTORY), DEFAULT_MAX_BYTES);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Creates a new instance. Don't create two instances over the same directory.
+     * @param directory where the cached copies and the index are kept. Nothing else should
+     *                  be put in it.
+     * @param maxBytes the total size of the cached files, after which entries are evicted.
+     */
+    public ImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets the size cap, evicting entries if the cache is now too large.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        ensureLoaded();
+        if (trim()) persist();
+    }
+
+    /**
+     * @return the total size of the cached files, in bytes.
+     */
+    public synchronized long size() {
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Computes the cache key for an image, by streaming its bytes through a digest along
+     * with <code>params</code>.
+     * @param resolver used to read the image.
+     * @param source the image.
+     * @param params anything else the output depends on, e.g {@link ProcessingOptions#getCacheKey()}.
+     * @return a hex string key.
+     */
+    public static String key(ContentResolver resolver, Uri source, String params) throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) throw new IOException("Unable to open " + source);
+        try {
+            return key(in, params);
+        } finally {
+            in.close();
+        }
+    }
+
+    static String key(InputStream in, String params) throws IOException {
+        return Hashing.md5Hex(in, params);
+    }
+
+    /**
+     * Copies the cached image for <code>key</code> into <code>destination</code>, so the
+     * caller gets a file of its own.
+     * @return the entry, or <code>null</code> on a miss, in which case
+     * <code>destination</code> is left alone.
+     */
+    @Nullable
+    public synchronized Entry get(String key, File destination) {
+        Entry entry = get(key);
+        if (entry == null) return null;
+        try {
+            FileUtils.copy(entry.file, destination);
+            return entry;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to copy " + entry.file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the cached entry for <code>key</code>, or <code>null</code> if there isn't one
+     * or its file has since been deleted. The entry's file is the cache's own copy, which
+     * may be evicted at any time; hand out a copy with {@link #get(String, File)} instead.
+     */
+    @Nullable
+    public synchronized Entry get(String key) {
+        ensureLoaded();
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (!entry.file.exists()) {
+            entries.remove(key);
+            size -= entry.bytes;
+            dirty = true;
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        dirty = true;
+        if (entry.lastAccess - lastPersist >= FLUSH_INTERVAL_MILLIS) persist();
+        return entry;
+    }
+
+    /**
+     * Adds a copy of a file to the cache, evicting older entries if needed. The file itself
+     * is left alone.
+     */
+    public synchronized void put(String key, File file, int width, int height) {
+        ensureLoaded();
+        File copy = new File(directory, key + getExtension(file));
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Unable to create " + directory);
+            FileUtils.copy(file, copy);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to cache " + file, e);
+            return;
+        }
+        Entry entry = new Entry(key, copy, copy.length(), width, height, System.currentTimeMillis());
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.bytes;
+            if (!previous.file.equals(copy)) delete(previous.file);
+        }
+        size += entry.bytes;
+        trim();
+        persist();
+    }
+
+    /**
+     * Writes the index if lookups have changed it since it was last written, e.g once a
+     * batch has finished.
+     */
+    public synchronized void flush() {
+        if (dirty) persist();
+    }
+
+    /**
+     * Removes every entry, deleting the cache's copies.
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        for (Entry entry : entries.values()) {
+            delete(entry.file);
+        }
+        entries.clear();
+        size = 0;
+        persist();
+    }
+
+    /**
+     * Evicts least-recently-used entries until we're within {@link #maxBytes}.
+     * @return <code>true</code> if anything was evicted.
+     */
+    private boolean trim() {
+        boolean trimmed = false;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            size -= entry.bytes;
+            delete(entry.file);
+            trimmed = true;
+            Log.d(LOG_TAG, "Evicted " + entry.file);
+        }
+        return trimmed;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        // What's on disk is what we're about to read, so it's up to date.
+        lastPersist = System.currentTimeMillis();
+        if (!indexFile.exists()) return;
+
+        List<Entry> loadedEntries = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                // Only our own copies; anything else isn't ours to hand out or delete.
+                if (entry != null && isOwned(entry.file) && entry.file.exists()) {
+                    loadedEntries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read cache index", e);
+        } finally {
+            FileUtils.closeQuietly(reader);
+        }
+
+        // The index is written in access order, so re-inserting keeps the LRU order.
+        for (Entry entry : loadedEntries) {
+            entries.put(entry.key, entry);
+            size += entry.bytes;
+        }
+    }
+
+    /**
+     * Deletes one of our copies. Files outside {@link #directory} are never deleted, as they
+     * may be images the app was handed.
+     */
+    private void delete(File file) {
+        if (isOwned(file)) file.delete();
+    }
+
+    private boolean isOwned(File file) {
+        return directory.equals(file.getParentFile());
+    }
+
+    private static String getExtension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    /**
+     * Writes the index to a temporary file and renames it over the old one, so a crash
+     * mid-write never leaves a truncated index.
+     */
+    private void persist() {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Unable to create " + directory);
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(entry.getValue().format());
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(indexFile)) throw new IOException("Unable to replace " + indexFile);
+            dirty = false;
+            lastPersist = System.currentTimeMillis();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write cache index", e);
+        } finally {
+            FileUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * A single cached image.
+     */
+    public static class Entry {
+
+        private final String key;
+        private final File file;
+        private final long bytes;
+        private final int width;
+        private final int height;
+        private long lastAccess;
+
+        Entry(String key, File file, long bytes, int width, int height, long lastAccess) {
+            this.key = key;
+            this.file = file;
+            this.bytes = bytes;
+            this.width = width;
+            this.height = height;
+            this.lastAccess = lastAccess;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        String format() {
+            return key + '\t' + bytes + '\t' + width + '\t' + height + '\t' + lastAccess + '\t'
+                    + file.getPath();
+        }
+
+        @Nullable
+        static Entry parse(String line) {
+            String[] parts = line.split("\t", 6);
+            if (parts.length != 6) return null;
+            try {
+                return new Entry(parts[0], new File(parts[5]), Long.parseLong(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                        Long.parseLong(parts[4]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.heifwriter.HeifWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.util.BufferPool;
+
+/**
+ * Encodes bitmaps in an {@link OutputFormat}, using {@link Bitmap#compress} where it can and
+ * the platform HEVC encoder for {@link OutputFormat#HEIC}.
+ */
+class ImageEncoder {
+
+    // How long we wait for the HEVC encoder to finish an image.
+    private static final long HEIF_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Encodes <code>bitmap</code> into <code>out</code>, which is reset first.
+     * @param format the format to encode, see {@link OutputFormat#resolve()}.
+     * @param quality the encoder quality from 0 to 100, ignored by lossless formats.
+     */
+    static void encode(Context context, Bitmap bitmap, OutputFormat format, int quality,
+                       ByteArrayOutputStream out) throws IOException {
+        out.reset();
+        if (format == OutputFormat.HEIC) {
+            encodeHeif(context, bitmap, quality, out);
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            // Before API 30 WEBP switches to lossless at 100, so that's what marks lossless.
+            if (format == OutputFormat.WEBP_LOSSLESS) quality = 100;
+            else if (format == OutputFormat.WEBP_LOSSY) quality = Math.min(quality, 99);
+        }
+        if (!bitmap.compress(format.getCompressFormat(), quality, out))
+            throw new IOException("Unable to encode image as " + format);
+    }
+
+    /**
+     * HeifWriter only writes to files, so this encodes to a temporary file and reads it back.
+     */
+    @TargetApi(Build.VERSION_CODES.P)
+    private static void encodeHeif(Context context, Bitmap bitmap, int quality,
+                                   ByteArrayOutputStream out) throws IOException {
+        File temp = File.createTempFile("encode", ".heic", context.getCacheDir());
+        try {
+            HeifWriter writer = new HeifWriter.Builder(temp.getAbsolutePath(), bitmap.getWidth(),
+                    bitmap.getHeight(), HeifWriter.INPUT_MODE_BITMAP)
+                    .setQuality(quality)
+                    .setMaxImages(1)
+                    .build();
+            try {
+                writer.start();
+                writer.addBitmap(bitmap);
+                writer.stop(HEIF_TIMEOUT_MILLIS);
+            } catch (Exception e) {
+                throw new IOException("Unable to encode image as HEIC", e);
+            } finally {
+                writer.close();
+            }
+
+            FileInputStream in = new FileInputStream(temp);
+            byte[] buffer = BufferPool.getInstance().acquire(64 * 1024);
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                BufferPool.getInstance().release(buffer);
+                in.close();
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+}
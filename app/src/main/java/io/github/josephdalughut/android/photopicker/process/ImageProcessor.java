@@ -0,0 +1,396 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.josephdalughut.android.photopicker.metrics.Span;
+import io.github.josephdalughut.android.photopicker.metrics.Tracer;
+import io.github.josephdalughut.android.photopicker.util.BufferPool;
+import io.github.josephdalughut.android.photopicker.util.PooledOutputStream;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Downsamples and re-encodes a picked image according to a set of {@link ProcessingOptions}.
+ *
+ * The source is first read bounds-only, so we can pick an <code>inSampleSize</code> which
+ * never decodes more than twice the pixels we need; the sampled bitmap is then scaled to
+ * the exact target size, turned upright according to its EXIF orientation, and encoded.
+ *
+ * Bitmaps are decoded into and scaled through the shared {@link BitmapPool}, and encoded
+ * into buffers from the shared {@link BufferPool}, so a batch of images settles into reusing
+ * the same memory rather than allocating it afresh for each one.
+ */
+public class ImageProcessor {
+
+    private static final String LOG_TAG = ImageProcessor.class.getSimpleName();
+
+    // How much we shrink the image each time the byte budget can't be met by quality alone.
+    private static final float BUDGET_SCALE_STEP = 0.75f;
+    // The encode buffer we start with; it grows through the pool as needed.
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    private final Context context;
+    private final ProcessingOptions options;
+    private ImageCache cache;
+    private Tracer tracer = Tracer.DISABLED;
+
+    public ImageProcessor(Context context, ProcessingOptions options) {
+        this.context = context.getApplicationContext();
+        this.options = options;
+        BitmapPool.getInstance().registerMemoryCallbacks(context);
+    }
+
+    /**
+     * Sets an {@link ImageCache} to look processed images up in before processing them,
+     * and to add them to afterwards.
+     */
+    public ImageProcessor setCache(@Nullable ImageCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Sets a {@link Tracer} to time the decode, encode and write stages with.
+     */
+    public ImageProcessor setTracer(@Nullable Tracer tracer) {
+        this.tracer = tracer == null ? Tracer.DISABLED : tracer;
+        return this;
+    }
+
+    /**
+     * Processes the image on the {@link TaskRunner} executor, and reports back on the
+     * main thread.
+     * @param source the picked image.
+     * @param output the file to write to.
+     * @param callback receives the result.
+     */
+    public void processAsync(final Uri source, final File output, final Callback callback) {
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final ProcessedImage image = process(source, output);
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onProcessed(image);
+                        }
+                    });
+                } catch (final Exception e) {
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Processes the image on the calling thread. Don't call this from the main thread.
+     * @param source the picked image.
+     * @param output the file to write to.
+     * @return the {@link ProcessedImage}
+     * @throws IOException if the image couldn't be read or written.
+     */
+    public ProcessedImage process(Uri source, File output) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        String key = null;
+        if (cache != null) {
+            key = ImageCache.key(resolver, source, options.getCacheKey());
+            // A copy of its own, so no two picks share a file and eviction never touches it.
+            ImageCache.Entry entry = cache.get(key, output);
+            if (entry != null) {
+                ProcessedImage image = new ProcessedImage(source, output,
+                        entry.getWidth(), entry.getHeight(), 1, 0, 0, true);
+                Log.d(LOG_TAG, "Cache hit " + image);
+                return image;
+            }
+        }
+
+        OutputFormat format = options.getFormat().resolve();
+        // Formats we can't write EXIF to can't carry the orientation tag, so rotate the pixels.
+        boolean applyOrientation = options.isApplyOrientation() || !format.supportsExif();
+
+        long decodeStart = SystemClock.elapsedRealtime();
+        ExifInterface exif;
+        int orientation;
+        int sampleSize;
+        Bitmap bitmap = null;
+        long span = tracer.begin(Span.Name.DECODE);
+        boolean decoded = false;
+        try {
+            exif = ExifHelper.read(resolver, source);
+            orientation = ExifHelper.getOrientation(exif);
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            decode(resolver, source, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0)
+                throw new IOException("Unable to read image bounds: " + source);
+
+            long budget = options.getMaxMemoryBytes() > 0 ? options.getMaxMemoryBytes() :
+                    TiledDecoder.getDefaultBudget();
+            int[] size = TiledDecoder.fit(bounds.outWidth, bounds.outHeight,
+                    options.getMaxDimension(), budget);
+            int maxDimension = Math.max(size[0], size[1]);
+            sampleSize = calculateSampleSize(bounds.outWidth, bounds.outHeight, maxDimension);
+            if (TiledDecoder.exceedsBudget(bounds.outWidth, bounds.outHeight, sampleSize,
+                    size[0], size[1], budget)) {
+                // Too big to decode whole even when sampled, e.g a huge panorama.
+                bitmap = TiledDecoder.decode(resolver, source, size[0], size[1], budget);
+            } else {
+                BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+                decodeOptions.inSampleSize = sampleSize;
+                bitmap = decodePooled(resolver, source, decodeOptions, bounds.outWidth,
+                        bounds.outHeight);
+                if (bitmap == null) throw new IOException("Unable to decode image: " + source);
+                bitmap = scaleToFit(bitmap, maxDimension, options.getResampling());
+            }
+            if (applyOrientation) bitmap = ExifHelper.applyOrientation(bitmap, orientation);
+            decoded = true;
+        } finally {
+            // The scaling steps only give up their input once they've succeeded, so whatever
+            // bitmap we were holding when one failed is still ours to return.
+            if (!decoded && bitmap != null) BitmapPool.getInstance().put(bitmap);
+            tracer.end(Span.Name.DECODE, span, -1, decoded);
+        }
+        long decodeMillis = SystemClock.elapsedRealtime() - decodeStart;
+
+        long encodeStart = SystemClock.elapsedRealtime();
+        int width, height;
+        PooledOutputStream buffer = new PooledOutputStream(BufferPool.getInstance(),
+                INITIAL_BUFFER_SIZE);
+        try {
+            span = tracer.begin(Span.Name.ENCODE);
+            boolean encoded = false;
+            try {
+                bitmap = encodeWithinBudget(bitmap, format, buffer);
+                encoded = true;
+            } finally {
+                tracer.end(Span.Name.ENCODE, span, -1, encoded);
+            }
+            width = bitmap.getWidth();
+            height = bitmap.getHeight();
+            BitmapPool.getInstance().put(bitmap);
+
+            span = tracer.begin(Span.Name.WRITE);
+            boolean written = false;
+            try {
+                writeFile(buffer, output);
+                if (format.supportsExif()) {
+                    ExifHelper.write(exif, output, applyOrientation ?
+                            ExifInterface.ORIENTATION_NORMAL : orientation, options.isPreserveMetadata());
+                }
+                written = true;
+            } finally {
+                tracer.end(Span.Name.WRITE, span, written ? output.length() : -1, written);
+            }
+        } finally {
+            buffer.release();
+        }
+        long encodeMillis = SystemClock.elapsedRealtime() - encodeStart;
+
+        ProcessedImage image = new ProcessedImage(source, output, width, height, sampleSize,
+                decodeMillis, encodeMillis);
+        Log.d(LOG_TAG, "Processed " + image);
+        if (cache != null) cache.put(key, output, width, height);
+        return image;
+    }
+
+    /**
+     * Encodes the bitmap into the buffer, lowering the quality and then the size until
+     * {@link ProcessingOptions#getMaxBytes()} is met.
+     * @return the bitmap which was finally encoded. This may differ from the one passed in,
+     * in which case the original has been returned to the {@link BitmapPool}. If this throws,
+     * the bitmap it was encoding has been returned too.
+     */
+    private Bitmap encodeWithinBudget(Bitmap bitmap, OutputFormat format,
+                                      ByteArrayOutputStream buffer) throws IOException {
+        long maxBytes = options.getMaxBytes();
+        boolean done = false;
+        try {
+            while (true) {
+                ImageEncoder.encode(context, bitmap, format, options.getQuality(), buffer);
+                if (maxBytes <= 0 || buffer.size() <= maxBytes) break;
+                if (!format.isLossless() && searchQuality(bitmap, format, buffer)) break;
+
+                int width = Math.round(bitmap.getWidth() * BUDGET_SCALE_STEP);
+                int height = Math.round(bitmap.getHeight() * BUDGET_SCALE_STEP);
+                if (width < 1 || height < 1) break;
+                bitmap = scale(bitmap, width, height);
+            }
+            done = true;
+        } finally {
+            if (!done) BitmapPool.getInstance().put(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Binary-searches the qualities between {@link ProcessingOptions#getMinQuality()} and
+     * {@link ProcessingOptions#getQuality()} for the highest whose output fits the budget.
+     * Output size grows with quality, so this takes a handful of encodes rather than one per
+     * quality step.
+     * @return <code>true</code> if one fits, in which case its output is in the buffer.
+     */
+    private boolean searchQuality(Bitmap bitmap, OutputFormat format,
+                                  ByteArrayOutputStream buffer) throws IOException {
+        long maxBytes = options.getMaxBytes();
+        int low = options.getMinQuality();
+        int high = options.getQuality() - 1;
+        PooledOutputStream attempt = new PooledOutputStream(BufferPool.getInstance(),
+                buffer.size());
+        boolean found = false;
+        try {
+            while (low <= high) {
+                int quality = (low + high) >>> 1;
+                ImageEncoder.encode(context, bitmap, format, quality, attempt);
+                if (attempt.size() <= maxBytes) {
+                    found = true;
+                    buffer.reset();
+                    attempt.writeTo(buffer);
+                    low = quality + 1;
+                } else {
+                    high = quality - 1;
+                }
+            }
+        } finally {
+            attempt.release();
+        }
+        return found;
+    }
+
+    private static void writeFile(ByteArrayOutputStream buffer, File output) throws IOException {
+        File parent = output.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        FileOutputStream out = new FileOutputStream(output);
+        try {
+            buffer.writeTo(out);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Bitmap decode(ContentResolver resolver, Uri source, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) throw new IOException("Unable to open " + source);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes into a bitmap from the {@link BitmapPool} if one fits, or a new one otherwise.
+     * @param width the source's width, before sampling.
+     * @param height the source's height, before sampling.
+     */
+    private static Bitmap decodePooled(ContentResolver resolver, Uri source,
+                                       BitmapFactory.Options options, int width, int height)
+            throws IOException {
+        BitmapPool pool = BitmapPool.getInstance();
+        pool.prepare(options, width, height);
+        Bitmap reused = options.inBitmap;
+        if (reused == null) return decode(resolver, source, options);
+        try {
+            Bitmap bitmap = decode(resolver, source, options);
+            if (bitmap == null) pool.put(reused);
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // The decoder wouldn't decode into it after all, e.g a format it can't reuse for.
+            Log.d(LOG_TAG, "Unable to reuse bitmap for " + source + ": " + e.getMessage());
+            options.inBitmap = null;
+            pool.put(reused);
+            return decode(resolver, source, options);
+        }
+    }
+
+    /**
+     * Calculates the largest power-of-two sample size which still leaves the decoded image
+     * at least as large as <code>maxDimension</code> on its longest side.
+     */
+    static int calculateSampleSize(int width, int height, int maxDimension) {
+        if (maxDimension <= 0) return 1;
+        int longest = Math.max(width, height);
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Scales the bitmap down so its longest side is <code>maxDimension</code>, returning the
+     * original to the {@link BitmapPool} if a new bitmap was created.
+     * @param filter the {@link Resampler} filter to scale with, or <code>null</code> for
+     *               {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)}.
+     */
+    private static Bitmap scaleToFit(Bitmap bitmap, int maxDimension, @Nullable Resampler.Filter filter) {
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (maxDimension <= 0 || longest <= maxDimension) return bitmap;
+
+        float scale = maxDimension / (float) longest;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        if (filter == null) return scale(bitmap, width, height);
+        Bitmap scaled = BitmapScaler.scale(bitmap, width, height, filter);
+        BitmapPool.getInstance().put(bitmap);
+        return scaled;
+    }
+
+    /**
+     * Scales with bilinear filtering, like {@link Bitmap#createScaledBitmap}, into a bitmap
+     * from the {@link BitmapPool}. The original is returned to the pool.
+     */
+    private static Bitmap scale(Bitmap bitmap, int width, int height) {
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() :
+                Bitmap.Config.ARGB_8888;
+        Bitmap scaled = pool.get(width, height, config);
+        try {
+            scaled.setHasAlpha(bitmap.hasAlpha());
+            new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, width, height),
+                    new Paint(Paint.FILTER_BITMAP_FLAG));
+        } catch (RuntimeException e) {
+            pool.put(scaled);
+            throw e;
+        }
+        pool.put(bitmap);
+        return scaled;
+    }
+
+    /**
+     * Receives the result of {@link #processAsync(Uri, File, Callback)} on the main thread.
+     */
+    public interface Callback {
+
+        void onProcessed(ProcessedImage image);
+
+        void onError(Exception e);
+
+    }
+
+}
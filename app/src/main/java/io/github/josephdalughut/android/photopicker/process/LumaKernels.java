@@ -0,0 +1,153 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import java.util.Arrays;
+
+/**
+ * The number crunching behind {@link ImageAnalyzer}: perceptual hashes and a sharpness
+ * score, computed over a grayscale (luma) buffer.
+ *
+ * Everything works on primitive arrays, row-major, with no allocation per pixel, so it's
+ * pure Java and cheap enough to run over every image in a batch.
+ */
+public class LumaKernels {
+
+    // The DCT pHash takes its low frequencies from.
+    private static final int DCT_SIZE = 32;
+    private static final int HASH_SIZE = 8;
+    // COSINES[u][x] = cos((2x + 1) * u * PI / (2 * DCT_SIZE)), for the frequencies we keep.
+    private static final double[][] COSINES = new double[HASH_SIZE][DCT_SIZE];
+
+    static {
+        for (int u = 0; u < HASH_SIZE; u++) {
+            for (int x = 0; x < DCT_SIZE; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+            }
+        }
+    }
+
+    /**
+     * Converts ARGB pixels to luma (0-255) in place, with the BT.601 weights in fixed point.
+     */
+    public static void toLuma(int[] pixels, int count) {
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[i];
+            pixels[i] = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150
+                    + (pixel & 0xFF) * 29) >> 8;
+        }
+    }
+
+    /**
+     * Shrinks a luma buffer by averaging the source pixels under each output pixel.
+     * Sources smaller than the output have their pixels repeated.
+     */
+    public static void shrink(int[] luma, int width, int height, double[] out, int outWidth,
+                              int outHeight) {
+        for (int oy = 0; oy < outHeight; oy++) {
+            int y0 = oy * height / outHeight;
+            int y1 = Math.max(y0 + 1, (oy + 1) * height / outHeight);
+            for (int ox = 0; ox < outWidth; ox++) {
+                int x0 = ox * width / outWidth;
+                int x1 = Math.max(x0 + 1, (ox + 1) * width / outWidth);
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int row = y * width;
+                    for (int x = x0; x < x1; x++) sum += luma[row + x];
+                }
+                out[oy * outWidth + ox] = sum / (double) ((y1 - y0) * (x1 - x0));
+            }
+        }
+    }
+
+    /**
+     * Computes the difference hash: the image shrunk to 9x8, with a bit set wherever a pixel
+     * is darker than its right-hand neighbour. Robust to scaling and re-encoding, and the
+     * cheapest of the hashes.
+     */
+    public static long dHash(int[] luma, int width, int height) {
+        double[] cells = new double[(HASH_SIZE + 1) * HASH_SIZE];
+        shrink(luma, width, height, cells, HASH_SIZE + 1, HASH_SIZE);
+        long hash = 0;
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x < HASH_SIZE; x++) {
+                int i = y * (HASH_SIZE + 1) + x;
+                hash = hash << 1 | (cells[i] < cells[i + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the DCT hash: the image shrunk to 32x32, its lowest 8x8 DCT frequencies, and a
+     * bit set wherever one is above their median (the DC term is left out of the median, as
+     * it only says how bright the image is). Robust to scaling, re-encoding, and
+     * brightness/contrast changes.
+     */
+    public static long pHash(int[] luma, int width, int height) {
+        double[] cells = new double[DCT_SIZE * DCT_SIZE];
+        shrink(luma, width, height, cells, DCT_SIZE, DCT_SIZE);
+
+        // Separable DCT-II, only for the frequencies we keep: rows first, then columns.
+        double[] rows = new double[HASH_SIZE * DCT_SIZE];
+        for (int y = 0; y < DCT_SIZE; y++) {
+            int row = y * DCT_SIZE;
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double[] cosines = COSINES[u];
+                double sum = 0;
+                for (int x = 0; x < DCT_SIZE; x++) sum += cells[row + x] * cosines[x];
+                rows[u * DCT_SIZE + y] = sum;
+            }
+        }
+        double[] frequencies = new double[HASH_SIZE * HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++) {
+            double[] cosines = COSINES[v];
+            for (int u = 0; u < HASH_SIZE; u++) {
+                int column = u * DCT_SIZE;
+                double sum = 0;
+                for (int y = 0; y < DCT_SIZE; y++) sum += rows[column + y] * cosines[y];
+                frequencies[v * HASH_SIZE + u] = sum;
+            }
+        }
+
+        double[] sorted = Arrays.copyOfRange(frequencies, 1, frequencies.length);
+        Arrays.sort(sorted);
+        // 63 values, so the median is the middle one.
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (double frequency : frequencies) {
+            hash = hash << 1 | (frequency > median ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the variance of the Laplacian (the 4-neighbour kernel) over the image. Sharp
+     * images have strong edges and so a high variance; blurry ones have a low one. The score
+     * depends on the image size, so compare images analyzed at the same size.
+     */
+    public static double laplacianVariance(int[] luma, int width, int height) {
+        if (width < 3 || height < 3) return 0;
+        long sum = 0;
+        long sumSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int laplacian = luma[i - width] + luma[i + width] + luma[i - 1] + luma[i + 1]
+                        - 4 * luma[i];
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+            }
+        }
+        double count = (double) (width - 2) * (height - 2);
+        double mean = sum / count;
+        return sumSquares / count - mean * mean;
+    }
+
+    /**
+     * @return the number of bits which differ between two hashes, from 0 (identical) to 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+}
@@ -0,0 +1,160 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.graphics.Bitmap;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+
+/**
+ * The formats the processing stage can encode to. Not every device has an encoder for every
+ * format; {@link #resolve()} picks the nearest one which it does.
+ */
+public enum OutputFormat {
+
+    JPEG(".jpg", "image/jpeg", false),
+    PNG(".png", "image/png", true),
+    /** Typically 25-35% smaller than JPEG at the same perceived quality. */
+    WEBP_LOSSY(".webp", "image/webp", false),
+    /** Lossless WebP, from API 29. Falls back to {@link #PNG}. */
+    WEBP_LOSSLESS(".webp", "image/webp", true),
+    /** HEIF with HEVC, from API 28 on devices with an HEVC encoder. Falls back to {@link #WEBP_LOSSY}. */
+    HEIC(".heic", "image/heic", false),
+    /**
+     * AVIF. Android has no AVIF encoder for apps to use yet, so this currently always falls
+     * back to {@link #HEIC}, then {@link #WEBP_LOSSY}.
+     */
+    AVIF(".avif", "image/avif", false);
+
+    private static Boolean sHevcEncoder;
+
+    private final String extension;
+    private final String mimeType;
+    private final boolean lossless;
+
+    OutputFormat(String extension, String mimeType, boolean lossless) {
+        this.extension = extension;
+        this.mimeType = mimeType;
+        this.lossless = lossless;
+    }
+
+    /**
+     * @return the file extension, with the leading dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return <code>true</code> if the format ignores the encoder quality.
+     */
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    /**
+     * @return <code>true</code> if this device can encode this format.
+     */
+    public boolean isSupported() {
+        switch (this) {
+            case WEBP_LOSSLESS:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+            case HEIC:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && hasHevcEncoder();
+            case AVIF:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return this format if the device supports it, otherwise the nearest one it does.
+     */
+    public OutputFormat resolve() {
+        OutputFormat format = this;
+        while (!format.isSupported()) {
+            format = format.getFallback();
+        }
+        return format;
+    }
+
+    private OutputFormat getFallback() {
+        switch (this) {
+            case WEBP_LOSSLESS:
+                return PNG;
+            case HEIC:
+                return WEBP_LOSSY;
+            case AVIF:
+                return HEIC;
+            default:
+                return JPEG;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if EXIF metadata can be written to this format after encoding.
+     */
+    boolean supportsExif() {
+        return this == JPEG || this == PNG || this == WEBP_LOSSY || this == WEBP_LOSSLESS;
+    }
+
+    /**
+     * @return the {@link Bitmap.CompressFormat} which encodes this format, or <code>null</code>
+     * if {@link Bitmap#compress(Bitmap.CompressFormat, int, java.io.OutputStream)} can't.
+     */
+    @SuppressWarnings("deprecation")
+    Bitmap.CompressFormat getCompressFormat() {
+        switch (this) {
+            case JPEG:
+                return Bitmap.CompressFormat.JPEG;
+            case PNG:
+                return Bitmap.CompressFormat.PNG;
+            case WEBP_LOSSY:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ?
+                        Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+            case WEBP_LOSSLESS:
+                // Before API 30, WEBP at quality 100 is lossless.
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ?
+                        Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the format matching a {@link Bitmap.CompressFormat}.
+     */
+    public static OutputFormat from(Bitmap.CompressFormat format) {
+        return fromName(format.name());
+    }
+
+    /**
+     * Looks a format up by name, accepting {@link Bitmap.CompressFormat} names as well, e.g
+     * from options saved before this enum existed.
+     */
+    static OutputFormat fromName(String name) {
+        if ("WEBP".equals(name)) return WEBP_LOSSY;
+        return valueOf(name);
+    }
+
+    private static synchronized boolean hasHevcEncoder() {
+        if (sHevcEncoder == null) {
+            sHevcEncoder = false;
+            for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                if (!info.isEncoder()) continue;
+                for (String type : info.getSupportedTypes()) {
+                    if ("video/hevc".equalsIgnoreCase(type) || "image/vnd.android.heic".equalsIgnoreCase(type)) {
+                        sHevcEncoder = true;
+                        return true;
+                    }
+                }
+            }
+        }
+        return sHevcEncoder;
+    }
+
+}
@@ -0,0 +1,109 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.net.Uri;
+
+import java.io.File;
+
+/**
+ * The output of {@link ImageProcessor}, along with how long each stage took.
+ */
+public class ProcessedImage {
+
+    private final Uri source;
+    private final File file;
+    private final int width;
+    private final int height;
+    private final int sampleSize;
+    private final long decodeMillis;
+    private final long encodeMillis;
+    private final boolean cached;
+
+    ProcessedImage(Uri source, File file, int width, int height, int sampleSize,
+                   long decodeMillis, long encodeMillis) {
+        this(source, file, width, height, sampleSize, decodeMillis, encodeMillis, false);
+    }
+
+    ProcessedImage(Uri source, File file, int width, int height, int sampleSize,
+                   long decodeMillis, long encodeMillis, boolean cached) {
+        this.source = source;
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.sampleSize = sampleSize;
+        this.decodeMillis = decodeMillis;
+        this.encodeMillis = encodeMillis;
+        this.cached = cached;
+    }
+
+    /**
+     * @return the {@link Uri} the image was read from.
+     */
+    public Uri getSource() {
+        return source;
+    }
+
+    /**
+     * @return the processed file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return a {@link Uri} pointing to {@link #getFile()}.
+     */
+    public Uri getUri() {
+        return Uri.fromFile(file);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the size of the processed file in bytes.
+     */
+    public long getSizeBytes() {
+        return file.length();
+    }
+
+    /**
+     * @return the <code>inSampleSize</code> the source was decoded with.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return the time spent decoding (and scaling) the source, in milliseconds.
+     */
+    public long getDecodeMillis() {
+        return decodeMillis;
+    }
+
+    /**
+     * @return the time spent encoding and writing the output, in milliseconds.
+     */
+    public long getEncodeMillis() {
+        return encodeMillis;
+    }
+
+    /**
+     * @return <code>true</code> if this image was served from an {@link ImageCache} rather
+     * than processed again.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessedImage{" + file + ", " + width + "x" + height + ", sample=" + sampleSize
+                + ", decode=" + decodeMillis + "ms, encode=" + encodeMillis + "ms"
+                + (cached ? ", cached" : "") + "}";
+    }
+}
@@ -0,0 +1,313 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+
+/**
+ * Config for the post-pick processing stage. Build one with {@link Builder} and hand it to
+ * {@link io.github.josephdalughut.android.photopicker.main.PhotoPicker.Builder#processing(ProcessingOptions)}.
+ */
+public class ProcessingOptions {
+
+    private final int maxDimension;
+    private final long maxBytes;
+    private final int quality;
+    private final int minQuality;
+    private final OutputFormat format;
+    private final boolean applyOrientation;
+    private final boolean preserveMetadata;
+    private final long maxMemoryBytes;
+    private final Resampler.Filter resampling;
+
+    private ProcessingOptions(Builder builder) {
+        this.maxDimension = builder.maxDimension;
+        this.maxBytes = builder.maxBytes;
+        this.quality = builder.quality;
+        this.minQuality = builder.minQuality;
+        this.format = builder.format;
+        this.applyOrientation = builder.applyOrientation;
+        this.preserveMetadata = builder.preserveMetadata;
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.resampling = builder.resampling;
+    }
+
+    /**
+     * @return the maximum width/height of the output, or <code>0</code> if unbounded.
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * @return the byte budget of the output, or <code>0</code> if unbounded.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the encoder quality to start from.
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return the lowest encoder quality we're allowed to drop to when meeting {@link #getMaxBytes()}.
+     */
+    public int getMinQuality() {
+        return minQuality;
+    }
+
+    /**
+     * @return the format of the output file, as requested. It's encoded in
+     * {@link OutputFormat#resolve()}, which may differ if the device can't encode it.
+     */
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return <code>true</code> if the EXIF orientation is applied to the pixels, rather than
+     * written to the output's header.
+     */
+    public boolean isApplyOrientation() {
+        return applyOrientation;
+    }
+
+    /**
+     * @return <code>true</code> if date, camera and location metadata is copied to the output.
+     */
+    public boolean isPreserveMetadata() {
+        return preserveMetadata;
+    }
+
+    /**
+     * @return the memory processing an image may use, or <code>0</code> for the default,
+     * see {@link TiledDecoder#getDefaultBudget()}.
+     */
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * @return the filter images are scaled with, or <code>null</code> (the default) if they're
+     * scaled with {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)}.
+     * @see Builder#resampling(Resampler.Filter)
+     */
+    public Resampler.Filter getResampling() {
+        return resampling;
+    }
+
+    /**
+     * @return the file extension (with the leading dot) of the format the output is
+     * actually encoded in.
+     */
+    public String getExtension() {
+        return format.resolve().getExtension();
+    }
+
+    /**
+     * @return the mime type of the format the output is actually encoded in.
+     */
+    public String getMimeType() {
+        return format.resolve().getMimeType();
+    }
+
+    /**
+     * @return a string identifying these options, used in {@link ImageCache} keys so images
+     * processed with different options are cached separately.
+     */
+    public String getCacheKey() {
+        return "d=" + maxDimension + ";b=" + maxBytes + ";q=" + quality + ";m=" + minQuality
+                + ";f=" + format.resolve().name() + ";o=" + applyOrientation + ";x=" + preserveMetadata
+                + ";r=" + maxMemoryBytes + ";s=" + (resampling == null ? "" : resampling.name());
+    }
+
+    /**
+     * @return these options as a {@link Bundle}, e.g for saved instance state.
+     * @see #fromBundle(Bundle)
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt("maxDimension", maxDimension);
+        bundle.putLong("maxBytes", maxBytes);
+        bundle.putInt("quality", quality);
+        bundle.putInt("minQuality", minQuality);
+        bundle.putString("format", format.name());
+        bundle.putBoolean("applyOrientation", applyOrientation);
+        bundle.putBoolean("preserveMetadata", preserveMetadata);
+        bundle.putLong("maxMemoryBytes", maxMemoryBytes);
+        if (resampling != null) bundle.putString("resampling", resampling.name());
+        return bundle;
+    }
+
+    /**
+     * Restores options saved with {@link #toBundle()}.
+     */
+    public static ProcessingOptions fromBundle(Bundle bundle) {
+        String resampling = bundle.getString("resampling");
+        return new Builder()
+                .maxDimension(bundle.getInt("maxDimension"))
+                .maxBytes(bundle.getLong("maxBytes"))
+                .quality(bundle.getInt("quality"))
+                .minQuality(bundle.getInt("minQuality"))
+                .format(OutputFormat.fromName(bundle.getString("format")))
+                .applyOrientation(bundle.getBoolean("applyOrientation"))
+                .preserveMetadata(bundle.getBoolean("preserveMetadata"))
+                .maxMemoryBytes(bundle.getLong("maxMemoryBytes"))
+                .resampling(resampling == null ? null : Resampler.Filter.valueOf(resampling))
+                .build();
+    }
+
+    /**
+     * Builds a {@link ProcessingOptions} instance.
+     */
+    public static class Builder {
+
+        private int maxDimension = 0;
+        private long maxBytes = 0;
+        private int quality = 90;
+        private int minQuality = 50;
+        private OutputFormat format = OutputFormat.JPEG;
+        private boolean applyOrientation = true;
+        private boolean preserveMetadata = false;
+        private long maxMemoryBytes = 0;
+        private Resampler.Filter resampling;
+
+        public Builder() {
+        }
+
+        /**
+         * Starts from a copy of <code>options</code>.
+         */
+        public Builder(ProcessingOptions options) {
+            this.maxDimension = options.maxDimension;
+            this.maxBytes = options.maxBytes;
+            this.quality = options.quality;
+            this.minQuality = options.minQuality;
+            this.format = options.format;
+            this.applyOrientation = options.applyOrientation;
+            this.preserveMetadata = options.preserveMetadata;
+            this.maxMemoryBytes = options.maxMemoryBytes;
+            this.resampling = options.resampling;
+        }
+
+        /**
+         * Sets the maximum width/height of the output. The image is scaled down to fit,
+         * keeping its aspect ratio. <code>0</code> leaves the dimensions untouched.
+         */
+        public Builder maxDimension(int maxDimension) {
+            if (maxDimension < 0) throw new IllegalArgumentException("maxDimension must be >= 0");
+            this.maxDimension = maxDimension;
+            return this;
+        }
+
+        /**
+         * Sets a byte budget for the output. If the output doesn't fit at
+         * {@link #quality(int)}, the highest quality down to {@link #minQuality(int)} which
+         * fits is binary-searched for, so the output lands just under the budget. If even
+         * that doesn't fit, the dimensions are lowered too. Lossless formats go straight to
+         * lowering the dimensions. <code>0</code> disables the budget.
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0");
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the encoder quality, from 0 to 100.
+         */
+        public Builder quality(int quality) {
+            if (quality < 0 || quality > 100)
+                throw new IllegalArgumentException("quality must be between 0 and 100");
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * Sets the lowest encoder quality used when meeting {@link #maxBytes(long)}.
+         */
+        public Builder minQuality(int minQuality) {
+            if (minQuality < 0 || minQuality > 100)
+                throw new IllegalArgumentException("minQuality must be between 0 and 100");
+            this.minQuality = minQuality;
+            return this;
+        }
+
+        /**
+         * Sets the output format, e.g {@link OutputFormat#WEBP_LOSSY} or
+         * {@link OutputFormat#HEIC}. Formats the device can't encode fall back to the nearest
+         * one it can, see {@link OutputFormat#resolve()}.
+         */
+        public Builder format(OutputFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Sets the output format, e.g {@link Bitmap.CompressFormat#JPEG} or
+         * {@link Bitmap.CompressFormat#WEBP}.
+         */
+        public Builder format(Bitmap.CompressFormat format) {
+            return format(OutputFormat.from(format));
+        }
+
+        /**
+         * Sets how the source's EXIF orientation is handled. When <code>true</code> (the
+         * default), the downsampled bitmap is rotated upright before encoding. When
+         * <code>false</code>, the pixels are left as they are and the orientation tag is
+         * written to the output instead, which viewers honour without a rotation here.
+         */
+        public Builder applyOrientation(boolean applyOrientation) {
+            this.applyOrientation = applyOrientation;
+            return this;
+        }
+
+        /**
+         * Enables/disables copying the source's date, camera and location metadata to the
+         * output. It's stripped by default.
+         */
+        public Builder preserveMetadata(boolean preserveMetadata) {
+            this.preserveMetadata = preserveMetadata;
+            return this;
+        }
+
+        /**
+         * Sets the peak memory processing an image may use. Images too large to decode within
+         * it, even with a sample size, are decoded tile by tile with {@link TiledDecoder}, and
+         * the output is shrunk if it wouldn't fit either. <code>0</code> uses
+         * {@link TiledDecoder#getDefaultBudget()}, which is shared with the rest of a batch.
+         */
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            if (maxMemoryBytes < 0) throw new IllegalArgumentException("maxMemoryBytes must be >= 0");
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        /**
+         * Opts in to scaling images to {@link #maxDimension(int)} with a {@link Resampler}
+         * filter, e.g {@link Resampler.Filter#LANCZOS3}, rather than
+         * {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)}'s bilinear filter.
+         * <code>null</code> (the default) keeps the bilinear filter.
+         *
+         * The filters are sharper and don't alias, but they run in Java rather than natively,
+         * and are much slower. On a desktop JVM, shrinking a 12 MP photo to 1080 pixels took
+         * about 20ms bilinear, 150ms with {@link Resampler.Filter#BOX}, 430ms with
+         * {@link Resampler.Filter#CATMULL_ROM} and 600ms with
+         * {@link Resampler.Filter#LANCZOS3} on one core. Expect phones to be several times
+         * slower, and measure yours with <code>ProcessingBenchmark</code> before turning this
+         * on. Scaling also takes about twice the memory; see {@link BitmapScaler}.
+         */
+        public Builder resampling(Resampler.Filter resampling) {
+            this.resampling = resampling;
+            return this;
+        }
+
+        public ProcessingOptions build() {
+            return new ProcessingOptions(this);
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resizes ARGB pixel buffers with a proper reconstruction filter, for when
+ * <code>Bitmap.createScaledBitmap</code>'s bilinear filtering is too soft (it only looks at
+ * the four nearest pixels, so large reductions alias) or too slow when chained.
+ *
+ * Large reductions are first box-averaged by a whole factor, until the image is within twice
+ * the target size; the rest is done with a separable {@link Filter}, horizontally and then
+ * vertically. Both steps weigh each pixel's colour by its alpha, so transparent pixels don't
+ * bleed into their neighbours.
+ *
+ * It's pure Java on primitive arrays. Filter weights are computed once per resize and the
+ * passes allocate nothing per row, and rows can be shared out over an {@link Executor}.
+ */
+public class Resampler {
+
+    // Box-average down to no less than this multiple of the target size before filtering.
+    private static final int REDUCING_GAP = 2;
+    // Keeps a block's alpha-weighted sums (up to 255 * 255 per pixel) within an int.
+    private static final int MAX_FACTOR = 181;
+    // The fewest rows worth handing to another thread.
+    private static final int MIN_BAND_ROWS = 16;
+
+    /**
+     * A reconstruction filter.
+     */
+    public enum Filter {
+
+        /**
+         * Averages the source pixels under each output pixel. Fast, and free of ringing, but
+         * softer than the others.
+         */
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return x > -0.5 && x <= 0.5 ? 1 : 0;
+            }
+        },
+
+        /**
+         * A cubic which keeps edges crisp with little ringing.
+         */
+        CATMULL_ROM(2) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1) return 1.5 * x * x * x - 2.5 * x * x + 1;
+                if (x < 2) return -0.5 * x * x * x + 2.5 * x * x - 4 * x + 2;
+                return 0;
+            }
+        },
+
+        /**
+         * A windowed sinc over three lobes; the sharpest, at the cost of slight ringing
+         * around hard edges.
+         */
+        LANCZOS3(3) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1e-9) return 1;
+                if (x >= 3) return 0;
+                double px = Math.PI * x;
+                return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+            }
+        };
+
+        final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        abstract double weight(double x);
+    }
+
+    /**
+     * Resizes on the calling thread.
+     * @see #resize(int[], int, int, int[], int, int, Filter, Executor)
+     */
+    public static void resize(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth,
+                              int dstHeight, Filter filter) {
+        resize(src, srcWidth, srcHeight, dst, dstWidth, dstHeight, filter, null);
+    }
+
+    /**
+     * Resizes an image.
+     * @param src the source pixels, row-major ARGB, non-premultiplied.
+     * @param dst receives the output pixels, in the same layout.
+     * @param filter the filter to reconstruct with.
+     * @param executor shares the rows out over its threads, or <code>null</code> to do
+     *                 everything on the calling thread. The calling thread always works too,
+     *                 and takes on any rows the executor hasn't got round to, so a busy
+     *                 executor (even the one we're running on) only costs parallelism.
+     */
+    public static void resize(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth,
+                              int dstHeight, Filter filter, Executor executor) {
+        if (srcWidth < 1 || srcHeight < 1 || dstWidth < 1 || dstHeight < 1)
+            throw new IllegalArgumentException("Sizes must be positive");
+        if (src.length < srcWidth * srcHeight || dst.length < dstWidth * dstHeight)
+            throw new IllegalArgumentException("Buffer too small");
+
+        int factorX = Math.max(1, Math.min(MAX_FACTOR, srcWidth / (dstWidth * REDUCING_GAP)));
+        int factorY = Math.max(1, Math.min(MAX_FACTOR, srcHeight / (dstHeight * REDUCING_GAP)));
+        if (factorX > 1 || factorY > 1) {
+            int width = (srcWidth + factorX - 1) / factorX;
+            int height = (srcHeight + factorY - 1) / factorY;
+            int[] reduced = new int[width * height];
+            reduce(src, srcWidth, srcHeight, reduced, width, height, factorX, factorY, executor);
+            src = reduced;
+            srcWidth = width;
+            srcHeight = height;
+        }
+
+        if (srcWidth == dstWidth && srcHeight == dstHeight) {
+            System.arraycopy(src, 0, dst, 0, dstWidth * dstHeight);
+            return;
+        }
+        if (srcWidth == dstWidth) {
+            vertical(src, dst, dstWidth, srcHeight, dstHeight, filter, executor);
+            return;
+        }
+        if (srcHeight == dstHeight) {
+            horizontal(src, srcWidth, dst, dstWidth, srcHeight, filter, executor);
+            return;
+        }
+        int[] rows = new int[dstWidth * srcHeight];
+        horizontal(src, srcWidth, rows, dstWidth, srcHeight, filter, executor);
+        vertical(rows, dst, dstWidth, srcHeight, dstHeight, filter, executor);
+    }
+
+    /**
+     * Averages each <code>factorX</code> by <code>factorY</code> block of pixels. Blocks at
+     * the right and bottom edges may be partial. Neither factor may exceed {@link #MAX_FACTOR}.
+     */
+    static void reduce(final int[] src, final int srcWidth, final int srcHeight, final int[] dst,
+                       final int dstWidth, int dstHeight, final int factorX, final int factorY,
+                       Executor executor) {
+        run(dstHeight, executor, new Band() {
+            @Override
+            public void run(int from, int to) {
+                for (int oy = from; oy < to; oy++) {
+                    int y0 = oy * factorY;
+                    int y1 = Math.min(y0 + factorY, srcHeight);
+                    int out = oy * dstWidth;
+                    for (int ox = 0; ox < dstWidth; ox++) {
+                        int x0 = ox * factorX;
+                        int x1 = Math.min(x0 + factorX, srcWidth);
+                        int a = 0, r = 0, g = 0, b = 0;
+                        for (int y = y0; y < y1; y++) {
+                            int row = y * srcWidth;
+                            for (int x = x0; x < x1; x++) {
+                                int pixel = src[row + x];
+                                int alpha = pixel >>> 24;
+                                a += alpha;
+                                r += ((pixel >> 16) & 0xFF) * alpha;
+                                g += ((pixel >> 8) & 0xFF) * alpha;
+                                b += (pixel & 0xFF) * alpha;
+                            }
+                        }
+                        int count = (y1 - y0) * (x1 - x0);
+                        dst[out + ox] = a == 0 ? 0 : (a + count / 2) / count << 24
+                                | (r + a / 2) / a << 16
+                                | (g + a / 2) / a << 8
+                                | (b + a / 2) / a;
+                    }
+                }
+            }
+        });
+    }
+
+    private static void horizontal(final int[] src, final int srcWidth, final int[] dst,
+                                   final int dstWidth, int height, Filter filter,
+                                   Executor executor) {
+        final Weights weights = new Weights(srcWidth, dstWidth, filter);
+        run(height, executor, new Band() {
+            @Override
+            public void run(int from, int to) {
+                int[] bounds = weights.bounds;
+                float[] values = weights.values;
+                int taps = weights.taps;
+                for (int y = from; y < to; y++) {
+                    int row = y * srcWidth;
+                    int out = y * dstWidth;
+                    for (int ox = 0; ox < dstWidth; ox++) {
+                        int start = row + bounds[2 * ox];
+                        int count = bounds[2 * ox + 1];
+                        int offset = ox * taps;
+                        float a = 0, r = 0, g = 0, b = 0;
+                        for (int k = 0; k < count; k++) {
+                            int pixel = src[start + k];
+                            float weight = values[offset + k] * (pixel >>> 24);
+                            a += weight;
+                            r += weight * ((pixel >> 16) & 0xFF);
+                            g += weight * ((pixel >> 8) & 0xFF);
+                            b += weight * (pixel & 0xFF);
+                        }
+                        dst[out + ox] = pack(a, r, g, b);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void vertical(final int[] src, final int[] dst, final int width,
+                                 int srcHeight, int dstHeight, Filter filter, Executor executor) {
+        final Weights weights = new Weights(srcHeight, dstHeight, filter);
+        run(dstHeight, executor, new Band() {
+            @Override
+            public void run(int from, int to) {
+                int[] bounds = weights.bounds;
+                float[] values = weights.values;
+                int taps = weights.taps;
+                // Walking whole rows keeps reads sequential; this holds the sums for one.
+                float[] sums = new float[width * 4];
+                for (int oy = from; oy < to; oy++) {
+                    Arrays.fill(sums, 0);
+                    int start = bounds[2 * oy];
+                    int count = bounds[2 * oy + 1];
+                    int offset = oy * taps;
+                    for (int k = 0; k < count; k++) {
+                        float weight = values[offset + k];
+                        int row = (start + k) * width;
+                        for (int x = 0, s = 0; x < width; x++, s += 4) {
+                            int pixel = src[row + x];
+                            float alpha = weight * (pixel >>> 24);
+                            sums[s] += alpha;
+                            sums[s + 1] += alpha * ((pixel >> 16) & 0xFF);
+                            sums[s + 2] += alpha * ((pixel >> 8) & 0xFF);
+                            sums[s + 3] += alpha * (pixel & 0xFF);
+                        }
+                    }
+                    int out = oy * width;
+                    for (int x = 0, s = 0; x < width; x++, s += 4) {
+                        dst[out + x] = pack(sums[s], sums[s + 1], sums[s + 2], sums[s + 3]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Packs alpha-weighted sums into a non-premultiplied ARGB pixel, clamping the overshoot
+     * of negative lobes.
+     */
+    private static int pack(float a, float r, float g, float b) {
+        if (a <= 0) return 0;
+        return clamp(a) << 24 | clamp(r / a) << 16 | clamp(g / a) << 8 | clamp(b / a);
+    }
+
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+    }
+
+    /**
+     * Shares <code>rows</code> out in bands. Whoever is free claims the next band, the
+     * calling thread included, which then waits for any bands still being worked on.
+     */
+    private static void run(int rows, Executor executor, final Band band) {
+        int bands = executor == null ? 1 : Math.min(Runtime.getRuntime().availableProcessors() * 2,
+                Math.max(1, rows / MIN_BAND_ROWS));
+        if (bands == 1) {
+            band.run(0, rows);
+            return;
+        }
+
+        final int size = (rows + bands - 1) / bands;
+        final int total = (rows + size - 1) / size;
+        final int last = rows;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(total);
+        final RuntimeException[] failure = new RuntimeException[1];
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < total) {
+                    try {
+                        band.run(index * size, Math.min(last, (index + 1) * size));
+                    } catch (RuntimeException e) {
+                        failure[0] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        for (int i = 1; i < total; i++) executor.execute(worker);
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resizing", e);
+        }
+        if (failure[0] != null) throw failure[0];
+    }
+
+    private interface Band {
+
+        void run(int from, int to);
+
+    }
+
+    /**
+     * The filter's weights along one axis: for each output pixel, the first input pixel it
+     * reads and how many, and their normalised weights.
+     */
+    private static class Weights {
+
+        final int[] bounds;
+        final float[] values;
+        final int taps;
+
+        Weights(int in, int out, Filter filter) {
+            double scale = in / (double) out;
+            // When shrinking, the filter is stretched over the source pixels each output covers.
+            double filterScale = Math.max(scale, 1);
+            double support = filter.support * filterScale;
+            taps = (int) Math.ceil(support) * 2 + 1;
+            bounds = new int[out * 2];
+            values = new float[out * taps];
+            for (int i = 0; i < out; i++) {
+                double center = (i + 0.5) * scale;
+                int min = Math.max(0, (int) (center - support + 0.5));
+                int max = Math.min(in, (int) (center + support + 0.5));
+                int count = Math.min(max - min, taps);
+                double sum = 0;
+                for (int k = 0; k < count; k++) {
+                    double weight = filter.weight((min + k - center + 0.5) / filterScale);
+                    values[i * taps + k] = (float) weight;
+                    sum += weight;
+                }
+                if (sum != 0) {
+                    for (int k = 0; k < count; k++) values[i * taps + k] /= sum;
+                }
+                bounds[2 * i] = min;
+                bounds[2 * i + 1] = count;
+            }
+        }
+    }
+
+}
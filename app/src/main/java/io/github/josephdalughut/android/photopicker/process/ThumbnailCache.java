@@ -0,0 +1,142 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+
+/**
+ * A two-tier thumbnail cache: an in-memory {@link LruCache} sized by bitmap byte count, backed
+ * by small JPEGs in a directory under the app's cache. Disk methods block, so call them off
+ * the main thread.
+ */
+public class ThumbnailCache {
+
+    private static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+    private static final int DISK_QUALITY = 85;
+
+    private final LruCache<String, Bitmap> memory;
+    private final File directory;
+    private final long maxDiskBytes;
+    private long diskBytes = -1;
+
+    /**
+     * @param memoryBytes the most bitmap bytes kept in memory.
+     * @param directory the directory thumbnails are written to, or <code>null</code> to keep
+     *                  them in memory only.
+     * @param maxDiskBytes the most bytes kept on disk, after which the oldest thumbnails are
+     *                     deleted.
+     */
+    public ThumbnailCache(int memoryBytes, @Nullable File directory, long maxDiskBytes) {
+        this.memory = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * @return the thumbnail from memory, or <code>null</code>.
+     */
+    @Nullable
+    public Bitmap getFromMemory(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * @return the thumbnail from disk, promoting it to memory, or <code>null</code>.
+     */
+    @Nullable
+    public Bitmap getFromDisk(String key) {
+        if (directory == null) return null;
+        File file = new File(directory, key);
+        if (!file.exists()) return null;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), null);
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Adds a thumbnail to both tiers.
+     */
+    public void put(String key, Bitmap bitmap) {
+        memory.put(key, bitmap);
+        if (directory == null) return;
+        if (!directory.exists() && !directory.mkdirs()) return;
+
+        File file = new File(directory, key);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write thumbnail", e);
+            file.delete();
+            return;
+        } finally {
+            FileUtils.closeQuietly(out);
+        }
+        trimDisk(file.length());
+    }
+
+    /**
+     * Drops every thumbnail held in memory, e.g when the system is low on memory.
+     */
+    public void evictMemory() {
+        memory.evictAll();
+    }
+
+    private synchronized void trimDisk(long added) {
+        if (diskBytes < 0) {
+            diskBytes = 0;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) diskBytes += file.length();
+            }
+        } else {
+            diskBytes += added;
+        }
+        if (diskBytes <= maxDiskBytes) return;
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            order[i] = i;
+            modified[i] = files[i].lastModified();
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+            }
+        });
+        // Trim to three quarters of the cap, so we aren't trimming on every put.
+        long target = maxDiskBytes * 3 / 4;
+        for (Integer index : order) {
+            if (diskBytes <= target) break;
+            long length = files[index].length();
+            if (files[index].delete()) diskBytes -= length;
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.josephdalughut.android.photopicker.util.FileUtils;
+import io.github.josephdalughut.android.photopicker.util.Hashing;
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Produces small previews of picked images without decoding them at full size.
+ *
+ * Thumbnails are served from a {@link ThumbnailCache} where possible. Otherwise we try, in
+ * order, the provider's own thumbnail ({@link ContentResolver#loadThumbnail(Uri, Size,
+ * android.os.CancellationSignal)} on API 29+), the thumbnail embedded in the EXIF header, and
+ * finally a sampled decode of the image itself, turned upright according to its EXIF
+ * orientation.
+ */
+public class ThumbnailLoader {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    private static final String DISK_DIRECTORY = "photopicker_thumbnails";
+    private static final long MAX_DISK_BYTES = 20 * 1024 * 1024;
+
+    private static ThumbnailLoader sInstance;
+
+    private final Context context;
+    private final ThumbnailCache cache;
+    // Callbacks waiting on a thumbnail which is already being loaded, by key.
+    private final Map<String, List<Callback>> pending = new HashMap<>();
+
+    /**
+     * @return the shared loader, whose memory tier takes an eighth of the heap (at most 16MB).
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            int memoryBytes = (int) Math.min(16 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+            sInstance = new ThumbnailLoader(appContext, new ThumbnailCache(memoryBytes,
+                    new File(appContext.getCacheDir(), DISK_DIRECTORY), MAX_DISK_BYTES));
+        }
+        return sInstance;
+    }
+
+    public ThumbnailLoader(Context context, ThumbnailCache cache) {
+        this.context = context.getApplicationContext();
+        this.cache = cache;
+    }
+
+    /**
+     * @return the {@link ThumbnailCache} backing this loader.
+     */
+    public ThumbnailCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Loads a thumbnail. Memory hits for file uris are delivered immediately; anything else,
+     * including content uris, whose cache key needs a provider query, is loaded on the
+     * {@link TaskRunner} executor and delivered on the main thread. Concurrent requests
+     * for the same thumbnail share a single load.
+     * @param uri the image.
+     * @param size the longest side of the thumbnail, in pixels.
+     * @param callback receives the thumbnail.
+     */
+    public void load(final Uri uri, final int size, Callback callback) {
+        // Keying a content uri queries its provider, so that's left to the background.
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            Bitmap bitmap = cache.getFromMemory(key(context.getContentResolver(), uri, size));
+            if (bitmap != null) {
+                callback.onThumbnail(uri, bitmap);
+                return;
+            }
+        }
+
+        final String request = uri.toString() + '@' + size;
+        synchronized (pending) {
+            List<Callback> callbacks = pending.get(request);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pending.put(request, callbacks);
+        }
+
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap thumbnail = null;
+                Exception error = null;
+                try {
+                    thumbnail = loadSync(uri, size);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final List<Callback> callbacks;
+                synchronized (pending) {
+                    callbacks = pending.remove(request);
+                }
+                final Bitmap result = thumbnail;
+                final Exception failure = error;
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Callback callback : callbacks) {
+                            if (result != null) callback.onThumbnail(uri, result);
+                            else callback.onError(uri, failure);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads a thumbnail on the calling thread. Don't call this from the main thread.
+     * @param uri the image.
+     * @param size the longest side of the thumbnail, in pixels.
+     * @return the thumbnail, which is shared with the cache, so don't recycle it.
+     * @throws IOException if the image couldn't be read.
+     */
+    public Bitmap loadSync(Uri uri, int size) throws IOException {
+        String key = key(context.getContentResolver(), uri, size);
+        Bitmap bitmap = cache.getFromMemory(key);
+        if (bitmap != null) return bitmap;
+        bitmap = cache.getFromDisk(key);
+        if (bitmap != null) return bitmap;
+
+        bitmap = generate(uri, size);
+        cache.put(key, bitmap);
+        return bitmap;
+    }
+
+    private Bitmap generate(Uri uri, int size) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        Bitmap bitmap = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            bitmap = loadProviderThumbnail(resolver, uri, size);
+        }
+        if (bitmap != null) return scaleToFit(bitmap, size);
+
+        // Unlike the provider's thumbnails, these need turning upright ourselves.
+        ExifInterface exif = ExifHelper.read(resolver, uri);
+        bitmap = loadExifThumbnail(exif, size);
+        if (bitmap == null) {
+            bitmap = decodeSampled(resolver, uri, size);
+        }
+        bitmap = scaleToFit(bitmap, size);
+        return ExifHelper.applyOrientation(bitmap, ExifHelper.getOrientation(exif));
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    @Nullable
+    private static Bitmap loadProviderThumbnail(ContentResolver resolver, Uri uri, int size) {
+        try {
+            return resolver.loadThumbnail(uri, new Size(size, size), null);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "No provider thumbnail for " + uri);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the thumbnail embedded in the EXIF header, if it's at least as large as we need.
+     */
+    @Nullable
+    private static Bitmap loadExifThumbnail(@Nullable ExifInterface exif, int size) {
+        if (exif == null) return null;
+        byte[] thumbnail = exif.getThumbnail();
+        if (thumbnail == null) return null;
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, bounds);
+        if (Math.max(bounds.outWidth, bounds.outHeight) < size) return null;
+        return BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, null);
+    }
+
+    private static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int size) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(resolver, uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Unable to read image bounds: " + uri);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ImageProcessor.calculateSampleSize(options.outWidth,
+                options.outHeight, size);
+        Bitmap bitmap = decode(resolver, uri, options);
+        if (bitmap == null) throw new IOException("Unable to decode image: " + uri);
+        return bitmap;
+    }
+
+    private static Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) throw new IOException("Unable to open " + uri);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int size) {
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest <= size) return bitmap;
+        float scale = size / (float) longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * Builds a file-name safe cache key. It includes the image's size and modification time
+     * where we can find them, so an image rewritten under the same {@link Uri} (e.g an edited
+     * MediaStore photo) gets a fresh thumbnail. Content uris are looked up in their
+     * provider, so don't call this from the main thread for those.
+     */
+    static String key(ContentResolver resolver, Uri uri, int size) {
+        String raw = uri.toString() + '@' + size;
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+            File file = new File(uri.getPath());
+            raw += "#" + file.length() + "#" + file.lastModified();
+        } else if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            raw += version(resolver, uri);
+        }
+        return Hashing.md5Hex(raw);
+    }
+
+    /**
+     * @return the size and modification time the provider reports for <code>uri</code>, or
+     * failing that the size of the file it opens to. Empty if neither is available.
+     */
+    private static String version(ContentResolver resolver, Uri uri) {
+        String[] projection = {MediaStore.MediaColumns.SIZE, MediaStore.MediaColumns.DATE_MODIFIED};
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, projection, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                long length = getLong(cursor, MediaStore.MediaColumns.SIZE);
+                long modified = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+                if (length >= 0 || modified >= 0) return "#" + length + "#" + modified;
+            }
+        } catch (RuntimeException e) {
+            // Not every provider knows these columns, and some reject ones they don't.
+            Log.d(LOG_TAG, "Unable to query " + uri + ": " + e);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = resolver.openFileDescriptor(uri, "r");
+            if (descriptor != null) return "#" + descriptor.getStatSize();
+        } catch (IOException | RuntimeException e) {
+            Log.d(LOG_TAG, "Unable to stat " + uri + ": " + e);
+        } finally {
+            FileUtils.closeQuietly(descriptor);
+        }
+        return "";
+    }
+
+    /**
+     * @return the column's value, or <code>-1</code> if the cursor doesn't have it.
+     */
+    private static long getLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index < 0 || cursor.isNull(index) ? -1 : cursor.getLong(index);
+    }
+
+    /**
+     * Receives thumbnails on the main thread.
+     */
+    public interface Callback {
+
+        /**
+         * @param uri the image the thumbnail was requested for.
+         * @param thumbnail the thumbnail. It's shared with the cache, so don't recycle it.
+         */
+        void onThumbnail(Uri uri, Bitmap thumbnail);
+
+        void onError(Uri uri, Exception e);
+
+    }
+
+}
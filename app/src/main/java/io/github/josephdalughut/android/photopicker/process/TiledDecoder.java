@@ -0,0 +1,216 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.josephdalughut.android.photopicker.util.TaskRunner;
+
+/**
+ * Downscales images of any size within a fixed memory budget, e.g 100+ MP panoramas which
+ * can't be decoded whole, even with a sample size.
+ *
+ * The source is decoded in tiles with {@link BitmapRegionDecoder}, each at the largest sample
+ * size which still leaves it at least as large as the output, and drawn scaled into the
+ * output bitmap. Only the output and one tile (which is reused) are ever in memory.
+ */
+public class TiledDecoder {
+
+    private static final String LOG_TAG = TiledDecoder.class.getSimpleName();
+
+    // ARGB_8888
+    private static final int BYTES_PER_PIXEL = 4;
+    // The smallest tile we'll decode, so a tight budget doesn't mean thousands of tiny tiles.
+    private static final int MIN_TILE_SIZE = 256;
+    // The least a default budget is cut to, which still leaves room for a few tiles.
+    private static final long MIN_BUDGET = 8L * MIN_TILE_SIZE * MIN_TILE_SIZE * BYTES_PER_PIXEL;
+    // Intermediate copies are re-encoded later, so keep them close to lossless.
+    private static final int DOWNSCALE_QUALITY = 95;
+
+    /**
+     * @return the budget each decode gets when none is given: half the heap, less what the
+     * {@link BitmapPool} is holding, shared between the {@link TaskRunner} threads a batch
+     * decodes on.
+     */
+    public static long getDefaultBudget() {
+        return getDefaultBudget(Runtime.getRuntime().maxMemory(), TaskRunner.poolSize(),
+                BitmapPool.getInstance().size());
+    }
+
+    /**
+     * @param maxMemory the heap's size.
+     * @param parallelism how many decodes may run at once.
+     * @param pooled the bytes already held by the {@link BitmapPool}.
+     */
+    static long getDefaultBudget(long maxMemory, int parallelism, long pooled) {
+        long shared = Math.max(0, maxMemory / 2 - pooled);
+        return Math.max(MIN_BUDGET, shared / Math.max(1, parallelism));
+    }
+
+    /**
+     * Works out the output size for an image, so it's no larger than
+     * <code>maxDimension</code> and the output (plus a copy of it, e.g while rotating)
+     * fits in <code>budget</code>.
+     * @param maxDimension the longest side of the output, or <code>0</code> if unbounded.
+     * @return the output's width and height.
+     */
+    public static int[] fit(int width, int height, int maxDimension, long budget) {
+        int longest = Math.max(width, height);
+        double scale = maxDimension > 0 && longest > maxDimension ? maxDimension / (double) longest : 1;
+        double bytes = width * scale * height * scale * BYTES_PER_PIXEL;
+        if (budget > 0 && bytes > budget / 2) scale *= Math.sqrt(budget / 2 / bytes);
+        return new int[]{Math.max(1, (int) (width * scale)), Math.max(1, (int) (height * scale))};
+    }
+
+    /**
+     * @return <code>true</code> if decoding a <code>width</code> x <code>height</code> image at
+     * <code>sampleSize</code>, alongside an output of <code>outWidth</code> x
+     * <code>outHeight</code>, would exceed <code>budget</code>.
+     */
+    public static boolean exceedsBudget(int width, int height, int sampleSize,
+                                        int outWidth, int outHeight, long budget) {
+        long sampled = (long) ceil(width, sampleSize) * ceil(height, sampleSize) * BYTES_PER_PIXEL;
+        long output = (long) outWidth * outHeight * BYTES_PER_PIXEL;
+        return budget > 0 && sampled + output > budget;
+    }
+
+    public static BitmapRegionDecoder open(ContentResolver resolver, Uri source) throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) throw new IOException("Unable to open " + source);
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(in, false);
+            if (decoder == null) throw new IOException("Unsupported image format: " + source);
+            return decoder;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the whole of <code>source</code> into an <code>outWidth</code> x
+     * <code>outHeight</code> bitmap.
+     * @param budget the memory the output and tiles together may use.
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri source, int outWidth, int outHeight,
+                                long budget) throws IOException {
+        BitmapRegionDecoder decoder = open(resolver, source);
+        try {
+            return decode(decoder, new Rect(0, 0, decoder.getWidth(), decoder.getHeight()),
+                    outWidth, outHeight, budget);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Decodes <code>region</code> of the decoder's image into an <code>outWidth</code> x
+     * <code>outHeight</code> bitmap, tile by tile.
+     * @param budget the memory the output and tiles together may use.
+     */
+    public static Bitmap decode(BitmapRegionDecoder decoder, Rect region, int outWidth,
+                                int outHeight, long budget) throws IOException {
+        int width = region.width();
+        int height = region.height();
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= outWidth && height / (sampleSize * 2) >= outHeight) {
+            sampleSize *= 2;
+        }
+
+        // Square tiles, in sampled pixels, using whatever the output leaves of the budget.
+        long tileBudget = budget - (long) outWidth * outHeight * BYTES_PER_PIXEL;
+        int tileSize = (int) Math.max(MIN_TILE_SIZE, Math.sqrt(Math.max(0, tileBudget) / BYTES_PER_PIXEL));
+        tileSize = Math.min(tileSize, Math.max(ceil(width, sampleSize), ceil(height, sampleSize)));
+        int sourceTile = tileSize * sampleSize;
+
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap output = pool.get(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        Bitmap tile = null;
+        try {
+            Canvas canvas = new Canvas(output);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            float scaleX = outWidth / (float) width;
+            float scaleY = outHeight / (float) height;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            Rect rect = new Rect();
+            Rect src = new Rect();
+            int tiles = 0;
+            for (int top = 0; top < height; top += sourceTile) {
+                for (int left = 0; left < width; left += sourceTile) {
+                    int right = Math.min(width, left + sourceTile);
+                    int bottom = Math.min(height, top + sourceTile);
+                    rect.set(region.left + left, region.top + top, region.left + right, region.top + bottom);
+                    // The decoder draws into the reused tile, top-left aligned, clipping the rest.
+                    options.inBitmap = tile;
+                    options.inMutable = true;
+                    Bitmap decoded = decoder.decodeRegion(rect, options);
+                    if (decoded == null) throw new IOException("Unable to decode tile " + rect);
+                    // The first (top-left) tile is the largest, so it can hold every later one.
+                    if (tile == null) tile = decoded;
+                    src.set(0, 0, ceil(right - left, sampleSize), ceil(bottom - top, sampleSize));
+                    canvas.drawBitmap(decoded, src, new RectF(left * scaleX, top * scaleY,
+                            right * scaleX, bottom * scaleY), paint);
+                    if (decoded != tile) decoded.recycle();
+                    tiles++;
+                }
+            }
+            Log.d(LOG_TAG, "Decoded " + width + "x" + height + " as " + tiles + " tiles at sample size "
+                    + sampleSize + " into " + outWidth + "x" + outHeight);
+            return output;
+        } catch (IOException | RuntimeException e) {
+            pool.put(output);
+            throw e;
+        } finally {
+            if (tile != null) pool.put(tile);
+        }
+    }
+
+    /**
+     * Writes a downscaled JPEG copy of <code>source</code> to <code>output</code> if decoding
+     * it whole would exceed <code>budget</code>, e.g before handing it to a crop engine which
+     * decodes it at full size.
+     * @return <code>true</code> if a copy was written, or <code>false</code> if the source
+     * already fits and should be used as it is.
+     */
+    public static boolean downscale(ContentResolver resolver, Uri source, File output, long budget)
+            throws IOException {
+        BitmapRegionDecoder decoder = open(resolver, source);
+        Bitmap bitmap;
+        try {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            if (!exceedsBudget(width, height, 1, 0, 0, budget)) return false;
+            int[] size = fit(width, height, 0, budget);
+            bitmap = decode(decoder, new Rect(0, 0, width, height), size[0], size[1], budget);
+        } finally {
+            decoder.recycle();
+        }
+
+        FileOutputStream out = new FileOutputStream(output);
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, DOWNSCALE_QUALITY, out))
+                throw new IOException("Unable to encode " + output);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+        return true;
+    }
+
+    private static int ceil(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+}
@@ -0,0 +1,127 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * An {@link Uploader} speaking the core tus resumable upload protocol (https://tus.io) over
+ * {@link HttpURLConnection}, which most upload servers support or have a module for:
+ *
+ * <ul>
+ *     <li>A session is created with a <code>POST</code> to the endpoint carrying
+ *     <code>Upload-Length</code>, and is the url in the response's <code>Location</code>.</li>
+ *     <li>Its offset is read from the <code>Upload-Offset</code> of a <code>HEAD</code>.</li>
+ *     <li>Chunks are appended with a <code>PATCH</code>, sent as a <code>POST</code> with
+ *     <code>X-HTTP-Method-Override</code> since {@link HttpURLConnection} can't send
+ *     <code>PATCH</code>.</li>
+ * </ul>
+ *
+ * Chunks are streamed straight from the buffer with a fixed length, so nothing is copied
+ * into an intermediate request body.
+ */
+public class HttpUploader implements Uploader {
+
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String CONTENT_TYPE = "application/offset+octet-stream";
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    @Override
+    public String create(UploadOptions options, long length) throws IOException {
+        URL endpoint = new URL(options.getEndpoint());
+        HttpURLConnection connection = open(endpoint, "POST", options);
+        connection.setRequestProperty("Upload-Length", String.valueOf(length));
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(0);
+        connection.getOutputStream().close();
+        int code = finish(connection);
+        String location = connection.getHeaderField("Location");
+        if (code != HttpURLConnection.HTTP_CREATED || location == null)
+            throw new IOException("Unable to create upload, HTTP " + code);
+        return new URL(endpoint, location).toString();
+    }
+
+    @Override
+    public long getOffset(UploadOptions options, String session) throws IOException {
+        HttpURLConnection connection = open(new URL(session), "HEAD", options);
+        int code = finish(connection);
+        if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE
+                || code == HttpURLConnection.HTTP_FORBIDDEN) return -1;
+        if (code / 100 != 2) throw new IOException("Unable to read upload offset, HTTP " + code);
+        return readOffset(connection);
+    }
+
+    @Override
+    public long write(UploadOptions options, String session, long offset, byte[] buffer, int length)
+            throws IOException {
+        HttpURLConnection connection = open(new URL(session), "POST", options);
+        connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+        connection.setRequestProperty("Upload-Offset", String.valueOf(offset));
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(length);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(buffer, 0, length);
+        } finally {
+            out.close();
+        }
+        int code = finish(connection);
+        if (code / 100 == 2) return readOffset(connection);
+        // The server's offset differs from ours, e.g an earlier chunk landed after all.
+        if (code == HttpURLConnection.HTTP_CONFLICT) {
+            long acknowledged = getOffset(options, session);
+            if (acknowledged >= 0) return acknowledged;
+        }
+        throw new IOException("Unable to upload chunk at " + offset + ", HTTP " + code);
+    }
+
+    private static HttpURLConnection open(URL url, String method, UploadOptions options)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Tus-Resumable", TUS_VERSION);
+        for (Map.Entry<String, String> header : options.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    /**
+     * Reads the response code, draining the body so the connection goes back to the
+     * keep-alive pool for the next chunk.
+     */
+    private static int finish(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // Drain.
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return code;
+    }
+
+    private static long readOffset(HttpURLConnection connection) throws IOException {
+        String offset = connection.getHeaderField("Upload-Offset");
+        if (offset == null) throw new IOException("Response has no Upload-Offset");
+        try {
+            return Long.parseLong(offset.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Upload-Offset: " + offset);
+        }
+    }
+
+}
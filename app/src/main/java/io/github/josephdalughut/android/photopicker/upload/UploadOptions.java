@@ -0,0 +1,155 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Config for the upload stage: where picked images are uploaded to, and how. Build one with
+ * {@link Builder} and hand it to
+ * {@link io.github.josephdalughut.android.photopicker.main.PhotoPicker.Builder#upload(UploadOptions)},
+ * or to an {@link UploadTask} directly.
+ */
+public class UploadOptions {
+
+    private final String endpoint;
+    private final Map<String, String> headers;
+    private final int chunkSize;
+    private final int maxRetries;
+    private final boolean unmetered;
+    private final Class<? extends Uploader> uploader;
+
+    private UploadOptions(Builder builder) {
+        this.endpoint = builder.endpoint;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.chunkSize = builder.chunkSize;
+        this.maxRetries = builder.maxRetries;
+        this.unmetered = builder.unmetered;
+        this.uploader = builder.uploader;
+    }
+
+    /**
+     * @return the url uploads are created at.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return extra headers sent with every request, e.g for authorization.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the number of bytes sent per request.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return how many times in a row a chunk may fail before the upload gives up.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @return <code>true</code> if scheduled uploads wait for an unmetered network.
+     */
+    public boolean isUnmetered() {
+        return unmetered;
+    }
+
+    /**
+     * @return the {@link Uploader} implementation which talks to the endpoint.
+     */
+    public Class<? extends Uploader> getUploader() {
+        return uploader;
+    }
+
+    /**
+     * @return a new instance of {@link #getUploader()}.
+     */
+    public Uploader newUploader() {
+        try {
+            return uploader.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(uploader.getName() + " needs a public no-arg constructor", e);
+        }
+    }
+
+    /**
+     * Builds an {@link UploadOptions} instance.
+     */
+    public static class Builder {
+
+        private final String endpoint;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private int chunkSize = 512 * 1024;
+        private int maxRetries = 3;
+        private boolean unmetered = false;
+        private Class<? extends Uploader> uploader = HttpUploader.class;
+
+        /**
+         * @param endpoint the url uploads are created at.
+         */
+        public Builder(String endpoint) {
+            if (endpoint == null) throw new IllegalArgumentException("endpoint must not be null");
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Adds a header sent with every request, e.g <code>Authorization</code>.
+         */
+        public Builder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sets the number of bytes sent per request. Smaller chunks lose less work to a
+         * dropped connection; larger ones spend less time on round trips.
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be > 0");
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets how many times in a row a chunk may fail before the upload gives up. Each
+         * retry resumes from the offset the server last acknowledged.
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) throw new IllegalArgumentException("maxRetries must be >= 0");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Makes scheduled uploads wait for an unmetered (e.g Wi-Fi) network.
+         */
+        public Builder unmetered(boolean unmetered) {
+            this.unmetered = unmetered;
+            return this;
+        }
+
+        /**
+         * Sets the {@link Uploader} implementation, which must have a public no-arg
+         * constructor so scheduled uploads can re-create it after process death. Defaults to
+         * {@link HttpUploader}.
+         */
+        public Builder uploader(Class<? extends Uploader> uploader) {
+            this.uploader = uploader;
+            return this;
+        }
+
+        public UploadOptions build() {
+            return new UploadOptions(this);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import io.github.josephdalughut.android.photopicker.util.Hashing;
+
+/**
+ * Uploads an image with an {@link Uploader}, streaming it in chunks of
+ * {@link UploadOptions#getChunkSize()} through a single reused buffer, so memory use doesn't
+ * grow with the image.
+ *
+ * Each session is remembered until it completes, so running the task again for the same
+ * image (e.g after process death, see {@link UploadWorker}) resumes from the offset the
+ * server last acknowledged rather than starting over. A chunk which fails is retried from
+ * that offset too, up to {@link UploadOptions#getMaxRetries()} times in a row.
+ */
+public class UploadTask {
+
+    private static final String LOG_TAG = UploadTask.class.getSimpleName();
+
+    private static final String PREFS_NAME = "photopicker_uploads";
+    // Doubled after each failure in a row.
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Context context;
+    private final Uri source;
+    private final UploadOptions options;
+
+    public UploadTask(Context context, Uri source, UploadOptions options) {
+        this.context = context.getApplicationContext();
+        this.source = source;
+        this.options = options;
+    }
+
+    /**
+     * Runs the upload on the calling thread. Don't call this from the main thread.
+     * @param listener receives progress after each chunk. Throwing from it aborts the
+     *                 upload, which can be resumed later. May be <code>null</code>.
+     * @return the session, e.g the url of the uploaded image.
+     * @throws IOException if the image couldn't be read, or the upload failed.
+     */
+    public String run(@Nullable Listener listener) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        long length = length(resolver);
+        SharedPreferences sessions = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // The length is part of the key, so an image which changed isn't resumed onto.
+        String key = Hashing.md5Hex(source + "\n" + options.getEndpoint() + "\n" + length);
+        Uploader uploader = options.newUploader();
+
+        String session = sessions.getString(key, null);
+        long offset = session == null ? -1 : uploader.getOffset(options, session);
+        if (offset < 0) {
+            session = uploader.create(options, length);
+            sessions.edit().putString(key, session).commit();
+            offset = 0;
+        } else {
+            Log.d(LOG_TAG, "Resuming " + session + " at " + offset + " of " + length);
+        }
+        if (listener != null) listener.onProgress(offset, length);
+
+        byte[] buffer = new byte[(int) Math.min(options.getChunkSize(), Math.max(1, length))];
+        InputStream in = null;
+        long position = 0;
+        int failures = 0;
+        try {
+            while (offset < length) {
+                if (in == null || position != offset) {
+                    // First chunk, or the server acknowledged less than we sent.
+                    if (in != null) in.close();
+                    in = resolver.openInputStream(source);
+                    if (in == null) throw new IOException("Unable to open " + source);
+                    skip(in, offset);
+                    position = offset;
+                }
+                int read = read(in, buffer, (int) Math.min(buffer.length, length - offset));
+                if (read <= 0) throw new IOException("Image ended at " + offset + " of " + length);
+                position += read;
+
+                try {
+                    offset = uploader.write(options, session, offset, buffer, read);
+                    failures = 0;
+                } catch (IOException e) {
+                    if (++failures > options.getMaxRetries()) throw e;
+                    Log.d(LOG_TAG, "Chunk at " + offset + " failed, retry " + failures + ": " + e.getMessage());
+                    sleep(RETRY_DELAY_MILLIS << (failures - 1));
+                    offset = uploader.getOffset(options, session);
+                    if (offset < 0) {
+                        sessions.edit().remove(key).commit();
+                        throw new IOException("Upload session expired: " + session, e);
+                    }
+                }
+                if (listener != null) listener.onProgress(offset, length);
+            }
+        } finally {
+            if (in != null) in.close();
+        }
+        sessions.edit().remove(key).commit();
+        Log.d(LOG_TAG, "Uploaded " + source + " to " + session);
+        return session;
+    }
+
+    private long length(ContentResolver resolver) throws IOException {
+        if ("file".equals(source.getScheme())) {
+            File file = new File(source.getPath());
+            if (!file.exists()) throw new IOException("Unable to open " + source);
+            return file.length();
+        }
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(source, "r");
+        if (descriptor == null) throw new IOException("Unable to open " + source);
+        try {
+            long length = descriptor.getStatSize();
+            if (length < 0) throw new IOException("Unknown length: " + source);
+            return length;
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // Some streams won't skip; read past instead.
+                if (in.read() == -1) throw new IOException("Unable to skip to the resume offset");
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Reads until <code>length</code> bytes have been read or the stream ends.
+     */
+    private static int read(InputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, total, length - total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        }
+    }
+
+    /**
+     * Receives the progress of an upload, on the thread running it.
+     */
+    public interface Listener {
+
+        /**
+         * @param uploaded the number of bytes the server has acknowledged.
+         * @param total the size of the image.
+         */
+        void onProgress(long uploaded, long total);
+
+    }
+
+}
@@ -0,0 +1,149 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an {@link UploadTask} under WorkManager, so uploads wait for a network, survive
+ * process death, and are retried with backoff. A retried upload resumes from the offset the
+ * server last acknowledged.
+ *
+ * Observe an upload through {@link WorkManager#getWorkInfoById(UUID)}. While it runs, its
+ * progress holds {@link #KEY_UPLOADED} and {@link #KEY_TOTAL}; once it succeeds, its output
+ * holds the session (e.g the url of the uploaded image) under {@link #KEY_SESSION}.
+ */
+public class UploadWorker extends Worker {
+
+    private static final String LOG_TAG = UploadWorker.class.getSimpleName();
+
+    public static final String TAG = "photopicker-upload";
+    public static final String KEY_SESSION = "session";
+    public static final String KEY_UPLOADED = "uploaded";
+    public static final String KEY_TOTAL = "total";
+
+    private static final String KEY_SOURCE = "source";
+    private static final String KEY_ENDPOINT = "endpoint";
+    private static final String KEY_HEADER_NAMES = "headerNames";
+    private static final String KEY_HEADER_VALUES = "headerValues";
+    private static final String KEY_CHUNK_SIZE = "chunkSize";
+    private static final String KEY_MAX_RETRIES = "maxRetries";
+    private static final String KEY_UNMETERED = "unmetered";
+    private static final String KEY_UPLOADER = "uploader";
+
+    private static final long BACKOFF_SECONDS = 30;
+
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules an upload of <code>source</code>. Scheduling the same image to the same
+     * endpoint again while it's pending has no effect.
+     * @return the id of the work, for observing it with {@link WorkManager}.
+     */
+    public static UUID enqueue(Context context, Uri source, UploadOptions options) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setInputData(toData(source, options))
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(options.isUnmetered() ?
+                                NetworkType.UNMETERED : NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .addTag(TAG)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(TAG + ":" + source + ":"
+                + options.getEndpoint(), ExistingWorkPolicy.KEEP, request);
+        Log.d(LOG_TAG, "Scheduled upload " + request.getId() + " of " + source);
+        return request.getId();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Data input = getInputData();
+        Uri source = Uri.parse(input.getString(KEY_SOURCE));
+        UploadOptions options;
+        try {
+            options = fromData(input);
+        } catch (ClassNotFoundException | RuntimeException e) {
+            e.printStackTrace();
+            return Result.failure();
+        }
+
+        try {
+            String session = new UploadTask(getApplicationContext(), source, options)
+                    .run(new UploadTask.Listener() {
+                        @Override
+                        public void onProgress(long uploaded, long total) {
+                            if (isStopped()) throw new CancellationException("Upload stopped");
+                            setProgressAsync(new Data.Builder()
+                                    .putLong(KEY_UPLOADED, uploaded)
+                                    .putLong(KEY_TOTAL, total)
+                                    .build());
+                        }
+                    });
+            return Result.success(new Data.Builder().putString(KEY_SESSION, session).build());
+        } catch (FileNotFoundException e) {
+            // The image is gone, so there's nothing to retry.
+            e.printStackTrace();
+            return Result.failure();
+        } catch (IOException | CancellationException e) {
+            Log.d(LOG_TAG, "Upload of " + source + " interrupted, retrying later: " + e.getMessage());
+            return Result.retry();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Result.failure();
+        }
+    }
+
+    private static Data toData(Uri source, UploadOptions options) {
+        Map<String, String> headers = options.getHeaders();
+        String[] names = headers.keySet().toArray(new String[0]);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) values[i] = headers.get(names[i]);
+        return new Data.Builder()
+                .putString(KEY_SOURCE, source.toString())
+                .putString(KEY_ENDPOINT, options.getEndpoint())
+                .putStringArray(KEY_HEADER_NAMES, names)
+                .putStringArray(KEY_HEADER_VALUES, values)
+                .putInt(KEY_CHUNK_SIZE, options.getChunkSize())
+                .putInt(KEY_MAX_RETRIES, options.getMaxRetries())
+                .putBoolean(KEY_UNMETERED, options.isUnmetered())
+                .putString(KEY_UPLOADER, options.getUploader().getName())
+                .build();
+    }
+
+    private static UploadOptions fromData(Data data) throws ClassNotFoundException {
+        UploadOptions.Builder builder = new UploadOptions.Builder(data.getString(KEY_ENDPOINT))
+                .chunkSize(data.getInt(KEY_CHUNK_SIZE, 0))
+                .maxRetries(data.getInt(KEY_MAX_RETRIES, 0))
+                .unmetered(data.getBoolean(KEY_UNMETERED, false))
+                .uploader(Class.forName(data.getString(KEY_UPLOADER)).asSubclass(Uploader.class));
+        String[] names = data.getStringArray(KEY_HEADER_NAMES);
+        String[] values = data.getStringArray(KEY_HEADER_VALUES);
+        if (names != null && values != null) {
+            for (int i = 0; i < names.length; i++) builder.header(names[i], values[i]);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,41 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import java.io.IOException;
+
+/**
+ * Sends an image to a server in chunks, in a way which can be resumed after a dropped
+ * connection or process death.
+ *
+ * An upload is a session, identified by a string the implementation hands out (e.g a url),
+ * which the server appends chunks to. {@link UploadTask} remembers sessions across process
+ * death, and asks the server how much it has received before resuming one.
+ *
+ * Implementations need a public no-arg constructor, and are called on a background thread.
+ */
+public interface Uploader {
+
+    /**
+     * Starts a new upload session.
+     * @param length the total number of bytes which will be uploaded.
+     * @return the session.
+     */
+    String create(UploadOptions options, long length) throws IOException;
+
+    /**
+     * @return the number of bytes the server has received for <code>session</code>, or
+     * <code>-1</code> if it no longer knows it and a new session has to be started.
+     */
+    long getOffset(UploadOptions options, String session) throws IOException;
+
+    /**
+     * Sends a chunk.
+     * @param offset the session offset the chunk starts at.
+     * @param buffer holds the chunk, from index 0.
+     * @param length the length of the chunk.
+     * @return the offset the server acknowledged. This is usually
+     * <code>offset + length</code>, but may be less if the server only kept part of it.
+     */
+    long write(UploadOptions options, String session, long offset, byte[] buffer, int length)
+            throws IOException;
+
+}
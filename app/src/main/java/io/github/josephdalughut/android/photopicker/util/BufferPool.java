@@ -0,0 +1,178 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A pool of byte arrays for I/O, so copying, hashing and encoding a batch of images reuses
+ * the same few buffers instead of allocating fresh ones for each image.
+ *
+ * Arrays are bucketed by size in powers of two, so an acquired array may be larger than
+ * asked for. The pool holds at most {@link #maxSize()} bytes, dropping the least recently
+ * released arrays first. It only uses plain Java, so it can be benchmarked off-device.
+ */
+public class BufferPool {
+
+    // Buckets run from 4KB to 64MB; larger arrays aren't pooled.
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 26;
+    public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private static BufferPool sInstance;
+
+    // One per power of two, from MIN_SHIFT.
+    private final List<ArrayDeque<byte[]>> buckets = new ArrayList<>();
+    // Every pooled array, least recently released first.
+    private final ArrayDeque<byte[]> order = new ArrayDeque<>();
+    private long maxSize;
+    private long size;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    /**
+     * @return the shared instance, capped at {@link #DEFAULT_MAX_SIZE} until
+     * {@link #setMaxSize(long)} says otherwise.
+     */
+    public static synchronized BufferPool getInstance() {
+        if (sInstance == null) sInstance = new BufferPool(DEFAULT_MAX_SIZE);
+        return sInstance;
+    }
+
+    public BufferPool(long maxSize) {
+        this.maxSize = maxSize;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            buckets.add(new ArrayDeque<byte[]>());
+        }
+    }
+
+    /**
+     * Sets the most bytes pooled, dropping arrays if it's already over.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * @return an array of at least <code>minSize</code> bytes, from the pool if there's one.
+     * Its contents are whatever was last written to it. Pass it to {@link #release(byte[])}
+     * once you're done with it.
+     */
+    public byte[] acquire(int minSize) {
+        int shift = shift(minSize);
+        if (shift > MAX_SHIFT) {
+            synchronized (this) {
+                missCount++;
+            }
+            return new byte[minSize];
+        }
+        synchronized (this) {
+            byte[] buffer = bucket(shift).pollLast();
+            if (buffer != null) {
+                order.removeLastOccurrence(buffer);
+                size -= buffer.length;
+                hitCount++;
+                return buffer;
+            }
+            missCount++;
+        }
+        return new byte[1 << shift];
+    }
+
+    /**
+     * Returns an array to the pool. Arrays which didn't come from {@link #acquire(int)}, or
+     * don't fit, are left for the garbage collector, and releasing one twice does nothing.
+     * Don't use it afterwards.
+     */
+    public synchronized void release(byte[] buffer) {
+        int length = buffer.length;
+        // Only whole buckets, so whoever acquires it gets at least what they asked for.
+        if (length < 1 << MIN_SHIFT || length > 1 << MAX_SHIFT || Integer.bitCount(length) != 1)
+            return;
+        if (length > maxSize) return;
+        // Releasing one twice, e.g from an error path, would hand it out twice.
+        if (order.contains(buffer)) return;
+        bucket(Integer.numberOfTrailingZeros(length)).addLast(buffer);
+        order.addLast(buffer);
+        size += length;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Drops the least recently released arrays until at most <code>bytes</code> are pooled.
+     */
+    public synchronized void trimToSize(long bytes) {
+        Iterator<byte[]> iterator = order.iterator();
+        while (size > bytes && iterator.hasNext()) {
+            byte[] buffer = iterator.next();
+            iterator.remove();
+            bucket(Integer.numberOfTrailingZeros(buffer.length)).removeFirstOccurrence(buffer);
+            size -= buffer.length;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Drops every pooled array.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the bytes currently pooled.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of times {@link #acquire(int)} reused an array.
+     */
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of times {@link #acquire(int)} had to allocate.
+     */
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of arrays dropped to stay under the cap, or trimmed.
+     */
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = hitCount + missCount;
+        return String.format(Locale.US, "BufferPool[size=%d,maxSize=%d,hits=%d,misses=%d,"
+                        + "evictions=%d,hitRate=%d%%]", size, maxSize, hitCount, missCount,
+                evictionCount, accesses == 0 ? 0 : 100 * hitCount / accesses);
+    }
+
+    private ArrayDeque<byte[]> bucket(int shift) {
+        return buckets.get(shift - MIN_SHIFT);
+    }
+
+    /**
+     * @return the power of two of the bucket holding arrays of at least <code>size</code>.
+     */
+    private static int shift(int size) {
+        if (size <= 1 << MIN_SHIFT) return MIN_SHIFT;
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+}
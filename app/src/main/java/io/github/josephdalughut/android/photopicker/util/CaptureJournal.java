@@ -0,0 +1,87 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Remembers camera captures across process death. A capture is recorded before the camera is
+ * launched and cleared once its pick finishes, so anything still recorded on a later launch
+ * belongs to a pick the process didn't survive.
+ */
+public class CaptureJournal {
+
+    private static final String PREFS_NAME = "photopicker_captures";
+    private static final String KEY_CAPTURES = "captures";
+
+    private final SharedPreferences preferences;
+
+    public CaptureJournal(Context context) {
+        this.preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records a capture which is about to be taken.
+     */
+    public synchronized void record(File file) {
+        Set<String> paths = read();
+        if (paths.add(file.getPath())) write(paths);
+    }
+
+    /**
+     * Clears a capture whose pick has finished.
+     */
+    public synchronized void clear(File file) {
+        Set<String> paths = read();
+        if (paths.remove(file.getPath())) write(paths);
+    }
+
+    /**
+     * Clears every capture left behind by an earlier process, skipping those still held by
+     * an in-flight pick. Empty captures (the camera never wrote to them) are deleted.
+     * @return the captures which hold a photo, oldest first.
+     */
+    public synchronized List<File> recoverOrphans(Set<File> inFlight) {
+        Set<String> paths = read();
+        Set<String> remaining = new HashSet<>();
+        List<File> recovered = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (inFlight.contains(file)) {
+                remaining.add(path);
+            } else if (file.length() > 0) {
+                recovered.add(file);
+            } else {
+                file.delete();
+            }
+        }
+        write(remaining);
+        Collections.sort(recovered, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long left = a.lastModified(), right = b.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        return recovered;
+    }
+
+    private Set<String> read() {
+        // The returned set mustn't be modified, so copy it.
+        return new HashSet<>(preferences.getStringSet(KEY_CAPTURES, new HashSet<String>()));
+    }
+
+    private void write(Set<String> paths) {
+        // commit() rather than apply(), as the process may die the moment the camera opens.
+        preferences.edit().putStringSet(KEY_CAPTURES, paths).commit();
+    }
+
+}
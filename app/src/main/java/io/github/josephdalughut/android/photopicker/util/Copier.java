@@ -0,0 +1,85 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * The copy loops behind {@link FileUtils#copy}. They only use plain Java I/O, so they can be
+ * benchmarked off-device.
+ */
+public class Copier {
+
+    // How much we hand to FileChannel.transferTo at a time, between progress reports.
+    public static final long TRANSFER_CHUNK = 4 * 1024 * 1024;
+    // Buffer size for sources which don't expose a seekable file.
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Moves <code>total</code> bytes between channels with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which
+     * lets the kernel copy without passing the bytes through the Java heap.
+     * @return the number of bytes copied, which is always <code>total</code>.
+     * @throws IOException if the source ran out before <code>total</code> bytes were copied,
+     * e.g because it was truncated after being measured.
+     */
+    public static long transfer(FileChannel in, FileChannel out, long total,
+                                Listener listener) throws IOException {
+        long position = in.position();
+        long copied = 0;
+        while (copied < total) {
+            if (listener != null) listener.checkCanceled();
+            long count = in.transferTo(position + copied, Math.min(TRANSFER_CHUNK, total - copied), out);
+            if (count <= 0) break;
+            copied += count;
+            if (listener != null) listener.onProgress(copied, total);
+        }
+        if (copied < total) throw new IOException("Short copy: " + copied + "/" + total);
+        return copied;
+    }
+
+    /**
+     * Streams every byte of <code>in</code> to <code>out</code> through <code>buffer</code>.
+     * @return the number of bytes copied.
+     */
+    public static long stream(InputStream in, OutputStream out, byte[] buffer,
+                              Listener listener) throws IOException {
+        long copied = 0;
+        long reported = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            // Checked per read rather than per progress report, which can be megabytes apart,
+            // and only while there's something left to write.
+            if (listener != null) listener.checkCanceled();
+            out.write(buffer, 0, read);
+            copied += read;
+            if (listener != null && copied - reported >= TRANSFER_CHUNK) {
+                reported = copied;
+                listener.onProgress(copied, -1);
+            }
+        }
+        if (listener != null && copied != reported) listener.onProgress(copied, -1);
+        return copied;
+    }
+
+    /**
+     * Receives progress after each chunk, and is asked whether to carry on before each one.
+     */
+    public interface Listener {
+
+        /**
+         * Called before each chunk is written, but never once the last byte has been.
+         * Throwing from here aborts the copy, which is how cancellation is implemented.
+         */
+        void checkCanceled();
+
+        /**
+         * @param copied the number of bytes copied so far.
+         * @param total the total number of bytes, or <code>-1</code> if unknown.
+         */
+        void onProgress(long copied, long total);
+
+    }
+
+}
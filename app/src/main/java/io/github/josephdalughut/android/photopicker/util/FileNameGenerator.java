@@ -0,0 +1,168 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates unique, time-ordered file names like <code>photo_20190910_143005.jpg</code>,
+ * without touching the filesystem.
+ *
+ * Every name carries a stamp made of the current second and a sequence number, which is only
+ * appended (<code>photo_20190910_143005_1.jpg</code>) when several names are taken in the same
+ * second. Both come from one process-wide counter advanced with compare-and-set, so names
+ * never repeat within a process, even across generators, threads or a clock set backwards.
+ * The second is formatted in UTC, as local time repeats an hour when daylight saving ends
+ * and jumps when the time zone changes. The formatted second is cached, so no formatter or
+ * {@link java.util.Date} is created per name.
+ *
+ * A new process starts counting again, so a name may already be on disk from an earlier
+ * run. {@link FileUtils} claims each file it names and takes the next name if one is
+ * already taken.
+ */
+public class FileNameGenerator {
+
+    // Low bits of the counter hold the sequence within a second; overflow carries into the second.
+    private static final int SEQUENCE_BITS = 20;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final AtomicLong counter = new AtomicLong();
+    // Starts at a second no clock reads, so the first call always formats.
+    private static volatile Stamp lastStamp = new Stamp(Long.MIN_VALUE, "");
+
+    private static final FileNameGenerator sDefault = new FileNameGenerator(Policy.DEFAULT);
+
+    private final Policy policy;
+
+    /**
+     * @param policy builds names from the stamps this generator hands out.
+     */
+    public FileNameGenerator(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return a generator using {@link Policy#DEFAULT}.
+     */
+    public static FileNameGenerator getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param base the caller's name for the file, e.g <code>photo</code>. May be
+     *             <code>null</code> or empty.
+     * @param extension the file extension, including the leading dot, e.g <code>.jpg</code>
+     * @return a file name which no other call in this process has returned.
+     */
+    public String next(String base, String extension) {
+        return next(base, extension, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * {@link #next(String, String)}, as if the clock read <code>now</code>.
+     * @param now the time, in seconds since the epoch.
+     */
+    String next(String base, String extension, long now) {
+        long previous, next;
+        do {
+            previous = counter.get();
+            next = now > previous >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : previous + 1;
+        } while (!counter.compareAndSet(previous, next));
+
+        long second = next >>> SEQUENCE_BITS;
+        int sequence = (int) (next & SEQUENCE_MASK);
+        return policy.name(base, second, sequence, format(second)) + extension;
+    }
+
+    /**
+     * @return <code>second</code> as <code>yyyyMMdd_HHmmss</code> in UTC.
+     */
+    static String format(long second) {
+        Stamp stamp = lastStamp;
+        if (stamp.second == second) return stamp.text;
+
+        long days = second / 86400;
+        int seconds = (int) (second % 86400);
+        if (seconds < 0) {
+            seconds += 86400;
+            days--;
+        }
+
+        // Civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] chars = new char[15];
+        digits(chars, 0, year, 4);
+        digits(chars, 4, month, 2);
+        digits(chars, 6, day, 2);
+        chars[8] = '_';
+        digits(chars, 9, seconds / 3600, 2);
+        digits(chars, 11, seconds / 60 % 60, 2);
+        digits(chars, 13, seconds % 60, 2);
+
+        String text = new String(chars);
+        lastStamp = new Stamp(second, text);
+        return text;
+    }
+
+    private static void digits(char[] chars, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static class Stamp {
+
+        final long second;
+        final String text;
+
+        Stamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+
+    }
+
+    /**
+     * Decides how the parts of a name are put together, e.g to add a user id or use a
+     * different layout. Policies must keep the stamp (or both the second and sequence) in the
+     * name, or names are no longer unique.
+     */
+    public interface Policy {
+
+        /**
+         * <code>base_yyyyMMdd_HHmmss</code>, with <code>_sequence</code> appended when it isn't
+         * zero. Without a base, just the stamp.
+         */
+        Policy DEFAULT = new Policy() {
+            @Override
+            public String name(String base, long second, int sequence, String stamp) {
+                boolean named = base != null && !base.isEmpty();
+                if (!named && sequence == 0) return stamp;
+                StringBuilder builder = new StringBuilder(40);
+                if (named) builder.append(base).append('_');
+                builder.append(stamp);
+                if (sequence != 0) builder.append('_').append(sequence);
+                return builder.toString();
+            }
+        };
+
+        /**
+         * @param base the caller's name for the file. May be <code>null</code> or empty.
+         * @param second the stamp's time, in seconds since the epoch.
+         * @param sequence how many names were taken before this one in the same second.
+         * @param stamp <code>second</code> formatted as <code>yyyyMMdd_HHmmss</code> in UTC.
+         * @return the file name, without an extension.
+         */
+        String name(String base, long second, int sequence, String stamp);
+
+    }
+
+}
@@ -2,16 +2,20 @@ package io.github.josephdalughut.android.photopicker.util;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Environment;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.UUID;
 
 /**
  * Created by Joseph Dalughut on 2019-09-10
@@ -21,24 +25,77 @@ import java.util.UUID;
  */
 public class FileUtils {
 
+    // Names a generator hands out are unique within a process, so only files left by an
+    // earlier run can collide, and only for the few seconds around its last names.
+    private static final int MAX_NAME_ATTEMPTS = 100;
+
     /**
      * Creates a new {@link File}
      * @param context
      * @param cached true if the file should be saved in the cached directory.
-     * @param name the name of the file. If this isn't provided, a random UUID is used.
+     * @param name the name of the file, which is made unique with a timestamp.
      * @param folderName the name of a folder to save the file. If this isn't provided, it is ignored
      *                   and saved in the root directory.
      * @return a {@link File}
      * @throws IOException if an error occurs while creating the file.
      */
     public static File createFile(Context context, boolean cached, @Nullable String name, @Nullable String folderName) throws IOException {
-        String _name = name == null || name.trim().isEmpty() ?
-                UUID.randomUUID().toString() : name;
-        String folder = folderName == null || folderName.trim().isEmpty() ? "" : folderName + File.separator;
-        String fileName = folder + _name;
+        return createFile(context, cached, name, folderName, ".jpg");
+    }
+
+    /**
+     * Creates a new {@link File} with the given extension.
+     * @param context
+     * @param cached true if the file should be saved in the cached directory.
+     * @param name the name of the file, which is made unique with a timestamp.
+     * @param folderName the name of a folder to save the file. If this isn't provided, it is ignored
+     *                   and saved in the root directory.
+     * @param extension the file extension, including the leading dot, e.g <code>.webp</code>
+     * @return a {@link File}
+     * @throws IOException if an error occurs while creating the file.
+     */
+    public static File createFile(Context context, boolean cached, @Nullable String name,
+                                  @Nullable String folderName, String extension) throws IOException {
+        return createFile(context, cached, name, folderName, extension, FileNameGenerator.getDefault());
+    }
 
+    /**
+     * Creates a new, empty {@link File} named by <code>generator</code>. A name which is
+     * already taken, e.g by a file from an earlier run, is skipped for the generator's next
+     * one, so the file returned is never one that existed before.
+     * @param context
+     * @param cached true if the file should be saved in the cached directory.
+     * @param name the name of the file, which is made unique with a timestamp.
+     * @param folderName the name of a folder to save the file. If this isn't provided, it is ignored
+     *                   and saved in the root directory.
+     * @param extension the file extension, including the leading dot, e.g <code>.webp</code>
+     * @param generator generates the file's name.
+     * @return a {@link File}
+     * @throws IOException if the folder or file couldn't be created.
+     */
+    public static File createFile(Context context, boolean cached, @Nullable String name,
+                                  @Nullable String folderName, String extension,
+                                  FileNameGenerator generator) throws IOException {
         File storageDir = cached ? context.getCacheDir() : context.getFilesDir();
-        return File.createTempFile(fileName, ".jpg", storageDir);
+        if (folderName != null && !folderName.trim().isEmpty()) {
+            storageDir = new File(storageDir, folderName);
+        }
+        return createFile(storageDir, name, extension, generator);
+    }
+
+    /**
+     * Creates a new, empty {@link File} in <code>directory</code>, claiming it with
+     * {@link File#createNewFile()} so it can't be one that already exists.
+     * @throws IOException if the folder or file couldn't be created.
+     */
+    static File createFile(File directory, @Nullable String name, String extension,
+                           FileNameGenerator generator) throws IOException {
+        mkdirs(directory);
+        for (int attempt = 0; attempt < MAX_NAME_ATTEMPTS; attempt++) {
+            File file = new File(directory, generator.next(name, extension));
+            if (file.createNewFile()) return file;
+        }
+        throw new IOException("Unable to create a new file in " + directory);
     }
 
     /**
@@ -50,16 +107,245 @@ public class FileUtils {
      * @throws IOException if an error occurred when creating the file.
      */
     public static Uri createTemporaryExternalUri(Context context, String authority) throws IOException {
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String fileName = "JPEG_" + timeStamp + "_";
+        return FileProvider.getUriForFile(context, authority, createTemporaryExternalFile(context));
+    }
+
+    /**
+     * Creates a temporary {@link File} in the external files directory, to be shared through
+     * a {@link FileProvider}.
+     * @param context
+     * @return the {@link File}
+     * @throws IOException if an error occurred when creating the file.
+     */
+    public static File createTemporaryExternalFile(Context context) throws IOException {
+        return createTemporaryExternalFile(context, FileNameGenerator.getDefault());
+    }
+
+    /**
+     * Creates a temporary {@link File} in the external files directory, named by
+     * <code>generator</code>.
+     * @param context
+     * @param generator generates the file's name.
+     * @return the {@link File}
+     * @throws IOException if the external files directory isn't available.
+     */
+    public static File createTemporaryExternalFile(Context context, FileNameGenerator generator)
+            throws IOException {
         File storageDir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        File file = File.createTempFile(
-                fileName,  /* prefix */
-                ".jpg",         /* suffix */
-                storageDir      /* directory */
-        );
+        if (storageDir == null) throw new IOException("External storage isn't available");
+        return createFile(storageDir, "JPEG", ".jpg", generator);
+    }
+
+    private static void mkdirs(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Unable to create " + directory);
+    }
+
+    /**
+     * Copies the content at <code>source</code> into a new file in the app's storage, e.g to
+     * keep a picked image after the provider's read grant has expired. This blocks, so
+     * don't call it from the main thread.
+     * @param context
+     * @param source the {@link Uri} to copy from.
+     * @param cached true if the file should be saved in the cached directory.
+     * @param name the name of the file, which is made unique with a timestamp.
+     * @param folderName the name of a folder to save the file. If this isn't provided, it is ignored.
+     * @param signal cancels the copy. May be <code>null</code>.
+     * @param listener receives progress updates on the copying thread. May be <code>null</code>.
+     * @return the new {@link File}
+     * @throws IOException if the copy failed. The partially written file is deleted.
+     * @throws OperationCanceledException if the copy was cancelled.
+     */
+    public static File copyToStorage(Context context, Uri source, boolean cached,
+                                     @Nullable String name, @Nullable String folderName,
+                                     @Nullable CancellationSignal signal,
+                                     @Nullable CopyListener listener) throws IOException {
+        File file = createFile(context, cached, name, folderName);
+        copy(context, source, file, signal, listener);
+        return file;
+    }
+
+    /**
+     * Copies the content at <code>source</code> into <code>destination</code> without loading
+     * it into memory. When the provider exposes a real file descriptor the bytes are moved
+     * with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * otherwise they are streamed through a single reused buffer. This blocks, so don't call
+     * it from the main thread.
+     * @param context
+     * @param source the {@link Uri} to copy from.
+     * @param destination the file to copy into. It is overwritten.
+     * @param signal cancels the copy. May be <code>null</code>.
+     * @param listener receives progress updates on the copying thread. May be <code>null</code>.
+     * @return the number of bytes copied.
+     * @throws IOException if the copy failed. The partially written file is deleted.
+     * @throws OperationCanceledException if the copy was cancelled.
+     */
+    public static long copy(Context context, Uri source, File destination,
+                            @Nullable CancellationSignal signal,
+                            @Nullable CopyListener listener) throws IOException {
+        ParcelFileDescriptor descriptor = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ?
+                context.getContentResolver().openFileDescriptor(source, "r", signal) :
+                context.getContentResolver().openFileDescriptor(source, "r");
+        if (descriptor == null) throw new IOException("Unable to open " + source);
+
+        boolean success = false;
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(descriptor.getFileDescriptor());
+            out = new FileOutputStream(destination);
+            long total = descriptor.getStatSize();
+            Copier.Listener progress = progress(signal, listener);
+            throwIfCanceled(signal);
+            long copied;
+            if (total >= 0) {
+                copied = Copier.transfer(in.getChannel(), out.getChannel(), total, progress);
+            } else {
+                byte[] buffer = BufferPool.getInstance().acquire(Copier.BUFFER_SIZE);
+                try {
+                    copied = Copier.stream(in, out, buffer, progress);
+                } finally {
+                    BufferPool.getInstance().release(buffer);
+                }
+            }
+            out.getFD().sync();
+            success = true;
+            return copied;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            closeQuietly(descriptor);
+            if (!success) destination.delete();
+        }
+    }
+
+    /**
+     * Copies one file into another with {@link Copier#transfer}, e.g to hand out a file of
+     * its own for a cached image. This blocks, so don't call it from the main thread.
+     * @param destination the file to copy into. It is overwritten.
+     * @return the number of bytes copied.
+     * @throws IOException if the copy failed. The partially written file is deleted.
+     */
+    public static long copy(File source, File destination) throws IOException {
+        boolean success = false;
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(destination);
+            long copied = Copier.transfer(in.getChannel(), out.getChannel(), source.length(), null);
+            success = true;
+            return copied;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (!success) destination.delete();
+        }
+    }
+
+    /**
+     * Copies the content at <code>source</code> into <code>destination</code> on the
+     * {@link TaskRunner} executor. Progress and the result are delivered on the main thread.
+     * @return a {@link CancellationSignal} which cancels the copy.
+     */
+    public static CancellationSignal copyAsync(Context context, final Uri source,
+                                               final File destination,
+                                               final CopyCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        final CancellationSignal signal = new CancellationSignal();
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final long copied = copy(appContext, source, destination, signal,
+                            new CopyListener() {
+                                @Override
+                                public void onProgress(final long copied, final long total) {
+                                    TaskRunner.postToMain(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            callback.onProgress(copied, total);
+                                        }
+                                    });
+                                }
+                            });
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCopied(destination, copied);
+                        }
+                    });
+                } catch (final Exception e) {
+                    TaskRunner.postToMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+        return signal;
+    }
+
+    /**
+     * Adapts a {@link CopyListener} and {@link CancellationSignal} for {@link Copier}.
+     */
+    private static Copier.Listener progress(@Nullable final CancellationSignal signal,
+                                            @Nullable final CopyListener listener) {
+        return new Copier.Listener() {
+            @Override
+            public void checkCanceled() {
+                throwIfCanceled(signal);
+            }
+
+            @Override
+            public void onProgress(long copied, long total) {
+                if (listener != null) listener.onProgress(copied, total);
+            }
+        };
+    }
+
+    private static void throwIfCanceled(@Nullable CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) throw new OperationCanceledException();
+    }
+
+    /**
+     * Closes the {@link Closeable}, ignoring any error.
+     */
+    public static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Receives the progress of a copy, on the copying thread.
+     */
+    public interface CopyListener {
+
+        /**
+         * @param copied the number of bytes copied so far.
+         * @param total the total number of bytes, or <code>-1</code> if the provider didn't say.
+         */
+        void onProgress(long copied, long total);
+
+    }
+
+    /**
+     * Receives the result of {@link #copyAsync(Context, Uri, File, CopyCallback)} on the
+     * main thread.
+     */
+    public interface CopyCallback {
+
+        void onProgress(long copied, long total);
+
+        void onCopied(File file, long bytes);
+
+        void onError(Exception e);
 
-        return FileProvider.getUriForFile(context, authority, file);
     }
 
 }
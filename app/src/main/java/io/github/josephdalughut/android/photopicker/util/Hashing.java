@@ -0,0 +1,70 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashing helpers for cache keys. These only use plain Java, so they can be benchmarked
+ * off-device.
+ */
+public class Hashing {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Streams <code>in</code>, followed by <code>params</code>, through an MD5 digest.
+     * @return the digest as a lowercase hex string.
+     */
+    public static String md5Hex(InputStream in, String params) throws IOException {
+        byte[] buffer = BufferPool.getInstance().acquire(BUFFER_SIZE);
+        try {
+            return md5Hex(in, params, buffer);
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * Like {@link #md5Hex(InputStream, String)}, reading through the given buffer.
+     */
+    public static String md5Hex(InputStream in, String params, byte[] buffer) throws IOException {
+        MessageDigest digest = md5();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        digest.update(params.getBytes("UTF-8"));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the MD5 of a string, as a lowercase hex string.
+     */
+    public static String md5Hex(String value) {
+        try {
+            return toHex(md5().digest(value.getBytes("UTF-8")));
+        } catch (IOException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest md5() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} whose buffer comes from, and grows through, a
+ * {@link BufferPool}. Call {@link #release()} once the bytes have been used, to hand the
+ * buffer back; the stream is empty and unusable afterwards.
+ */
+public class PooledOutputStream extends ByteArrayOutputStream {
+
+    private static final byte[] RELEASED = new byte[0];
+
+    private final BufferPool pool;
+
+    public PooledOutputStream(BufferPool pool, int initialSize) {
+        super(0);
+        this.pool = pool;
+        this.buf = pool.acquire(initialSize);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) throw new IndexOutOfBoundsException();
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     */
+    public synchronized void release() {
+        if (buf == RELEASED) return;
+        pool.release(buf);
+        buf = RELEASED;
+        count = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buf == RELEASED) throw new IllegalStateException("Stream was released");
+        if (capacity < 0) throw new OutOfMemoryError();
+        if (capacity <= buf.length) return;
+        byte[] grown = pool.acquire(Math.max(capacity, buf.length * 2));
+        System.arraycopy(buf, 0, grown, 0, count);
+        pool.release(buf);
+        buf = grown;
+    }
+
+}
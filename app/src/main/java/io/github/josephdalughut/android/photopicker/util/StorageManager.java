@@ -0,0 +1,295 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the files the pickers create from piling up.
+ *
+ * Intermediate files (camera captures which get cropped, crops which get processed) are
+ * tracked while a pick is in flight and deleted once its final result has been delivered.
+ * Output directories can also be put under a byte/age quota of their own, which is enforced
+ * by sweeps on the {@link TaskRunner} executor, so pickers with different quotas don't sweep
+ * each other's folders by the wrong limits. Sweeps delete a few files per task, so they never
+ * hold up other picker work for long.
+ */
+public class StorageManager {
+
+    private static final String LOG_TAG = StorageManager.class.getSimpleName();
+
+    // The number of files a single sweep step deletes before yielding the executor.
+    private static final int SWEEP_STEP = 25;
+
+    private static StorageManager sInstance;
+
+    // Each managed directory's quota. Guarded by itself, and only ever read by sweeps as a copy.
+    private final Map<File, Quota> quotas = new LinkedHashMap<>();
+    private final Set<File> inFlight = new HashSet<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * @return the shared instance.
+     */
+    public static synchronized StorageManager getInstance() {
+        if (sInstance == null) sInstance = new StorageManager();
+        return sInstance;
+    }
+
+    StorageManager() {
+    }
+
+    /**
+     * Puts a directory under a quota, enforced by {@link #sweep()}. Only the files directly
+     * inside it are counted. Managing a directory again replaces its quota.
+     * @param maxBytes the total size the directory may grow to, or <code>0</code> for no
+     *                 limit.
+     * @param maxAgeMillis how old a file may get before it is deleted, or <code>0</code>
+     *                     for no limit.
+     */
+    public void manage(File directory, long maxBytes, long maxAgeMillis) {
+        synchronized (quotas) {
+            quotas.put(directory, new Quota(maxBytes, maxAgeMillis));
+        }
+    }
+
+    /**
+     * Records a file the library created which is still in use by a pick, so sweeps leave
+     * it alone until it's {@link #release(Collection) released}.
+     */
+    public void track(File file) {
+        synchronized (inFlight) {
+            inFlight.add(file);
+        }
+    }
+
+    /**
+     * Stops tracking a file without deleting it, e.g because it turned out to be the
+     * final result.
+     */
+    public void untrack(File file) {
+        synchronized (inFlight) {
+            inFlight.remove(file);
+        }
+    }
+
+    /**
+     * Deletes intermediate files in the background, once the result they led to has been
+     * delivered.
+     */
+    public void release(Collection<File> files) {
+        if (files.isEmpty()) return;
+        final List<File> toDelete = new ArrayList<>(files);
+        synchronized (inFlight) {
+            inFlight.removeAll(toDelete);
+        }
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (File file : toDelete) {
+                    if (file.exists() && !file.delete()) Log.w(LOG_TAG, "Unable to delete " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the files currently held by in-flight picks.
+     */
+    public Set<File> getInFlight() {
+        synchronized (inFlight) {
+            return new HashSet<>(inFlight);
+        }
+    }
+
+    /**
+     * @return the number of files currently held by in-flight picks.
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    /**
+     * Measures the managed directories. This touches the disk, so don't call it from the
+     * main thread.
+     * @return the total size of the files in the managed directories, in bytes.
+     */
+    public long getUsage() {
+        long usage = 0;
+        for (File file : listManagedFiles()) {
+            usage += file.length();
+        }
+        return usage;
+    }
+
+    /**
+     * Measures the managed directories in the background.
+     */
+    public void getUsageAsync(final UsageCallback callback) {
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long usage = getUsage();
+                TaskRunner.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onUsage(usage);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts a background sweep of the managed directories, unless one is already running.
+     * In each directory, files older than its age quota are deleted, then the oldest files
+     * until it fits in its byte quota.
+     */
+    public void sweep() {
+        final Map<File, Quota> snapshot;
+        synchronized (quotas) {
+            snapshot = new LinkedHashMap<>(quotas);
+        }
+        if (snapshot.isEmpty()) return;
+        if (!sweeping.compareAndSet(false, true)) return;
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<File> held = getInFlight();
+                List<File> victims = new ArrayList<>();
+                for (Map.Entry<File, Quota> entry : snapshot.entrySet()) {
+                    List<File> files = listFiles(entry.getKey());
+                    files.removeAll(held);
+                    entry.getValue().collectVictims(files, victims);
+                }
+                Log.d(LOG_TAG, "Sweeping " + victims.size() + " files from "
+                        + snapshot.size() + " directories");
+                deleteStep(victims, 0);
+            }
+        });
+    }
+
+    /**
+     * @return true while a {@link #sweep()} is running.
+     */
+    public boolean isSweeping() {
+        return sweeping.get();
+    }
+
+    private void deleteStep(final List<File> victims, final int from) {
+        int to = Math.min(victims.size(), from + SWEEP_STEP);
+        for (int i = from; i < to; i++) {
+            File file = victims.get(i);
+            boolean held;
+            synchronized (inFlight) {
+                held = inFlight.contains(file);
+            }
+            if (!held) file.delete();
+        }
+        if (to >= victims.size()) {
+            sweeping.set(false);
+            return;
+        }
+        final int next = to;
+        TaskRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteStep(victims, next);
+            }
+        });
+    }
+
+    private List<File> listManagedFiles() {
+        List<File> dirs;
+        synchronized (quotas) {
+            dirs = new ArrayList<>(quotas.keySet());
+        }
+        List<File> files = new ArrayList<>();
+        for (File dir : dirs) {
+            files.addAll(listFiles(dir));
+        }
+        return files;
+    }
+
+    private static List<File> listFiles(File directory) {
+        List<File> files = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children == null) return files;
+        for (File child : children) {
+            if (child.isFile()) files.add(child);
+        }
+        return files;
+    }
+
+    /**
+     * A directory's limits. Immutable, so a sweep reads a consistent pair from any thread.
+     */
+    private static class Quota {
+
+        final long maxBytes;
+        final long maxAgeMillis;
+
+        Quota(long maxBytes, long maxAgeMillis) {
+            this.maxBytes = maxBytes;
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        /**
+         * Adds the files which break this quota to <code>victims</code>: those older than
+         * the age limit, then the oldest until the rest fit in the byte limit.
+         */
+        void collectVictims(List<File> files, List<File> victims) {
+            if (maxBytes <= 0 && maxAgeMillis <= 0) return;
+            final long[] lastModified = new long[files.size()];
+            final long[] lengths = new long[files.size()];
+            // Stat each file once up-front rather than in the comparator.
+            Integer[] order = new Integer[files.size()];
+            long total = 0;
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                lastModified[i] = files.get(i).lastModified();
+                lengths[i] = files.get(i).length();
+                total += lengths[i];
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    long left = lastModified[a], right = lastModified[b];
+                    return left < right ? -1 : (left == right ? 0 : 1);
+                }
+            });
+
+            long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+            for (Integer index : order) {
+                boolean expired = lastModified[index] < cutoff;
+                boolean overQuota = maxBytes > 0 && total > maxBytes;
+                if (!expired && !overQuota) break;
+                victims.add(files.get(index));
+                total -= lengths[index];
+            }
+        }
+
+    }
+
+    /**
+     * Receives the result of {@link #getUsageAsync(UsageCallback)} on the main thread.
+     */
+    public interface UsageCallback {
+
+        void onUsage(long bytes);
+
+    }
+
+}
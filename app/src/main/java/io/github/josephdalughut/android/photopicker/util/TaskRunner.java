@@ -0,0 +1,98 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the pickers' heavy work (decoding, encoding, copying) off the main thread, and
+ * posts results back to it.
+ */
+public class TaskRunner {
+
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static ExecutorService sExecutor;
+    private static ExecutorService sPrefetchExecutor;
+    private static Handler sMainHandler;
+
+    /**
+     * @return the shared background executor. Its threads time out when idle, so it costs
+     * nothing while the picker isn't in use.
+     */
+    public static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new PickerThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @return a single-threaded executor for speculative work, such as loading thumbnails
+     * before they're scrolled to. It's kept apart from {@link #executor()} so that work never
+     * queues ahead of what's needed now.
+     */
+    public static synchronized ExecutorService prefetchExecutor() {
+        if (sPrefetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new PickerThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            sPrefetchExecutor = executor;
+        }
+        return sPrefetchExecutor;
+    }
+
+    /**
+     * @return the number of threads in the shared executor.
+     */
+    public static int poolSize() {
+        return POOL_SIZE;
+    }
+
+    /**
+     * Runs a task on the shared background executor.
+     */
+    public static void execute(Runnable runnable) {
+        executor().execute(runnable);
+    }
+
+    /**
+     * Posts a task to the main thread.
+     */
+    public static void postToMain(Runnable runnable) {
+        synchronized (TaskRunner.class) {
+            if (sMainHandler == null) sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        sMainHandler.post(runnable);
+    }
+
+    private static class PickerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "PhotoPicker-" + count.incrementAndGet());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+/**
+ * Stands in for the media provider: an in-memory table of images with the columns
+ * {@link MediaPager} reads, which answers queries with real SQL and records how many rows
+ * each one returned.
+ */
+public class FakeMediaProvider extends ContentProvider {
+
+    private static final String TABLE = "images";
+
+    private SQLiteDatabase database;
+    private int queryCount = 0;
+    private int maxRowsReturned = 0;
+
+    @Override
+    public boolean onCreate() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE " + TABLE + " ("
+                + MediaStore.Images.Media._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Images.Media.DATE_ADDED + " INTEGER, "
+                + MediaStore.Images.Media.WIDTH + " INTEGER, "
+                + MediaStore.Images.Media.HEIGHT + " INTEGER, "
+                + MediaStore.Images.Media.MIME_TYPE + " TEXT)");
+        return true;
+    }
+
+    /**
+     * Adds an image.
+     * @return its id.
+     */
+    public long addImage(long dateAdded) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DATE_ADDED, dateAdded);
+        values.put(MediaStore.Images.Media.WIDTH, 4000);
+        values.put(MediaStore.Images.Media.HEIGHT, 3000);
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+        return database.insert(TABLE, null, values);
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public int getMaxRowsReturned() {
+        return maxRowsReturned;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        // Like the media provider before R, this takes a limit at the end of the sort order.
+        Cursor cursor = database.query(TABLE, projection, selection, selectionArgs, null, null,
+                sortOrder);
+        queryCount++;
+        maxRowsReturned = Math.max(maxRowsReturned, cursor.getCount());
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+}
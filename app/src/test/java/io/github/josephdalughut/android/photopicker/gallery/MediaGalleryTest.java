@@ -0,0 +1,164 @@
+package io.github.josephdalughut.android.photopicker.gallery;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import io.github.josephdalughut.android.photopicker.process.ThumbnailCache;
+import io.github.josephdalughut.android.photopicker.process.ThumbnailLoader;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Pages through a {@link FakeMediaProvider} with {@link MediaPager} and {@link MediaGallery}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MediaGalleryTest {
+
+    private static final int IMAGES = 250;
+    private static final int PAGE_SIZE = 60;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private Context context;
+    private FakeMediaProvider provider;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        provider = Robolectric.buildContentProvider(FakeMediaProvider.class).create("media").get();
+        // Three images to each second, so pages break in the middle of a run of equal dates.
+        for (int i = 0; i < IMAGES; i++) provider.addImage(1000 + i / 3);
+    }
+
+    @Test
+    public void pagesNewestFirst() {
+        MediaPager pager = newPager();
+        List<MediaItem> items = new ArrayList<>();
+        while (!pager.isExhausted()) items.addAll(pager.next());
+
+        assertEquals(IMAGES, items.size());
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            assertTrue(ids.add(items.get(i).getId()));
+            if (i == 0) continue;
+            MediaItem previous = items.get(i - 1), item = items.get(i);
+            assertTrue(previous.getDateAdded() > item.getDateAdded()
+                    || (previous.getDateAdded() == item.getDateAdded() && previous.getId() > item.getId()));
+        }
+        // Four full pages and a short one, each reading no more than a page.
+        assertEquals(5, provider.getQueryCount());
+        assertTrue(provider.getMaxRowsReturned() <= PAGE_SIZE);
+    }
+
+    @Test
+    public void imagesAddedWhilePagingDontShiftPages() {
+        MediaPager pager = newPager();
+        Set<Long> ids = new HashSet<>();
+        for (MediaItem item : pager.next()) ids.add(item.getId());
+
+        provider.addImage(5000);
+        while (!pager.isExhausted()) {
+            for (MediaItem item : pager.next()) assertTrue(ids.add(item.getId()));
+        }
+        assertEquals(IMAGES, ids.size());
+    }
+
+    @Test
+    public void loadsNextPageNearTheEnd() {
+        MediaGallery gallery = newGallery(new RecordingLoader(context));
+        gallery.loadMore();
+        idleMainLooper();
+        assertEquals(PAGE_SIZE, gallery.getCount());
+
+        gallery.onVisibleRange(0, PAGE_SIZE - MediaGallery.DEFAULT_PREFETCH_COUNT - 1);
+        idleMainLooper();
+        assertEquals(PAGE_SIZE, gallery.getCount());
+
+        gallery.onVisibleRange(10, PAGE_SIZE - MediaGallery.DEFAULT_PREFETCH_COUNT);
+        idleMainLooper();
+        assertEquals(PAGE_SIZE * 2, gallery.getCount());
+    }
+
+    @Test
+    public void prefetchesThumbnailsPastVisibleRange() {
+        RecordingLoader loader = new RecordingLoader(context);
+        MediaGallery gallery = newGallery(loader);
+        gallery.setPrefetchCount(10);
+        gallery.loadMore();
+        idleMainLooper();
+
+        gallery.onVisibleRange(0, 11);
+        assertEquals(uris(gallery, 12, 21), loader.loaded);
+
+        // Only the newly uncovered ones are fetched as the grid scrolls on.
+        gallery.onVisibleRange(4, 15);
+        assertEquals(uris(gallery, 12, 25), loader.loaded);
+
+        gallery.close();
+        gallery.onVisibleRange(8, 19);
+        assertEquals(uris(gallery, 12, 25), loader.loaded);
+    }
+
+    private MediaPager newPager() {
+        return new MediaPager(context.getContentResolver(),
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PAGE_SIZE);
+    }
+
+    private MediaGallery newGallery(ThumbnailLoader loader) {
+        return new MediaGallery(newPager(), loader, 96, DIRECT, DIRECT);
+    }
+
+    private static List<Uri> uris(MediaGallery gallery, int first, int last) {
+        List<Uri> uris = new ArrayList<>();
+        for (int i = first; i <= last; i++) uris.add(gallery.getItem(i).getUri());
+        return uris;
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Records the thumbnails it's asked for instead of decoding them.
+     */
+    private static class RecordingLoader extends ThumbnailLoader {
+
+        final List<Uri> loaded = new ArrayList<>();
+
+        RecordingLoader(Context context) {
+            super(context, new ThumbnailCache(1024 * 1024, null, 0));
+        }
+
+        @Override
+        public Bitmap loadSync(Uri uri, int size) {
+            loaded.add(uri);
+            return null;
+        }
+    }
+
+}
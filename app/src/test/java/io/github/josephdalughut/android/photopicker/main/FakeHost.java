@@ -0,0 +1,60 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PickerHost} which records what the picker launches and asks for, rather than
+ * launching anything. Tests answer by calling the picker's result handlers themselves.
+ */
+class FakeHost implements PickerHost {
+
+    final List<Intent> intents = new ArrayList<>();
+    final List<Integer> requestCodes = new ArrayList<>();
+    final List<String[]> permissions = new ArrayList<>();
+    final List<Integer> permissionCodes = new ArrayList<>();
+    private final Context context;
+
+    FakeHost(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+
+    @Override
+    public ActivityLauncher createLauncher(PhotoPicker picker) {
+        return new ActivityLauncher() {
+            @Override
+            public void startActivityForResult(Intent intent, int requestCode) {
+                intents.add(intent);
+                requestCodes.add(requestCode);
+            }
+
+            @Override
+            public void requestPermissions(String[] requested, int requestCode) {
+                permissions.add(requested);
+                permissionCodes.add(requestCode);
+            }
+        };
+    }
+
+    @Override
+    public ActivityResultRegistry getActivityResultRegistry() {
+        return null;
+    }
+
+    @Override
+    public SavedStateRegistry getSavedStateRegistry() {
+        return null;
+    }
+
+}
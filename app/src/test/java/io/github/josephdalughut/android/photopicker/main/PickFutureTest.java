@@ -0,0 +1,176 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link PickFuture} delivers its outcome to callbacks attached before or after
+ * it finishes, through their executors, and that cancelling it stops the pick.
+ */
+public class PickFutureTest {
+
+    @Test
+    public void callbacksAttachedAfterCompletionStillRun() {
+        PickFuture<String> future = new PickFuture<>();
+        future.set("a");
+
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder, DIRECT);
+        assertEquals("a", recorder.value);
+        assertNull(recorder.error);
+
+        // Only the first outcome counts.
+        assertFalse(future.set("b"));
+        assertFalse(future.setException(new Exception()));
+        Recorder late = new Recorder();
+        future.addCallback(late, DIRECT);
+        assertEquals("a", late.value);
+    }
+
+    @Test
+    public void callbacksRunOnTheirExecutor() {
+        PickFuture<String> future = new PickFuture<>();
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder, executor);
+        assertEquals(0, executor.tasks.size());
+
+        Exception error = new Exception();
+        future.setException(error);
+        // Nothing runs until the executor gets to it.
+        assertEquals(1, executor.tasks.size());
+        assertNull(recorder.error);
+
+        executor.runAll();
+        assertSame(error, recorder.error);
+        assertNull(recorder.value);
+    }
+
+    @Test
+    public void getWaitsForTheResult() throws Exception {
+        final PickFuture<String> future = new PickFuture<>();
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                future.set("a");
+            }
+        }).start();
+        assertEquals("a", future.get(5, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void getThrowsTheError() throws Exception {
+        PickFuture<String> future = new PickFuture<>();
+        Exception error = new Exception();
+        future.setException(error);
+        try {
+            future.get(0, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test
+    public void cancellingStopsThePick() throws Exception {
+        PickFuture<String> future = new PickFuture<>();
+        final int[] stopped = new int[1];
+        future.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                stopped[0]++;
+            }
+        });
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder, DIRECT);
+
+        assertTrue(future.cancel(true));
+        assertEquals(1, stopped[0]);
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertTrue(recorder.error instanceof CancellationException);
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+
+        // Late results are dropped, and the pick is only stopped once.
+        assertFalse(future.set("a"));
+        assertFalse(future.cancel(true));
+        assertEquals(1, stopped[0]);
+    }
+
+    @Test
+    public void cancellingAFinishedPickDoesNothing() throws Exception {
+        PickFuture<String> future = new PickFuture<>();
+        final int[] stopped = new int[1];
+        future.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                stopped[0]++;
+            }
+        });
+        future.set("a");
+
+        assertFalse(future.cancel(true));
+        assertEquals(0, stopped[0]);
+        assertFalse(future.isCancelled());
+        assertEquals("a", future.get());
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private static class QueueExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.add(runnable);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) task.run();
+            tasks.clear();
+        }
+    }
+
+    private static class Recorder implements PickFuture.Callback<String> {
+
+        String value;
+        Exception error;
+
+        @Override
+        public void onSuccess(String result) {
+            value = result;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            error = e;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives a picker through a {@link FakeHost}, without any Fragment or Activity.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PickerHostTest {
+
+    private static final Uri IMAGE = Uri.parse("content://media/external/images/media/7");
+
+    private FakeHost host;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        host = new FakeHost(ApplicationProvider.<Context>getApplicationContext());
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void launchesThePickerThroughTheHost() {
+        PhotoPicker picker = new PhotoPicker.Builder().cropped(false).start(host);
+        assertEquals(1, host.intents.size());
+        assertTrue(host.permissions.isEmpty());
+        assertEquals(picker.requestCode(ResultRouter.PICK), (int) host.requestCodes.get(0));
+    }
+
+    @Test
+    public void deliversThePickedImage() throws Exception {
+        PhotoPicker picker = new PhotoPicker.Builder().cropped(false)
+                .setOnResultListener(listener).start(host);
+        assertTrue(picker.handleActivityResult(host.requestCodes.get(0), Activity.RESULT_OK,
+                new Intent().setData(IMAGE)));
+        idleMainLooper();
+
+        assertEquals(IMAGE, listener.picked);
+        assertEquals(IMAGE, picker.getResult().get());
+    }
+
+    @Test
+    public void cancellingFailsThePick() throws Exception {
+        PhotoPicker picker = new PhotoPicker.Builder().cropped(false)
+                .setOnResultListener(listener).start(host);
+        assertTrue(picker.handleActivityResult(host.requestCodes.get(0), Activity.RESULT_CANCELED,
+                null));
+        idleMainLooper();
+
+        assertNotNull(listener.error);
+        assertTrue(picker.getResult().isDone());
+        try {
+            picker.getResult().get();
+            fail("A cancelled pick has no result");
+        } catch (ExecutionException expected) {
+        }
+    }
+
+    @Test
+    public void deniedPermissionsFailThePick() throws Exception {
+        // Robolectric grants nothing by default, so the MediaStore picker has to ask.
+        PhotoPicker picker = new PhotoPicker.Builder().source(PhotoPicker.Source.MEDIA_STORE)
+                .cropped(false).setOnResultListener(listener).start(host);
+        assertTrue(host.intents.isEmpty());
+        assertEquals(1, host.permissions.size());
+        assertArrayEquals(new String[]{Manifest.permission.READ_EXTERNAL_STORAGE},
+                host.permissions.get(0));
+
+        assertTrue(picker.handlePermissionsResult(host.permissionCodes.get(0),
+                host.permissions.get(0), new int[]{PackageManager.PERMISSION_DENIED}));
+        idleMainLooper();
+
+        assertTrue(listener.denied);
+        assertTrue(host.intents.isEmpty());
+        try {
+            picker.getResult().get();
+            fail("A denied pick has no result");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PermissionDeniedException);
+        }
+    }
+
+    @Test
+    public void ignoresOtherRequestCodes() {
+        PhotoPicker picker = new PhotoPicker.Builder().cropped(false).start(host);
+        int other = host.requestCodes.get(0) + 1000;
+        assertFalse(picker.handleActivityResult(other, Activity.RESULT_OK, new Intent().setData(IMAGE)));
+        assertFalse(picker.handlePermissionsResult(other, new String[0], new int[0]));
+        assertFalse(picker.getResult().isDone());
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static class RecordingListener implements PhotoPicker.OnResultListener {
+
+        Uri picked;
+        Exception error;
+        boolean denied;
+
+        @Override
+        public void onPermissionDenied() {
+            denied = true;
+        }
+
+        @Override
+        public void onImagePicked(Uri photoUri) {
+            picked = photoUri;
+        }
+
+        @Override
+        public void onImageError(Exception e) {
+            error = e;
+        }
+    }
+
+}
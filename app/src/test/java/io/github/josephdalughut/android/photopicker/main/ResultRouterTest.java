@@ -0,0 +1,126 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import io.github.josephdalughut.android.photopicker.crop.CropEngine;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs two pickers in one fake host, and routes their results with {@link ResultRouter}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ResultRouterTest {
+
+    private static final Uri AVATAR = Uri.parse("content://media/external/images/media/1");
+    private static final Uri COVER = Uri.parse("content://media/external/images/media/2");
+
+    private final ResultRouter router = ResultRouter.getInstance();
+    private FakeHost host;
+
+    @Before
+    public void setUp() {
+        host = new FakeHost(ApplicationProvider.<Context>getApplicationContext());
+    }
+
+    @Test
+    public void pickersSharingAHostGetTheirOwnResults() throws Exception {
+        PhotoPicker avatar = new PhotoPicker.Builder().cropped(false).start(host);
+        PhotoPicker cover = new PhotoPicker.Builder().cropped(false).start(host);
+        assertTrue(host.permissions.isEmpty());
+        assertEquals(2, host.requestCodes.size());
+        int avatarCode = host.requestCodes.get(0);
+        int coverCode = host.requestCodes.get(1);
+        assertNotEquals(avatarCode, coverCode);
+
+        // Each picker ignores the other's result.
+        assertFalse(avatar.handleActivityResult(coverCode, Activity.RESULT_OK, result(COVER)));
+
+        assertTrue(router.dispatchActivityResult(coverCode, Activity.RESULT_OK, result(COVER)));
+        assertTrue(router.dispatchActivityResult(avatarCode, Activity.RESULT_OK, result(AVATAR)));
+        idleMainLooper();
+        assertEquals(AVATAR, avatar.getResult().get());
+        assertEquals(COVER, cover.getResult().get());
+    }
+
+    @Test
+    public void cropResultsReachTheirEngineUnderItsOwnCode() throws Exception {
+        FakeCropEngine avatarEngine = new FakeCropEngine();
+        FakeCropEngine coverEngine = new FakeCropEngine();
+        PhotoPicker avatar = new PhotoPicker.Builder().cropEngine(avatarEngine).start(host);
+        PhotoPicker cover = new PhotoPicker.Builder().cropEngine(coverEngine).start(host);
+        assertTrue(host.permissions.isEmpty());
+        router.dispatchActivityResult(host.requestCodes.get(0), Activity.RESULT_OK, result(AVATAR));
+        router.dispatchActivityResult(host.requestCodes.get(1), Activity.RESULT_OK, result(COVER));
+
+        // Both engines launched with the same code; each went out under its picker's own.
+        assertEquals(4, host.requestCodes.size());
+        int avatarCrop = host.requestCodes.get(2);
+        int coverCrop = host.requestCodes.get(3);
+        assertNotEquals(avatarCrop, coverCrop);
+
+        assertTrue(router.dispatchActivityResult(coverCrop, Activity.RESULT_OK, null));
+        assertTrue(router.dispatchActivityResult(avatarCrop, Activity.RESULT_OK, null));
+        idleMainLooper();
+        assertEquals(avatarEngine.output, avatar.getResult().get());
+        assertEquals(coverEngine.output, cover.getResult().get());
+    }
+
+    @Test
+    public void finishedPickersReleaseTheirCodes() {
+        PhotoPicker picker = new PhotoPicker.Builder().cropped(false).start(host);
+        assertTrue(host.permissions.isEmpty());
+        int code = host.requestCodes.get(0);
+        assertTrue(router.dispatchActivityResult(code, Activity.RESULT_CANCELED, null));
+        assertTrue(picker.getResult().isDone());
+        assertFalse(router.dispatchActivityResult(code, Activity.RESULT_OK, result(AVATAR)));
+    }
+
+    private static Intent result(Uri uri) {
+        return new Intent().setData(uri);
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Launches with a fixed request code, as uCrop does, and crops to its output as is.
+     */
+    private static class FakeCropEngine implements CropEngine {
+
+        static final int REQUEST_CROP = 69;
+
+        Uri output;
+
+        @Override
+        public void start(Context context, ActivityLauncher launcher, Uri source, Uri output,
+                          Callback callback) {
+            this.output = output;
+            launcher.startActivityForResult(new Intent(), REQUEST_CROP);
+        }
+
+        @Override
+        public boolean handleActivityResult(int requestCode, int resultCode, Intent data,
+                                            Callback callback) {
+            if (requestCode != REQUEST_CROP) return false;
+            callback.onCropped(output);
+            return true;
+        }
+    }
+
+}
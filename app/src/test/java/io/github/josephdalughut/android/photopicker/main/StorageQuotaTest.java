@@ -0,0 +1,98 @@
+package io.github.josephdalughut.android.photopicker.main;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.util.StorageManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks a storage quota only sweeps the picker's own folder, never the host app's files, and
+ * that pickers saving to different folders keep their own quotas.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StorageQuotaTest {
+
+    @Test
+    public void sweepsLeaveTheHostAppsFilesAlone() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        File unrelated = write(new File(context.getFilesDir(), "settings.json"));
+        File index = write(new File(context.getFilesDir(), "photopicker_cache.idx"));
+        File external = write(new File(context.getExternalFilesDir(null), "notes.txt"));
+        File output = write(new File(new File(context.getFilesDir(), "photopicker"), "IMG.webp"));
+
+        // A byte's quota, so every managed file is over it.
+        new PhotoPicker.Builder().cropped(false).storageQuota(1, 0)
+                .start(new FakeHost(context));
+        awaitSweep();
+
+        assertTrue(unrelated.exists());
+        assertTrue(index.exists());
+        assertTrue(external.exists());
+        assertFalse(output.exists());
+    }
+
+    @Test
+    public void sweepsAnExplicitFolder() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        File unrelated = write(new File(context.getFilesDir(), "settings.json"));
+        File output = write(new File(new File(context.getFilesDir(), "avatars"), "IMG.webp"));
+
+        new PhotoPicker.Builder().cropped(false).folderName("avatars").storageQuota(1, 0)
+                .start(new FakeHost(context));
+        awaitSweep();
+
+        assertTrue(unrelated.exists());
+        assertFalse(output.exists());
+    }
+
+    @Test
+    public void eachFolderKeepsItsOwnQuota() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        File album = write(new File(new File(context.getFilesDir(), "albums"), "IMG.webp"));
+        File avatar = write(new File(new File(context.getFilesDir(), "avatars"), "IMG.webp"));
+
+        new PhotoPicker.Builder().cropped(false).folderName("albums").storageQuota(1024, 0)
+                .start(new FakeHost(context));
+        awaitSweep();
+        // A later picker's tighter quota only applies to its own folder.
+        new PhotoPicker.Builder().cropped(false).folderName("avatars").storageQuota(1, 0)
+                .start(new FakeHost(context));
+        awaitSweep();
+
+        assertTrue(album.exists());
+        assertFalse(avatar.exists());
+    }
+
+    private static File write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[64]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void awaitSweep() throws InterruptedException {
+        StorageManager storage = StorageManager.getInstance();
+        for (int i = 0; i < 500 && storage.isSweeping(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(storage.isSweeping());
+    }
+
+}
@@ -0,0 +1,115 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link BitmapPool} hands pooled bitmaps back out, and stays within its cap.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BitmapPoolTest {
+
+    private static final int BYTES = 100 * 100 * 4;
+
+    @Test
+    public void pooledBitmapsAreReused() {
+        BitmapPool pool = new BitmapPool(10 * BYTES);
+        Bitmap bitmap = pool.get(100, 100, Bitmap.Config.ARGB_8888);
+        assertEquals(1, pool.missCount());
+
+        pool.put(bitmap);
+        assertEquals(BYTES, pool.size());
+        Bitmap reused = pool.get(100, 100, Bitmap.Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        assertFalse(reused.isRecycled());
+        assertEquals(1, pool.hitCount());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void largerBitmapsAreReconfigured() {
+        BitmapPool pool = new BitmapPool(10 * BYTES);
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        Bitmap reused = pool.get(80, 60, Bitmap.Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        assertEquals(80, reused.getWidth());
+        assertEquals(60, reused.getHeight());
+    }
+
+    @Test
+    public void tooSmallOrFarTooLargeBitmapsMiss() {
+        BitmapPool pool = new BitmapPool(10 * BYTES);
+        pool.put(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+
+        // Too small to hold it.
+        pool.get(200, 200, Bitmap.Config.ARGB_8888);
+        assertEquals(BYTES, pool.size());
+        // Would waste most of it.
+        pool.get(10, 10, Bitmap.Config.ARGB_8888);
+        assertEquals(BYTES, pool.size());
+        assertEquals(2, pool.missCount());
+    }
+
+    @Test
+    public void decodesArePreparedWithAPooledBitmap() {
+        BitmapPool pool = new BitmapPool(10 * BYTES);
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 2;
+        pool.prepare(options, 200, 200);
+        assertTrue(options.inMutable);
+        assertSame(bitmap, options.inBitmap);
+    }
+
+    @Test
+    public void immutableBitmapsAreRecycled() {
+        BitmapPool pool = new BitmapPool(10 * BYTES);
+        Bitmap immutable = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888)
+                .copy(Bitmap.Config.ARGB_8888, false);
+        pool.put(immutable);
+        assertTrue(immutable.isRecycled());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void oldestBitmapsAreRecycledOverTheCap() {
+        BitmapPool pool = new BitmapPool(2 * BYTES);
+        Bitmap first = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+        assertTrue(first.isRecycled());
+        assertFalse(second.isRecycled());
+        assertEquals(2 * BYTES, pool.size());
+        assertEquals(1, pool.evictionCount());
+    }
+
+    @Test
+    public void trimMemoryHalvesThenEmpties() {
+        BitmapPool pool = new BitmapPool(4 * BYTES);
+        for (int i = 0; i < 4; i++) {
+            pool.put(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        }
+
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(2 * BYTES, pool.size());
+        pool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, pool.size());
+    }
+
+}
@@ -0,0 +1,181 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link ImageCache} lookups, LRU eviction, that it only ever deletes its own copies,
+ * and that its index survives a reload without being rewritten on every hit.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ImageCacheTest {
+
+    // Stands in for the app's storage, where delivered outputs live.
+    private File directory;
+    private File cacheDirectory;
+    private File index;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        directory.mkdirs();
+        cacheDirectory = new File(directory, "cache");
+        index = new File(cacheDirectory, "index");
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void hitsCopyTheEntry() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 1000);
+        File file = write("a.webp", 100);
+        cache.put("a", file, 40, 30);
+
+        ImageCache.Entry entry = cache.get("a");
+        assertNotNull(entry);
+        assertNotEquals(file, entry.getFile());
+        assertEquals(40, entry.getWidth());
+        assertEquals(30, entry.getHeight());
+        assertEquals(100, entry.getBytes());
+
+        // Each hit gets a file of its own.
+        File copy = new File(directory, "b.webp");
+        assertNotNull(cache.get("a", copy));
+        assertEquals(100, copy.length());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void missesReturnNull() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 1000);
+        assertNull(cache.get("a"));
+        File copy = new File(directory, "copy.webp");
+        assertNull(cache.get("a", copy));
+        assertFalse(copy.exists());
+
+        // An entry whose copy has gone is a miss too, and is dropped.
+        cache.put("a", write("a.webp", 100), 40, 30);
+        cache.get("a").getFile().delete();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 250);
+        cache.put("a", write("a.webp", 100), 1, 1);
+        cache.put("b", write("b.webp", 100), 1, 1);
+        File a = cache.get("a").getFile();
+        File b = cache.get("b").getFile();
+        // Using a makes b the least recently used.
+        assertNotNull(cache.get("a"));
+        cache.put("c", write("c.webp", 100), 1, 1);
+
+        assertNull(cache.get("b"));
+        assertFalse(b.exists());
+        assertTrue(a.exists());
+        assertEquals(200, cache.size());
+    }
+
+    @Test
+    public void evictionNeverDeletesADeliveredOutput() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 150);
+        File a = write("a.webp", 100);
+        File b = write("b.webp", 100);
+        File again = write("again.webp", 100);
+        cache.put("a", a, 1, 1);
+        // Evicts a, replaces b, then drops everything.
+        cache.put("b", b, 1, 1);
+        cache.put("b", again, 1, 1);
+        cache.clear();
+
+        assertTrue(a.exists());
+        assertTrue(b.exists());
+        assertTrue(again.exists());
+        assertEquals(100, a.length());
+    }
+
+    @Test
+    public void hitsDontRewriteTheIndexUntilFlushed() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 1000);
+        cache.put("a", write("a.webp", 100), 1, 1);
+        cache.put("b", write("b.webp", 100), 1, 1);
+        String written = read(index);
+
+        assertNotNull(cache.get("a"));
+        assertEquals(written, read(index));
+
+        cache.flush();
+        assertNotEquals(written, read(index));
+    }
+
+    @Test
+    public void reloadingKeepsEntriesAndTheirOrder() throws IOException {
+        ImageCache cache = new ImageCache(cacheDirectory, 250);
+        cache.put("a", write("a.webp", 100), 40, 30);
+        cache.put("b", write("b.webp", 100), 1, 1);
+        File a = cache.get("a").getFile();
+        File b = cache.get("b").getFile();
+        assertNotNull(cache.get("a"));
+        cache.flush();
+
+        ImageCache reloaded = new ImageCache(cacheDirectory, 250);
+        assertEquals(200, reloaded.size());
+        // b was the least recently used when the index was written, so it goes first.
+        reloaded.put("c", write("c.webp", 100), 1, 1);
+        assertFalse(b.exists());
+        assertTrue(a.exists());
+
+        ImageCache.Entry entry = reloaded.get("a");
+        assertNotNull(entry);
+        assertEquals(40, entry.getWidth());
+    }
+
+    private File write(String name, int length) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) read += in.read(bytes, read, bytes.length - read);
+            return new String(bytes, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+
+}
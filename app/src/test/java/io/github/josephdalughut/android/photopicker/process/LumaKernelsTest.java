@@ -0,0 +1,139 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link LumaKernels}' hashes match the same picture at another size or
+ * brightness but tell different pictures apart, and that its sharpness score drops with blur.
+ */
+public class LumaKernelsTest {
+
+    // Well inside ImageAnalysis.DEFAULT_DUPLICATE_DISTANCE, so the same picture is a duplicate.
+    private static final int NEAR = 6;
+    // Unrelated pictures are around 32 apart.
+    private static final int FAR = 24;
+
+    @Test
+    public void toLumaWeighsTheChannels() {
+        int[] pixels = {0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF};
+        LumaKernels.toLuma(pixels, pixels.length);
+        assertEquals(255, pixels[0]);
+        assertEquals(0, pixels[1]);
+        // Green counts for the most, blue for the least.
+        assertTrue(pixels[3] > pixels[2]);
+        assertTrue(pixels[2] > pixels[4]);
+    }
+
+    @Test
+    public void identicalImagesHashTheSame() {
+        int[] a = scene(64, 48, 1, 0);
+        int[] b = scene(64, 48, 1, 0);
+        assertEquals(0, LumaKernels.distance(LumaKernels.dHash(a, 64, 48), LumaKernels.dHash(b, 64, 48)));
+        assertEquals(0, LumaKernels.distance(LumaKernels.pHash(a, 64, 48), LumaKernels.pHash(b, 64, 48)));
+    }
+
+    @Test
+    public void scaledImagesHashAlike() {
+        int[] small = scene(64, 48, 1, 0);
+        int[] large = scene(80, 60, 1, 0);
+        assertTrue(LumaKernels.distance(LumaKernels.dHash(small, 64, 48),
+                LumaKernels.dHash(large, 80, 60)) <= NEAR);
+        assertTrue(LumaKernels.distance(LumaKernels.pHash(small, 64, 48),
+                LumaKernels.pHash(large, 80, 60)) <= NEAR);
+    }
+
+    @Test
+    public void brightenedImagesHashAlike() {
+        int[] image = scene(64, 48, 1, 0);
+        int[] brighter = scene(64, 48, 0.8, 40);
+        assertTrue(LumaKernels.distance(LumaKernels.pHash(image, 64, 48),
+                LumaKernels.pHash(brighter, 64, 48)) <= NEAR);
+    }
+
+    @Test
+    public void mirroredGradientsHashApart() {
+        int width = 64, height = 48;
+        int[] gradient = new int[width * height];
+        int[] mirrored = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                gradient[y * width + x] = (3 * x + y) * 255 / (3 * width + height);
+                mirrored[y * width + width - 1 - x] = gradient[y * width + x];
+            }
+        }
+        assertTrue(LumaKernels.distance(LumaKernels.dHash(gradient, width, height),
+                LumaKernels.dHash(mirrored, width, height)) >= FAR);
+        assertTrue(LumaKernels.distance(LumaKernels.pHash(gradient, width, height),
+                LumaKernels.pHash(mirrored, width, height)) >= FAR);
+    }
+
+    @Test
+    public void blurLowersTheLaplacianVariance() {
+        int width = 64, height = 64;
+        int[] sharp = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sharp[y * width + x] = (x / 8 + y / 8) % 2 == 0 ? 255 : 0;
+            }
+        }
+        int[] blurred = blur(sharp, width, height);
+        int[] blurrier = blur(blurred, width, height);
+
+        double sharpness = LumaKernels.laplacianVariance(sharp, width, height);
+        double blurredSharpness = LumaKernels.laplacianVariance(blurred, width, height);
+        assertTrue(sharpness > blurredSharpness);
+        assertTrue(blurredSharpness > LumaKernels.laplacianVariance(blurrier, width, height));
+        // A flat image has no edges at all.
+        assertEquals(0, LumaKernels.laplacianVariance(new int[width * height], width, height), 0);
+    }
+
+    @Test
+    public void distanceCountsDifferingBits() {
+        assertEquals(0, LumaKernels.distance(0x5A5AL, 0x5A5AL));
+        assertEquals(64, LumaKernels.distance(0, -1L));
+        assertEquals(2, LumaKernels.distance(0b1010, 0b0110));
+    }
+
+    /**
+     * Renders the same picture at any size: a soft diagonal gradient with a bright disc in the
+     * upper left and a dark one lower right, with luma mapped through <code>gain</code> and
+     * <code>offset</code>.
+     */
+    private static int[] scene(int width, int height, double gain, int offset) {
+        int[] luma = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (x + 0.5) / width, v = (y + 0.5) / height;
+                double value = 60 + 80 * u + 40 * v;
+                if (square(u - 0.3) + square(v - 0.35) < 0.04) value += 90;
+                if (square(u - 0.7) + square(v - 0.7) < 0.03) value -= 50;
+                luma[y * width + x] = (int) Math.min(255, value * gain + offset);
+            }
+        }
+        return luma;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * A 3x3 box blur, leaving the border as it is.
+     */
+    private static int[] blur(int[] luma, int width, int height) {
+        int[] out = luma.clone();
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int sum = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) sum += luma[(y + dy) * width + x + dx];
+                }
+                out[y * width + x] = sum / 9;
+            }
+        }
+        return out;
+    }
+
+}
@@ -0,0 +1,103 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link Resampler}'s output on images whose result is known.
+ */
+public class ResamplerTest {
+
+    @Test
+    public void solidColourStaysSolid() {
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            assertSolid(resize(solid(997, 631, 0xFF336699), 997, 631, 123, 77, filter), 0xFF336699);
+            assertSolid(resize(solid(10, 10, 0xFF336699), 10, 10, 37, 23, filter), 0xFF336699);
+        }
+    }
+
+    @Test
+    public void finePatternAveragesToGrey() {
+        int size = 512;
+        int[] checkerboard = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                checkerboard[y * size + x] = (x + y) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            int[] out = resize(checkerboard, size, size, 64, 64, filter);
+            for (int pixel : out) {
+                assertEquals(128, pixel & 0xFF, 2);
+                assertEquals(0xFF, pixel >>> 24);
+            }
+        }
+    }
+
+    @Test
+    public void transparentPixelsDontBleed() {
+        int width = 300, height = 200;
+        int[] image = new int[width * height];
+        for (int i = 0; i < image.length; i++) {
+            // Transparent red on the left, opaque blue on the right.
+            image[i] = i % width < width / 2 ? 0x00FF0000 : 0xFF0000FF;
+        }
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            for (int pixel : resize(image, width, height, 71, 43, filter)) {
+                if (pixel >>> 24 != 0) assertEquals(0, (pixel >> 16) & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void hugeReductionsDontOverflow() {
+        int[] white = solid(1000, 1000, 0xFFFFFFFF);
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            assertSolid(resize(white, 1000, 1000, 1, 1, filter), 0xFFFFFFFF);
+        }
+    }
+
+    @Test
+    public void parallelMatchesSerial() throws InterruptedException {
+        int width = 800, height = 600;
+        int[] image = new int[width * height];
+        Random random = new Random(7);
+        for (int i = 0; i < image.length; i++) image[i] = random.nextInt();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (Resampler.Filter filter : Resampler.Filter.values()) {
+                int[] serial = new int[211 * 157];
+                int[] parallel = new int[211 * 157];
+                Resampler.resize(image, width, height, serial, 211, 157, filter);
+                Resampler.resize(image, width, height, parallel, 211, 157, filter, executor);
+                assertArrayEquals(serial, parallel);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int[] resize(int[] src, int width, int height, int outWidth, int outHeight,
+                                Resampler.Filter filter) {
+        int[] out = new int[outWidth * outHeight];
+        Resampler.resize(src, width, height, out, outWidth, outHeight, filter);
+        return out;
+    }
+
+    private static int[] solid(int width, int height, int colour) {
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, colour);
+        return pixels;
+    }
+
+    private static void assertSolid(int[] pixels, int colour) {
+        for (int pixel : pixels) assertEquals(colour, pixel);
+    }
+
+}
@@ -0,0 +1,168 @@
+package io.github.josephdalughut.android.photopicker.process;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the default budgets of a batch's decodes add up to what the heap can spare, and that
+ * a decode in tiles draws the same image as a whole one. Decoding needs real pixels, so this
+ * runs on Robolectric's native graphics.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class TiledDecoderTest {
+
+    private static final long MB = 1024 * 1024;
+    // Larger than two of the decoder's smallest (256px) tiles each way.
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    private File image;
+
+    @Before
+    public void setUp() throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                pixels[y * WIDTH + x] = 0xFF000000 | (x & 0xFF) << 16 | (y & 0xFF) << 8
+                        | ((x * 7 + y * 13) & 0xFF);
+            }
+        }
+        bitmap.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        image = File.createTempFile("tiled", ".png");
+        FileOutputStream out = new FileOutputStream(image);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.PNG, 100, out));
+        } finally {
+            out.close();
+        }
+        bitmap.recycle();
+    }
+
+    @After
+    public void tearDown() {
+        image.delete();
+    }
+
+    @Test
+    public void batchFitsInASmallHeap() {
+        // A low-end device's heap, with the bitmap pool full and every thread decoding.
+        long maxMemory = 64 * MB;
+        long pooled = maxMemory / 8;
+        int parallelism = 4;
+        long budget = TiledDecoder.getDefaultBudget(maxMemory, parallelism, pooled);
+
+        // A 12 MP photo, which alone would take 46MB to decode whole. Whether it's decoded
+        // sampled or in tiles, a decode never holds more than its budget.
+        int[] size = TiledDecoder.fit(4000, 3000, 0, budget);
+        assertTrue((long) size[0] * size[1] * 4 <= budget / 2);
+        assertTrue(size[0] >= 1000);
+
+        long peak = pooled + parallelism * budget;
+        assertTrue(peak <= maxMemory / 2);
+    }
+
+    @Test
+    public void budgetShrinksWithParallelismAndPooledBitmaps() {
+        long maxMemory = 256 * MB;
+        assertEquals(128 * MB, TiledDecoder.getDefaultBudget(maxMemory, 1, 0));
+        assertEquals(32 * MB, TiledDecoder.getDefaultBudget(maxMemory, 4, 0));
+        assertEquals(24 * MB, TiledDecoder.getDefaultBudget(maxMemory, 4, 32 * MB));
+    }
+
+    @Test
+    public void exceedsBudgetCountsTheSampledImageAndTheOutput() {
+        long whole = WIDTH * HEIGHT * 4;
+        assertFalse(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 1, 0, 0, whole));
+        assertTrue(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 1, 0, 0, whole - 1));
+        // Sampling at 2 decodes a quarter of the pixels; odd sizes round up.
+        assertFalse(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 2, 0, 0, whole / 4));
+        assertTrue(TiledDecoder.exceedsBudget(601, 401, 2, 0, 0, whole / 4));
+        assertTrue(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 2, 10, 10, whole / 4));
+        // No budget, no limit.
+        assertFalse(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 1, WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void tilesMatchAWholeDecodeAcrossTheirSeams() throws IOException {
+        ContentResolver resolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        // Room for the output and not much else, so the decode is split into 256px tiles.
+        long budget = WIDTH * HEIGHT * 4 + 1;
+        assertTrue(TiledDecoder.exceedsBudget(WIDTH, HEIGHT, 1, WIDTH, HEIGHT, budget));
+
+        Bitmap tiled = TiledDecoder.decode(resolver, Uri.fromFile(image), WIDTH, HEIGHT, budget);
+        Bitmap whole = BitmapFactory.decodeFile(image.getPath());
+        assertEquals(WIDTH, tiled.getWidth());
+        assertEquals(HEIGHT, tiled.getHeight());
+
+        int[] seams = {0, 255, 256, 257, 511, 512, 513};
+        for (int x : seams) {
+            for (int y = 0; y < HEIGHT; y++) {
+                assertEquals("(" + x + ", " + y + ")", whole.getPixel(x, y), tiled.getPixel(x, y));
+            }
+        }
+        for (int y : seams) {
+            if (y >= HEIGHT) continue;
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals("(" + x + ", " + y + ")", whole.getPixel(x, y), tiled.getPixel(x, y));
+            }
+        }
+        assertEquals(whole.getPixel(WIDTH - 1, HEIGHT - 1), tiled.getPixel(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    public void sampledDecodesFitTheOutputSize() throws IOException {
+        ContentResolver resolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Bitmap bitmap = TiledDecoder.decode(resolver, Uri.fromFile(image), 150, 100,
+                150 * 100 * 4 + 1);
+        assertEquals(150, bitmap.getWidth());
+        assertEquals(100, bitmap.getHeight());
+    }
+
+    @Test
+    public void imagesWithinTheBudgetArentDownscaled() throws IOException {
+        ContentResolver resolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        File copy = File.createTempFile("downscaled", ".jpg");
+        try {
+            assertFalse(TiledDecoder.downscale(resolver, Uri.fromFile(image), copy, 4 * MB));
+            long budget = WIDTH * HEIGHT;
+            assertTrue(TiledDecoder.downscale(resolver, Uri.fromFile(image), copy, budget));
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(copy.getPath(), options);
+            // The copy, and a copy of it, fit in the budget, at the source's aspect ratio.
+            assertTrue((long) options.outWidth * options.outHeight * 4 <= budget / 2);
+            assertEquals(WIDTH / (double) HEIGHT, options.outWidth / (double) options.outHeight, 0.02);
+        } finally {
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void budgetNeverDropsBelowAFewTiles() {
+        long budget = TiledDecoder.getDefaultBudget(16 * MB, 4, 8 * MB);
+        assertTrue(budget > 0);
+        assertEquals(budget, TiledDecoder.getDefaultBudget(16 * MB, 64, 16 * MB));
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.github.josephdalughut.android.photopicker.upload;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link HttpUploader} against a minimal in-process tus server.
+ */
+public class HttpUploaderTest {
+
+    private HttpServer server;
+    private TusHandler handler;
+    private UploadOptions options;
+    private final HttpUploader uploader = new HttpUploader();
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new TusHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/files", handler);
+        server.start();
+        options = new UploadOptions.Builder("http://127.0.0.1:" + server.getAddress().getPort() + "/files")
+                .header("Authorization", "Bearer token")
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void uploadsInChunks() throws IOException {
+        byte[] image = bytes(10000);
+        String session = uploader.create(options, image.length);
+        assertEquals(0, uploader.getOffset(options, session));
+
+        long offset = 0;
+        byte[] buffer = new byte[4096];
+        while (offset < image.length) {
+            int length = (int) Math.min(buffer.length, image.length - offset);
+            System.arraycopy(image, (int) offset, buffer, 0, length);
+            offset = uploader.write(options, session, offset, buffer, length);
+        }
+        assertEquals(image.length, uploader.getOffset(options, session));
+        assertArrayEquals(image, handler.received(session));
+        assertEquals("Bearer token", handler.authorization);
+    }
+
+    @Test
+    public void returnsPartialAcknowledgement() throws IOException {
+        byte[] image = bytes(1000);
+        String session = uploader.create(options, image.length);
+        handler.keepAtMost = 300;
+        assertEquals(300, uploader.write(options, session, 0, image, image.length));
+        assertEquals(300, uploader.getOffset(options, session));
+    }
+
+    @Test
+    public void resumesFromServerOffsetOnConflict() throws IOException {
+        byte[] image = bytes(1000);
+        String session = uploader.create(options, image.length);
+        uploader.write(options, session, 0, image, 500);
+        // We think nothing landed, but the server has 500 bytes.
+        assertEquals(500, uploader.write(options, session, 0, image, 500));
+    }
+
+    @Test
+    public void unknownSessionHasNoOffset() throws IOException {
+        assertEquals(-1, uploader.getOffset(options, options.getEndpoint() + "/missing"));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Implements the parts of the tus core protocol {@link HttpUploader} uses.
+     */
+    private static class TusHandler implements HttpHandler {
+
+        private final Map<String, ByteArrayOutputStream> uploads = new HashMap<>();
+        private int nextId = 0;
+        volatile int keepAtMost = Integer.MAX_VALUE;
+        volatile String authorization;
+
+        synchronized byte[] received(String session) {
+            return uploads.get(session.substring(session.lastIndexOf('/') + 1)).toByteArray();
+        }
+
+        @Override
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            byte[] body = read(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            String method = exchange.getRequestHeaders().containsKey("X-HTTP-Method-Override") ?
+                    exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override") :
+                    exchange.getRequestMethod();
+            ByteArrayOutputStream upload = uploads.get(id);
+
+            if (method.equals("POST") && path.equals("/files")) {
+                String created = String.valueOf(nextId++);
+                uploads.put(created, new ByteArrayOutputStream());
+                exchange.getResponseHeaders().set("Location", "/files/" + created);
+                exchange.sendResponseHeaders(201, -1);
+            } else if (upload == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Upload-Offset", String.valueOf(upload.size()));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("PATCH")) {
+                long offset = Long.parseLong(exchange.getRequestHeaders().getFirst("Upload-Offset"));
+                if (offset != upload.size()) {
+                    exchange.sendResponseHeaders(409, -1);
+                } else {
+                    upload.write(body, 0, Math.min(body.length, keepAtMost));
+                    exchange.getResponseHeaders().set("Upload-Offset", String.valueOf(upload.size()));
+                    exchange.sendResponseHeaders(204, -1);
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+            exchange.close();
+        }
+
+        private static byte[] read(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+    }
+
+}
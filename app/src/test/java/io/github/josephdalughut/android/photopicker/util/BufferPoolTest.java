@@ -0,0 +1,107 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link BufferPool} reuses arrays within its cap, and {@link PooledOutputStream}
+ * grows through it.
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void releasedArraysAreReused() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.acquire(5000);
+        assertEquals(8192, buffer.length);
+        assertEquals(1, pool.missCount());
+
+        pool.release(buffer);
+        assertEquals(8192, pool.size());
+        assertSame(buffer, pool.acquire(6000));
+        assertEquals(1, pool.hitCount());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void foreignArraysArentPooled() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        pool.release(new byte[5000]);
+        pool.release(new byte[16]);
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void oldestArraysAreDroppedOverTheCap() {
+        BufferPool pool = new BufferPool(3 * 8192);
+        byte[] first = pool.acquire(8192);
+        byte[] second = pool.acquire(8192);
+        byte[] third = pool.acquire(8192);
+        byte[] fourth = pool.acquire(8192);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(fourth);
+        assertEquals(3 * 8192, pool.size());
+        assertEquals(1, pool.evictionCount());
+
+        // The first was dropped, and the most recently released comes back first.
+        assertSame(fourth, pool.acquire(8192));
+        assertSame(third, pool.acquire(8192));
+        assertSame(second, pool.acquire(8192));
+        assertNotSame(first, pool.acquire(8192));
+    }
+
+    @Test
+    public void releasingTwiceOnlyPoolsOnce() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.acquire(8192);
+        pool.release(buffer);
+        pool.release(buffer);
+        assertEquals(8192, pool.size());
+
+        assertSame(buffer, pool.acquire(8192));
+        assertNotSame(buffer, pool.acquire(8192));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        pool.release(pool.acquire(4096));
+        pool.release(pool.acquire(65536));
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertEquals(2, pool.evictionCount());
+    }
+
+    @Test
+    public void streamGrowsThroughThePool() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        PooledOutputStream out = new PooledOutputStream(pool, 4096);
+        byte[] chunk = new byte[1000];
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < chunk.length; j++) chunk[j] = (byte) (i + j);
+            out.write(chunk, 0, chunk.length);
+        }
+        out.write(7);
+        byte[] written = out.toByteArray();
+        assertEquals(50001, written.length);
+        assertEquals((byte) (49 + 999), written[49999]);
+        assertEquals(7, written[50000]);
+
+        out.release();
+        assertEquals(0, out.size());
+        // Every buffer it grew through went back, so the next stream reuses them.
+        long pooled = pool.size();
+        assertTrue(pooled >= 65536);
+        int misses = pool.missCount();
+        PooledOutputStream again = new PooledOutputStream(pool, 4096);
+        again.write(new byte[50001], 0, 50001);
+        assertEquals(misses, pool.missCount());
+        again.release();
+        assertEquals(pooled, pool.size());
+    }
+
+}
@@ -0,0 +1,126 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the {@link Copier} loops copy every byte, and fail rather than return early.
+ */
+public class CopierTest {
+
+    @Test
+    public void transferCopiesEverything() throws IOException {
+        File source = write(File.createTempFile("source", ".bin"), 10000);
+        File destination = File.createTempFile("destination", ".bin");
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(destination);
+        try {
+            assertEquals(10000, Copier.transfer(in.getChannel(), out.getChannel(), 10000, null));
+        } finally {
+            in.close();
+            out.close();
+        }
+        assertEquals(10000, destination.length());
+        source.delete();
+        destination.delete();
+    }
+
+    @Test
+    public void transferFailsWhenTheSourceIsShorterThanReported() throws IOException {
+        // A provider which reports more than it has, e.g because the file was truncated
+        // after it was measured.
+        File source = write(File.createTempFile("source", ".bin"), 4000);
+        File destination = File.createTempFile("destination", ".bin");
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(destination);
+        try {
+            Copier.transfer(in.getChannel(), out.getChannel(), 10000, null);
+            fail("A short copy should fail");
+        } catch (IOException e) {
+            assertEquals("Short copy: 4000/10000", e.getMessage());
+        } finally {
+            in.close();
+            out.close();
+        }
+        source.delete();
+        destination.delete();
+    }
+
+    @Test
+    public void streamCopiesEverything() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, Copier.stream(new ByteArrayInputStream(data), out,
+                new byte[4096], null));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void streamChecksForCancellationOnEveryRead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CancelAfter listener = new CancelAfter(3);
+        try {
+            Copier.stream(new ByteArrayInputStream(new byte[100000]), out, new byte[4096], listener);
+            fail("The copy should have been cancelled");
+        } catch (IllegalStateException expected) {
+        }
+        // Long before the first progress report.
+        assertEquals(2 * 4096, out.size());
+    }
+
+    @Test
+    public void finishedCopiesArentCancelled() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Cancelled as the last progress arrives, once every byte has been written.
+        CancelAfter listener = new CancelAfter(Integer.MAX_VALUE) {
+            @Override
+            public void onProgress(long copied, long total) {
+                canceled = true;
+            }
+        };
+        assertEquals(100000, Copier.stream(new ByteArrayInputStream(new byte[100000]), out,
+                new byte[4096], listener));
+        assertTrue(listener.canceled);
+    }
+
+    private static class CancelAfter implements Copier.Listener {
+
+        private final int checks;
+        private int checked;
+        boolean canceled;
+
+        CancelAfter(int checks) {
+            this.checks = checks;
+        }
+
+        @Override
+        public void checkCanceled() {
+            if (++checked >= checks) canceled = true;
+            if (canceled) throw new IllegalStateException("Cancelled");
+        }
+
+        @Override
+        public void onProgress(long copied, long total) {
+        }
+    }
+
+    private static File write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}
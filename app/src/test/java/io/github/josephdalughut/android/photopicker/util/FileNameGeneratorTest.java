@@ -0,0 +1,204 @@
+package io.github.josephdalughut.android.photopicker.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link FileNameGenerator} formats stamps like {@link SimpleDateFormat} in UTC, and
+ * never repeats a name, even across daylight saving, time zone changes or a restart.
+ */
+public class FileNameGeneratorTest {
+
+    private final TimeZone defaultZone = TimeZone.getDefault();
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void formatsLikeSimpleDateFormat() {
+        String[] zones = {"UTC", "Asia/Kolkata", "America/St_Johns", "Pacific/Kiritimati"};
+        long[] seconds = {
+                0,                  // the epoch
+                -1,                 // the second before it
+                951782400,          // 2000-02-29, a leap day in a century leap year
+                951868799,          // the last second of it
+                1582934400,         // 2020-02-29
+                1583020800,         // 2020-03-01
+                1577836799,         // the last second of 2019
+                1577836800,         // the first of 2020
+                1567987199,         // the last second of August 2019
+                1569887999,         // the last second of September 2019
+                4107456000L,        // 2100-03-01, after a century which isn't a leap year
+                4107455999L,        // 2100-02-28
+                2147483647,         // where 32-bit seconds run out
+                2147483648L,
+        };
+        for (String zone : zones) {
+            // Stamps don't depend on the default zone.
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            SimpleDateFormat expected = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+            expected.setTimeZone(TimeZone.getTimeZone("UTC"));
+            for (long second : seconds) {
+                // Either side of each boundary, then across the days around it.
+                for (long time = second - 1; time <= second + 1; time++) {
+                    assertFormatted(expected, time);
+                }
+                for (long offset = -86400; offset <= 86400; offset += 3599) {
+                    assertFormatted(expected, second + offset);
+                }
+            }
+        }
+    }
+
+    private static void assertFormatted(SimpleDateFormat expected, long second) {
+        assertEquals(TimeZone.getDefault().getID() + " " + second,
+                expected.format(new Date(second * 1000)), FileNameGenerator.format(second));
+    }
+
+    @Test
+    public void stampsDontRepeatWhenDaylightSavingEnds() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        // 2019-11-03, when 01:00 to 02:00 local time happened twice.
+        long end = 1572760800;
+        Set<String> stamps = new HashSet<>();
+        for (long second = end - 7200; second < end + 7200; second++) {
+            assertTrue(stamps.add(FileNameGenerator.format(second)));
+        }
+    }
+
+    @Test
+    public void stampsDontRepeatWhenTheZoneChanges() {
+        long now = 1568125805;
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        String before = FileNameGenerator.format(now);
+        // Moving west would otherwise turn the clock back five and a half hours.
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        Set<String> stamps = new HashSet<>();
+        stamps.add(before);
+        for (long second = now + 1; second < now + 6 * 3600; second++) {
+            assertTrue(stamps.add(FileNameGenerator.format(second)));
+        }
+    }
+
+    @Test
+    public void namesTakenByAnEarlierRunAreSkipped() throws Exception {
+        File directory = File.createTempFile("names", "");
+        directory.delete();
+        try {
+            File earlier = FileUtils.createFile(directory, "photo", ".jpg",
+                    new FileNameGenerator(new Restarted()));
+            assertEquals("photo_0.jpg", earlier.getName());
+            FileOutputStream out = new FileOutputStream(earlier);
+            out.write(1);
+            out.close();
+
+            File file = FileUtils.createFile(directory, "photo", ".jpg",
+                    new FileNameGenerator(new Restarted()));
+            assertEquals("photo_1.jpg", file.getName());
+            assertTrue(file.exists());
+            assertEquals(0, file.length());
+            // The earlier run's file is left as it was.
+            assertEquals(1, earlier.length());
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void namesAreUniqueAcrossThreads() throws Exception {
+        final FileNameGenerator generator = FileNameGenerator.getDefault();
+        int threads = 8;
+        final int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> names = new ArrayList<>(perThread);
+                        for (int j = 0; j < perThread; j++) {
+                            names.add(generator.next("photo", ".jpg"));
+                        }
+                        return names;
+                    }
+                }));
+            }
+            Set<String> names = new HashSet<>();
+            for (Future<List<String>> future : futures) {
+                names.addAll(future.get());
+            }
+            assertEquals(threads * perThread, names.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void aFullSecondRollsIntoTheNext() {
+        final long[] last = new long[2];
+        FileNameGenerator generator = new FileNameGenerator(new FileNameGenerator.Policy() {
+            @Override
+            public String name(String base, long second, int sequence, String stamp) {
+                last[0] = second;
+                last[1] = sequence;
+                return stamp + '_' + sequence;
+            }
+        });
+        // Only just ahead of the clock, so other tests' names aren't pushed far forward.
+        long now = System.currentTimeMillis() / 1000 + 1;
+        String first = generator.next(null, ".jpg", now);
+        assertEquals(now, last[0]);
+        long start = last[1];
+
+        int sequences = 1 << 20;
+        String previous = first;
+        for (long i = start + 1; i < sequences + 2; i++) {
+            String name = generator.next(null, ".jpg", now);
+            assertFalse(name.equals(previous));
+            previous = name;
+        }
+        // The sequence ran out, so the stamp moved on to the next second rather than repeat.
+        assertEquals(now + 1, last[0]);
+        assertEquals(1, last[1]);
+        assertEquals(FileNameGenerator.format(now + 1) + "_1.jpg", previous);
+    }
+
+    /**
+     * Names files the way a freshly started process would: from the first name onwards.
+     */
+    private static class Restarted implements FileNameGenerator.Policy {
+
+        private int calls;
+
+        @Override
+        public String name(String base, long second, int sequence, String stamp) {
+            return base + '_' + calls++;
+        }
+
+    }
+
+}
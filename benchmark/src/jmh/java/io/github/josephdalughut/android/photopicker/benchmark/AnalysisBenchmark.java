@@ -0,0 +1,57 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+
+import io.github.josephdalughut.android.photopicker.process.LumaKernels;
+
+/**
+ * Benchmarks the analysis stage's kernels over a luma buffer at the size ImageAnalyzer
+ * analyzes at (256 on the longest side). The decode in front of them needs a device, see
+ * ProcessingBenchmark.
+ */
+@State(Scope.Thread)
+public class AnalysisBenchmark {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    private int[] pixels;
+    private int[] luma;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BufferedImage image = Corpus.draw(WIDTH, HEIGHT);
+        pixels = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        luma = pixels.clone();
+        LumaKernels.toLuma(luma, luma.length);
+    }
+
+    @Benchmark
+    public int[] toLuma() {
+        int[] buffer = pixels.clone();
+        LumaKernels.toLuma(buffer, buffer.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public long dHash() {
+        return LumaKernels.dHash(luma, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public long pHash() {
+        return LumaKernels.pHash(luma, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public double sharpness() {
+        return LumaKernels.laplacianVariance(luma, WIDTH, HEIGHT);
+    }
+
+}
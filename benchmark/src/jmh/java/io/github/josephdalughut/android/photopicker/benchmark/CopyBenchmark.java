@@ -0,0 +1,68 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.util.Copier;
+
+/**
+ * Benchmarks the two copy paths behind FileUtils.copy: channel transfer (providers with a real
+ * file descriptor) and buffered streaming (pipes and virtual files).
+ */
+@State(Scope.Thread)
+public class CopyBenchmark {
+
+    @Param({"VGA", "FHD", "MP12"})
+    public Corpus.Resolution resolution;
+
+    private File source;
+    private File destination;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = Corpus.get(resolution);
+        destination = File.createTempFile("copy", ".jpg");
+        buffer = new byte[Copier.BUFFER_SIZE];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        destination.delete();
+    }
+
+    @Benchmark
+    public long transfer() throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(destination);
+        try {
+            return Copier.transfer(in.getChannel(), out.getChannel(), source.length(), null);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(destination);
+        try {
+            return Copier.stream(in, out, buffer, null);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+}
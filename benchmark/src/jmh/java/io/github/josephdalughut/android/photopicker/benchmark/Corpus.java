@@ -0,0 +1,122 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * A fixed corpus of synthetic JPEGs. The images are drawn from a seeded {@link Random}, so every
+ * run (and every machine) benchmarks exactly the same bytes.
+ */
+public class Corpus {
+
+    /**
+     * The resolutions we benchmark at, roughly: a thumbnail-sized image, a screenshot, a
+     * 12MP phone photo.
+     */
+    public enum Resolution {
+        VGA(640, 480),
+        FHD(1920, 1080),
+        MP12(4032, 3024);
+
+        public final int width;
+        public final int height;
+
+        Resolution(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static final long SEED = 0x50686f746fL;
+    private static final float QUALITY = 0.9f;
+
+    private static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"),
+            "photopicker-benchmark-corpus");
+
+    /**
+     * @return the JPEG for <code>resolution</code>, generating it if this is the first time
+     * it's been asked for.
+     */
+    public static synchronized File get(Resolution resolution) throws IOException {
+        File file = new File(DIRECTORY, resolution.name().toLowerCase() + ".jpg");
+        if (file.exists() && file.length() > 0) return file;
+        if (!DIRECTORY.exists() && !DIRECTORY.mkdirs())
+            throw new IOException("Couldn't create " + DIRECTORY);
+
+        File temp = new File(DIRECTORY, file.getName() + ".tmp");
+        write(draw(resolution.width, resolution.height), temp);
+        if (!temp.renameTo(file)) throw new IOException("Couldn't write " + file);
+        return file;
+    }
+
+    /**
+     * Draws a gradient with noise and a scattering of shapes, so the encoder has edges,
+     * smooth areas and texture to deal with, like a real photo.
+     */
+    static BufferedImage draw(int width, int height) {
+        Random random = new Random(SEED ^ ((long) width << 32 | height));
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()),
+                    width, height, new Color(random.nextInt())));
+            graphics.fillRect(0, 0, width, height);
+            int shapes = 64;
+            for (int i = 0; i < shapes; i++) {
+                graphics.setColor(new Color(random.nextInt(), true));
+                int w = 1 + random.nextInt(width / 4);
+                int h = 1 + random.nextInt(height / 4);
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                if (random.nextBoolean()) graphics.fillOval(x, y, w, h);
+                else graphics.fillRect(x, y, w, h);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int r = clamp(((row[x] >> 16) & 0xFF) + noise);
+                int g = clamp(((row[x] >> 8) & 0xFF) + noise);
+                int b = clamp((row[x] & 0xFF) + noise);
+                row[x] = r << 16 | g << 8 | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static void write(BufferedImage image, File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageOutputStream out = ImageIO.createImageOutputStream(file);
+        try {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+}
@@ -0,0 +1,51 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import io.github.josephdalughut.android.photopicker.util.Hashing;
+
+/**
+ * Benchmarks the cache keys: the content hash ImageCache computes before every processing
+ * run, and the uri hash ThumbnailLoader computes for every thumbnail request.
+ */
+@State(Scope.Thread)
+public class HashBenchmark {
+
+    private static final String PARAMS = "d=2048;b=0;q=90;m=50;f=JPEG;o=true;x=false";
+    private static final String URI = "content://media/external/images/media/12345@256";
+
+    @Param({"VGA", "FHD", "MP12"})
+    public Corpus.Resolution resolution;
+
+    private File source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = Corpus.get(resolution);
+    }
+
+    @Benchmark
+    public String contentKey() throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            return Hashing.md5Hex(in, PARAMS);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public String thumbnailKey() {
+        return Hashing.md5Hex(URI);
+    }
+
+}
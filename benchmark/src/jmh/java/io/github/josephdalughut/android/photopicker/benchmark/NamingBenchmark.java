@@ -0,0 +1,68 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.UUID;
+
+import io.github.josephdalughut.android.photopicker.util.FileNameGenerator;
+
+/**
+ * Benchmarks file name generation: {@link FileNameGenerator}, which PhotoPicker and FileUtils
+ * use, against the SimpleDateFormat/UUID naming it replaced, kept here as a baseline.
+ */
+@State(Scope.Benchmark)
+public class NamingBenchmark {
+
+    private final FileNameGenerator generator = FileNameGenerator.getDefault();
+
+    @Benchmark
+    public String generated() {
+        return generator.next("photo", ".jpg");
+    }
+
+    @Benchmark
+    public String generatedUnnamed() {
+        return generator.next(null, ".jpg");
+    }
+
+    /**
+     * Several pickers naming files at once, e.g burst capture while a batch is processed.
+     */
+    @Benchmark
+    @Threads(4)
+    public String generatedContended() {
+        return generator.next("photo", ".jpg");
+    }
+
+    /**
+     * The old PhotoPicker.createImageFile with a timestamped name.
+     */
+    @Benchmark
+    public String timestamped() {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        return "photo_" + timeStamp + ".jpg";
+    }
+
+    /**
+     * The old FileUtils.createTemporaryExternalFile, before File.createTempFile.
+     */
+    @Benchmark
+    public String temporary() {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        return "JPEG_" + timeStamp + "_";
+    }
+
+    /**
+     * The old FileUtils.createFile without a name, before File.createTempFile.
+     */
+    @Benchmark
+    public String random() {
+        return "PhotoPicker/" + UUID.randomUUID().toString();
+    }
+
+}
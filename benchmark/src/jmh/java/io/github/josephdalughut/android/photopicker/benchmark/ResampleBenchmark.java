@@ -0,0 +1,93 @@
+package io.github.josephdalughut.android.photopicker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+import io.github.josephdalughut.android.photopicker.process.Resampler;
+
+/**
+ * Benchmarks {@link Resampler} at the reductions the post-pick pipeline makes: a 12MP photo
+ * to a 1080px preview, and a 48MP one to a 512px thumbnail. <code>Bitmap.createScaledBitmap</code>
+ * needs a device (see ProcessingBenchmark#scale), so Java2D's bilinear filter stands in for
+ * it here as the baseline.
+ *
+ * The 8000x6000 case holds about 400MB of pixels, hence the larger heap in build.gradle.
+ */
+@State(Scope.Benchmark)
+public class ResampleBenchmark {
+
+    @Param({"4000x3000:1080", "8000x6000:512"})
+    public String resize;
+
+    private int width;
+    private int height;
+    private int outWidth;
+    private int outHeight;
+    private BufferedImage image;
+    private int[] pixels;
+    private int[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = resize.split("[x:]");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        int longest = Integer.parseInt(parts[2]);
+        outWidth = width >= height ? longest : Math.round(longest * width / (float) height);
+        outHeight = width >= height ? Math.round(longest * height / (float) width) : longest;
+        image = Corpus.draw(width, height);
+        pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        out = new int[outWidth * outHeight];
+    }
+
+    @Benchmark
+    public int[] box() {
+        Resampler.resize(pixels, width, height, out, outWidth, outHeight, Resampler.Filter.BOX);
+        return out;
+    }
+
+    @Benchmark
+    public int[] catmullRom() {
+        Resampler.resize(pixels, width, height, out, outWidth, outHeight,
+                Resampler.Filter.CATMULL_ROM);
+        return out;
+    }
+
+    @Benchmark
+    public int[] lanczos3() {
+        Resampler.resize(pixels, width, height, out, outWidth, outHeight,
+                Resampler.Filter.LANCZOS3);
+        return out;
+    }
+
+    @Benchmark
+    public int[] lanczos3Parallel() {
+        Resampler.resize(pixels, width, height, out, outWidth, outHeight,
+                Resampler.Filter.LANCZOS3, ForkJoinPool.commonPool());
+        return out;
+    }
+
+    @Benchmark
+    public BufferedImage bilinear() {
+        BufferedImage scaled = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, outWidth, outHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+}